@@ -0,0 +1,17 @@
+-- Tables used to compact old events (see BookingCompaction).
+
+CREATE TABLE `sauna`.`booking_compacted` (
+  `id` BIGINT UNSIGNED NOT NULL,
+  `booking_id` BIGINT NOT NULL,
+  `event_type` ENUM('CREATE', 'UPDATE', 'DELETE') NOT NULL,
+  `tenant` INT NULL,
+  `sauna` INT NULL,
+  `booked_from` DATE NULL,
+  `booked_to` DATE NULL,
+  PRIMARY KEY (`id`)
+);
+
+CREATE TABLE `sauna`.`booking_horizon` (
+  `id` BIGINT UNSIGNED NOT NULL,
+  PRIMARY KEY (`id`)
+);
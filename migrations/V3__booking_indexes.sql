@@ -0,0 +1,11 @@
+-- Secondary indexes used by the queries in BookingManager.
+
+ALTER TABLE `sauna`.`booking`
+  ADD INDEX `booking_booking_id` (`booking_id`),
+  ADD INDEX `booking_sauna_from` (`sauna`, `booked_from`),
+  ADD INDEX `booking_tenant_from` (`tenant`, `booked_from`);
+
+ALTER TABLE `sauna`.`booking_compacted`
+  ADD INDEX `booking_compacted_booking_id` (`booking_id`),
+  ADD INDEX `booking_compacted_sauna_from` (`sauna`, `booked_from`),
+  ADD INDEX `booking_compacted_tenant_from` (`tenant`, `booked_from`);
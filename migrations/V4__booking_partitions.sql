@@ -0,0 +1,7 @@
+-- Partitions the events by range of id. New partitions are split off from
+-- the last one by BookingManager.rollPartition().
+
+ALTER TABLE `sauna`.`booking`
+  PARTITION BY RANGE (`id`) (
+    PARTITION `p_current` VALUES LESS THAN MAXVALUE
+  );
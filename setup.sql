@@ -8,5 +8,29 @@ CREATE TABLE `sauna`.`booking` (
   `sauna` INT NULL,
   `booked_from` DATE NULL,
   `booked_to` DATE NULL,
+  PRIMARY KEY (`id`),
+  INDEX `booking_booking_id` (`booking_id`),
+  INDEX `booking_sauna_from` (`sauna`, `booked_from`),
+  INDEX `booking_tenant_from` (`tenant`, `booked_from`)
+) PARTITION BY RANGE (`id`) (
+  PARTITION `p_current` VALUES LESS THAN MAXVALUE
+);
+
+CREATE TABLE `sauna`.`booking_compacted` (
+  `id` BIGINT UNSIGNED NOT NULL,
+  `booking_id` BIGINT NOT NULL,
+  `event_type` ENUM('CREATE', 'UPDATE', 'DELETE') NOT NULL,
+  `tenant` INT NULL,
+  `sauna` INT NULL,
+  `booked_from` DATE NULL,
+  `booked_to` DATE NULL,
+  PRIMARY KEY (`id`),
+  INDEX `booking_compacted_booking_id` (`booking_id`),
+  INDEX `booking_compacted_sauna_from` (`sauna`, `booked_from`),
+  INDEX `booking_compacted_tenant_from` (`tenant`, `booked_from`)
+);
+
+CREATE TABLE `sauna`.`booking_horizon` (
+  `id` BIGINT UNSIGNED NOT NULL,
   PRIMARY KEY (`id`)
 );
@@ -0,0 +1,75 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of applying a single event to a {@link BookingView}
+ * that already contains a large number of bookings. Every event moves an
+ * existing booking to a random date, so each one goes through the conflict
+ * check whether it is accepted or not.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ApplyEventBenchmark {
+
+    private final static int UPDATES = 1 << 20;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int events;
+
+    @Param({"10", "1000"})
+    public int saunas;
+
+    @Param({"100", "100000"})
+    public int tenants;
+
+    private BookingEventSink sink;
+    private Booking[] updates;
+    private long nextId;
+    private int next;
+
+    @Setup
+    public void setup() {
+        final BookingEvents generator = 
+            new BookingEvents(events, saunas, tenants, BookingEvents.SEED);
+        
+        final ReplaySource source = ReplaySource.create();
+        source.createView();
+        source.replay(generator.generate(events));
+        
+        sink    = source.sink();
+        nextId  = sink.getLast();
+        updates = new Booking[UPDATES];
+        for (int i = 0; i < UPDATES; i++) {
+            updates[i] = generator.update();
+        }
+    }
+
+    @Benchmark
+    public long apply() {
+        // The events are reused, so they get a new id each time.
+        final Booking event = updates[next++ & (UPDATES - 1)];
+        event.setId(++nextId);
+        sink.accept(event);
+        return nextId;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic streams of booking events for the benchmarks. About 80%
+ * of the events create new bookings, 15% move an earlier booking and 5%
+ * delete one. Bookings last between one and seven days and are spread over a
+ * period long enough for most of them to be accepted.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class BookingEvents {
+
+    final static long SEED = 42;
+
+    private final static LocalDate START = LocalDate.of(2017, 1, 1);
+
+    private final SplittableRandom rand;
+    private final int saunas;
+    private final int tenants;
+    private final int horizon; // Days
+    private long nextId;
+    private long nextBookingId;
+
+    BookingEvents(int bookings, int saunas, int tenants, long seed) {
+        this.rand    = new SplittableRandom(seed);
+        this.saunas  = saunas;
+        this.tenants = tenants;
+        this.horizon = Math.max(365, (int) (8L * bookings / saunas));
+    }
+
+    /**
+     * Generates a stream of the specified number of events.
+     *
+     * @param count  the number of events
+     * @return       the events in {@code id} order
+     */
+    List<Booking> generate(int count) {
+        final List<Booking> events = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            final int dice = rand.nextInt(100);
+            if (dice < 80 || nextBookingId == 0) {
+                events.add(create());
+            } else if (dice < 95) {
+                events.add(update());
+            } else {
+                events.add(delete());
+            }
+        }
+
+        return events;
+    }
+
+    Booking create() {
+        final int from = rand.nextInt(horizon);
+        return new BookingImpl()
+            .setId(++nextId)
+            .setBookingId(++nextBookingId)
+            .setEventType("CREATE")
+            .setSauna(1 + rand.nextInt(saunas))
+            .setTenant(1 + rand.nextInt(tenants))
+            .setBookedFrom(day(from))
+            .setBookedTo(day(from + rand.nextInt(7)));
+    }
+
+    Booking update() {
+        final int from = rand.nextInt(horizon);
+        return new BookingImpl()
+            .setId(++nextId)
+            .setBookingId(1 + rand.nextLong(nextBookingId))
+            .setEventType("UPDATE")
+            .setBookedFrom(day(from))
+            .setBookedTo(day(from + rand.nextInt(7)));
+    }
+
+    Booking delete() {
+        return new BookingImpl()
+            .setId(++nextId)
+            .setBookingId(1 + rand.nextLong(nextBookingId))
+            .setEventType("DELETE");
+    }
+
+    private static Date day(int offset) {
+        // Create the date from milliseconds like the JDBC driver does, since
+        // dates created from a year, month and day are much slower to compare.
+        return new Date(START.plusDays(offset)
+            .atStartOfDay(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli()
+        );
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.stream.Collectors.toList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of the queries that {@code Main} runs against a
+ * {@link BookingView}.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class QueryBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int events;
+
+    @Param({"10", "1000"})
+    public int saunas;
+
+    @Param({"100", "100000"})
+    public int tenants;
+
+    private BookingView view;
+    private Date now;
+
+    @Setup
+    public void setup() {
+        final ReplaySource source = ReplaySource.create();
+        view = source.createView();
+        source.replay(
+            new BookingEvents(events, saunas, tenants, BookingEvents.SEED)
+                .generate(events)
+        );
+        
+        // Ask about the bookings that are not yet finished halfway through
+        // the generated period.
+        final List<Booking> sorted = view.stream()
+            .sorted(Booking.BOOKED_FROM.comparator())
+            .collect(toList());
+        
+        now = sorted.isEmpty() 
+            ? Date.valueOf(LocalDate.now())
+            : sorted.get(sorted.size() / 2).getBookedFrom().get();
+    }
+
+    @Benchmark
+    public List<Booking> currentBookingsForSauna() {
+        return view.stream()
+            .filter(Booking.SAUNA.equal(1))
+            .filter(Booking.BOOKED_TO.greaterOrEqual(now))
+            .sorted(Booking.BOOKED_FROM.comparator())
+            .collect(toList());
+    }
+
+    @Benchmark
+    public List<Booking> currentBookingsForSaunaIndexed() {
+        return view.findBySauna(1, now.toLocalDate(), LocalDate.MAX);
+    }
+
+    @Benchmark
+    public long countBookingsForSauna() {
+        return view.stream()
+            .filter(Booking.SAUNA.equal(1))
+            .count();
+    }
+}
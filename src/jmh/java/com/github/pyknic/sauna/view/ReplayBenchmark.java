@@ -0,0 +1,64 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time it takes to rebuild a {@link BookingView} from scratch by
+ * replaying the whole event log. Divide the number of events by the score to
+ * get the replay throughput.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ReplayBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int events;
+
+    @Param({"10", "1000"})
+    public int saunas;
+
+    @Param({"100", "100000"})
+    public int tenants;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private List<Booking> log;
+
+    @Setup
+    public void setup() {
+        log = new BookingEvents(events, saunas, tenants, BookingEvents.SEED)
+            .generate(events);
+    }
+
+    @Benchmark
+    public BookingView replay() {
+        final ReplaySource source = ReplaySource.create();
+        final BookingView view = source.createView(
+            parallel ? ForkJoinPool.commonPool() : null
+        );
+        source.replay(log);
+        return view;
+    }
+}
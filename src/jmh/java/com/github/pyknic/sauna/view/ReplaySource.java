@@ -0,0 +1,56 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import static java.util.Collections.singletonList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An in-memory stand-in for the database that is used by the benchmarks. The
+ * events are delivered on the calling thread when {@link #replay(List)} is
+ * called, so nothing but the view itself is measured.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class ReplaySource implements BookingEventSource {
+
+    private final static int CHUNK_SIZE = 4_096;
+
+    private BookingEventSink sink;
+
+    static ReplaySource create() {
+        return new ReplaySource();
+    }
+
+    BookingView createView() {
+        return createView(null);
+    }
+
+    BookingView createView(ForkJoinPool pool) {
+        return BookingView.create(singletonList(this), null, pool);
+    }
+
+    BookingEventSink sink() {
+        return sink;
+    }
+
+    void replay(List<Booking> events) {
+        // Deliver the events in chunks like the poller does.
+        for (int i = 0; i < events.size(); i += CHUNK_SIZE) {
+            sink.acceptAll(events.subList(i, Math.min(events.size(), i + CHUNK_SIZE)));
+        }
+
+        sink.caughtUp();
+    }
+
+    @Override
+    public void start(BookingEventSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void stop() {}
+
+    private ReplaySource() {}
+}
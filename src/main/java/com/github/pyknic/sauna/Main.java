@@ -1,14 +1,15 @@
 package com.github.pyknic.sauna;
 
-import com.github.pyknic.sauna.booking.Booking;
 import com.github.pyknic.sauna.booking.BookingImpl;
 import com.github.pyknic.sauna.booking.BookingManager;
+import com.github.pyknic.sauna.booking.EpochDays;
 import com.github.pyknic.sauna.view.BookingView;
 import java.security.SecureRandom;
 import java.sql.Date;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import static java.time.temporal.ChronoUnit.DAYS;
+import java.util.stream.Stream;
 
 /**
  *
@@ -27,28 +28,24 @@ public final class Main {
         final SecureRandom rand = new SecureRandom();
         rand.setSeed(System.currentTimeMillis());
         
-        // Insert three new bookings into the system.
-        bookings.persist(
+        // Insert three new bookings into the system in a single transaction.
+        bookings.persistAll(Stream.of(
             new BookingImpl()
                 .setBookingId(rand.nextLong())
                 .setEventType("CREATE")
                 .setSauna(1)
                 .setTenant(1)
                 .setBookedFrom(Date.valueOf(LocalDate.now().plus(3, DAYS)))
-                .setBookedTo(Date.valueOf(LocalDate.now().plus(5, DAYS)))
-        );
+                .setBookedTo(Date.valueOf(LocalDate.now().plus(5, DAYS))),
 
-        bookings.persist(
             new BookingImpl()
                 .setBookingId(rand.nextLong())
                 .setEventType("CREATE")
                 .setSauna(1)
                 .setTenant(2)
                 .setBookedFrom(Date.valueOf(LocalDate.now().plus(1, DAYS)))
-                .setBookedTo(Date.valueOf(LocalDate.now().plus(2, DAYS)))
-        );
+                .setBookedTo(Date.valueOf(LocalDate.now().plus(2, DAYS))),
 
-        bookings.persist(
             new BookingImpl()
                 .setBookingId(rand.nextLong())
                 .setEventType("CREATE")
@@ -56,7 +53,7 @@ public final class Main {
                 .setTenant(3)
                 .setBookedFrom(Date.valueOf(LocalDate.now().plus(2, DAYS)))
                 .setBookedTo(Date.valueOf(LocalDate.now().plus(7, DAYS)))
-        );
+        ));
 
         final BookingView view = BookingView.create(bookings);
 
@@ -67,16 +64,12 @@ public final class Main {
         }
 
         System.out.println("Current Bookings for Sauna 1:");
-        final SimpleDateFormat dt = new SimpleDateFormat("yyyy-MM-dd");
-        final Date now = Date.valueOf(LocalDate.now());
-        view.stream()
-            .filter(Booking.SAUNA.equal(1))
-            .filter(Booking.BOOKED_TO.greaterOrEqual(now))
-            .sorted(Booking.BOOKED_FROM.comparator())
+        final DateTimeFormatter dt = DateTimeFormatter.ISO_LOCAL_DATE;
+        view.findBySauna(1, LocalDate.now(), LocalDate.MAX).stream()
             .map(b -> String.format(
                 "Booked from %s to %s by Tenant %d.", 
-                dt.format(b.getBookedFrom().get()),
-                dt.format(b.getBookedTo().get()),
+                dt.format(EpochDays.toLocalDate(b.getBookedFromDay().getAsInt())),
+                dt.format(EpochDays.toLocalDate(b.getBookedToDay().getAsInt())),
                 b.getTenant().getAsInt()
             ))
             .forEachOrdered(System.out::println);
@@ -1,6 +1,11 @@
 package com.github.pyknic.sauna;
 
+import com.github.pyknic.sauna.booking.BookingLog;
+import com.github.pyknic.sauna.booking.BookingManagerImpl;
 import com.github.pyknic.sauna.generated.GeneratedSaunaApplicationBuilder;
+import com.speedment.common.injector.Injector;
+import java.nio.file.Path;
+import static java.util.Objects.requireNonNull;
 
 /**
  * The default {@link com.speedment.runtime.core.ApplicationBuilder}
@@ -13,5 +18,29 @@ import com.github.pyknic.sauna.generated.GeneratedSaunaApplicationBuilder;
  */
 public final class SaunaApplicationBuilder extends GeneratedSaunaApplicationBuilder {
     
+    private Path logDirectory;
     
+    /**
+     * Stores the booking events in an embedded {@link BookingLog} in the 
+     * specified directory instead of in the database. No connection to the
+     * database is made. This is useful for tests and for applications 
+     * running on a single node.
+     * 
+     * @param directory  the directory of the log
+     * @return           this builder
+     */
+    public SaunaApplicationBuilder withEventLog(Path directory) {
+        this.logDirectory = requireNonNull(directory);
+        return withSkipCheckDatabaseConnectivity();
+    }
+    
+    @Override
+    public SaunaApplication build(Injector injector) {
+        if (logDirectory != null) {
+            injector.getOrThrow(BookingManagerImpl.class)
+                .setLog(BookingLog.open(logDirectory));
+        }
+        
+        return super.build(injector);
+    }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.github.pyknic.sauna.booking;
 
 import com.github.pyknic.sauna.booking.generated.GeneratedBooking;
+import java.sql.Date;
+import java.util.Optional;
+import java.util.OptionalInt;
 
 /**
  * The main interface for entities of the {@code booking}-table in the database.
@@ -11,5 +14,33 @@ import com.github.pyknic.sauna.booking.generated.GeneratedBooking;
  */
 public interface Booking extends GeneratedBooking {
     
+    /**
+     * Returns the {@code booked_from} date of this booking as the number of
+     * days since the epoch. Implementations that store dates as epoch days
+     * return it without creating a {@link Date}, so this should be preferred
+     * when dates are compared or sorted.
+     * 
+     * @return  the epoch day of {@code booked_from}, if set
+     */
+    default OptionalInt getBookedFromDay() {
+        final Optional<Date> date = getBookedFrom();
+        return date.isPresent() 
+            ? OptionalInt.of(EpochDays.of(date.get())) 
+            : OptionalInt.empty();
+    }
     
+    /**
+     * Returns the {@code booked_to} date of this booking as the number of
+     * days since the epoch. Implementations that store dates as epoch days
+     * return it without creating a {@link Date}, so this should be preferred
+     * when dates are compared or sorted.
+     * 
+     * @return  the epoch day of {@code booked_to}, if set
+     */
+    default OptionalInt getBookedToDay() {
+        final Optional<Date> date = getBookedTo();
+        return date.isPresent() 
+            ? OptionalInt.of(EpochDays.of(date.get())) 
+            : OptionalInt.empty();
+    }
 }
\ No newline at end of file
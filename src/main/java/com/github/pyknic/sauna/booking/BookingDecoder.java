@@ -0,0 +1,208 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import static com.github.pyknic.sauna.booking.BookingEncoder.BUFFER_SIZE;
+import static com.github.pyknic.sauna.booking.BookingEncoder.END;
+import static com.github.pyknic.sauna.booking.BookingEncoder.FLAGS_SHIFT;
+import static com.github.pyknic.sauna.booking.BookingEncoder.HAS_FROM;
+import static com.github.pyknic.sauna.booking.BookingEncoder.HAS_SAUNA;
+import static com.github.pyknic.sauna.booking.BookingEncoder.HAS_TENANT;
+import static com.github.pyknic.sauna.booking.BookingEncoder.HAS_TO;
+import static com.github.pyknic.sauna.booking.BookingEncoder.HEADER_SIZE;
+import static com.github.pyknic.sauna.booking.BookingEncoder.MAGIC;
+import static com.github.pyknic.sauna.booking.BookingEncoder.TYPE_MASK;
+import static com.github.pyknic.sauna.booking.BookingEncoder.VERSION;
+import static java.util.Objects.requireNonNull;
+import java.util.function.Consumer;
+
+/**
+ * Reads booking events from a channel in the format written by
+ * {@link BookingEncoder}. The channel is read into a direct buffer in large
+ * blocks and each event is decoded into a reusable {@link BookingRecord}, so
+ * decoding creates no objects per event.
+ * <p>
+ * A decoder is not thread safe.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingDecoder implements AutoCloseable {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long lastId;
+    private long count;
+    private boolean finished;
+
+    /**
+     * Creates a decoder that reads from the specified channel. The header of
+     * the stream is read immediately.
+     *
+     * @param channel  the channel to read from
+     *
+     * @throws UncheckedIOException  if the header could not be read or is
+     *                               not valid
+     */
+    public BookingDecoder(ReadableByteChannel channel) {
+        this.channel = requireNonNull(channel);
+        this.buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+
+        require(HEADER_SIZE);
+        final int magic   = buffer.getInt();
+        final int version = buffer.getInt();
+
+        if (magic != MAGIC) {
+            throw corrupt("it is not a stream of booking events");
+        } else if (version != VERSION) {
+            throw corrupt("version " + version + " is unknown");
+        }
+    }
+
+    /**
+     * Returns the number of events read so far.
+     *
+     * @return  the number of events
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Decodes the next event into the specified record.
+     *
+     * @param record  the record to decode the event into
+     * @return        {@code true} if an event was read, or {@code false} if
+     *                the end of the stream has been reached
+     *
+     * @throws UncheckedIOException  if the channel could not be read, or if
+     *                               it ends before the end of the stream
+     */
+    public boolean read(BookingRecord record) {
+        if (finished) {
+            return false;
+        }
+
+        require(1);
+        final int head = buffer.get() & 0xFF;
+        if (head == END) {
+            finished = true;
+            return false;
+        }
+
+        final EventType type;
+        try {
+            type = EventType.of((byte) (head & TYPE_MASK));
+        } catch (final IllegalArgumentException ex) {
+            throw corrupt(ex.getMessage());
+        }
+
+        // Reverse the zig-zag encoding of the difference to the previous id.
+        long zigzag = 0;
+        for (int shift = 0;; shift += 7) {
+            if (shift > 63) {
+                throw corrupt("an id is too long");
+            }
+
+            require(1);
+            final byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        final int flags = head >>> FLAGS_SHIFT;
+        require(8 + 4 * Integer.bitCount(flags));
+
+        lastId += (zigzag >>> 1) ^ -(zigzag & 1);
+        record.set(lastId, buffer.getLong(), type);
+
+        if ((flags & HAS_TENANT) != 0) record.setTenant(buffer.getInt());
+        if ((flags & HAS_SAUNA)  != 0) record.setSauna(buffer.getInt());
+        if ((flags & HAS_FROM)   != 0) record.setBookedFrom(buffer.getInt());
+        if ((flags & HAS_TO)     != 0) record.setBookedTo(buffer.getInt());
+
+        count++;
+        return true;
+    }
+
+    /**
+     * Decodes every remaining event into a reusable record and passes it to
+     * the specified action. The same record is passed for every event, so
+     * the action must copy any values that it wants to keep.
+     *
+     * @param action  the action to call with each event
+     * @return        the number of events
+     *
+     * @throws UncheckedIOException  if the channel could not be read, or if
+     *                               it ends before the end of the stream
+     */
+    public long forEach(Consumer<? super BookingRecord> action) {
+        final BookingRecord record = new BookingRecord();
+        long events = 0;
+
+        while (read(record)) {
+            action.accept(record);
+            events++;
+        }
+
+        return events;
+    }
+
+    /**
+     * Closes the channel.
+     *
+     * @throws UncheckedIOException  if the channel could not be closed
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error closing the channel.", ex
+            );
+        }
+    }
+
+    /**
+     * Makes sure that at least the specified number of bytes are available
+     * in the buffer, reading more from the channel if necessary.
+     */
+    private void require(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        buffer.compact();
+
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException(
+                        "The stream of booking events ended after " +
+                        count + " event(s) without an end marker."
+                    );
+                }
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error reading booking events.", ex
+            );
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private UncheckedIOException corrupt(String reason) {
+        return new UncheckedIOException(new StreamCorruptedException(
+            "Invalid stream of booking events since " + reason + "."
+        ));
+    }
+}
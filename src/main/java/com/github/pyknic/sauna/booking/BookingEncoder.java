@@ -0,0 +1,213 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes booking events to a channel in the compact binary format that is
+ * read by {@link BookingDecoder}. Events are encoded into a direct buffer
+ * that is written to the channel whenever it is full, so encoding a
+ * {@link BookingRecord} creates no objects.
+ * <p>
+ * The stream starts with a magic number and the format version. Each event
+ * then starts with a byte holding the code of the event type in the lower
+ * two bits and flags telling which of the nullable columns are set in the
+ * bits above. It is followed by the difference between its {@code id} and
+ * the {@code id} of the previous event as a zig-zag encoded variable-length
+ * integer, which is a single byte for consecutive events. Then comes the
+ * {@code booking_id} as a {@code long} and the columns that are set as
+ * {@code int}s: {@code tenant}, {@code sauna} and the epoch days of
+ * {@code booked_from} and {@code booked_to}. A zero byte marks the end of the
+ * stream, so a stream that was cut short can be told apart from a complete
+ * one.
+ * <p>
+ * An encoder is not thread safe.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingEncoder implements AutoCloseable {
+
+    final static int MAGIC          = 0x42_4B_45_56; // "BKEV"
+    final static int VERSION        = 1;
+    final static int HEADER_SIZE    = 8;
+    final static int MAX_EVENT_SIZE = 1 + 10 + 8 + 16;
+    final static int BUFFER_SIZE    = 64 << 10;
+
+    final static byte END        = 0;
+    final static int TYPE_MASK   = 3;
+    final static int FLAGS_SHIFT = 2;
+
+    final static int HAS_TENANT = 1;
+    final static int HAS_SAUNA  = 2;
+    final static int HAS_FROM   = 4;
+    final static int HAS_TO     = 8;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final BookingRecord record;
+    private long lastId;
+    private long count;
+    private boolean finished;
+
+    /**
+     * Creates an encoder that writes to the specified channel.
+     *
+     * @param channel  the channel to write to
+     */
+    public BookingEncoder(WritableByteChannel channel) {
+        this.channel = requireNonNull(channel);
+        this.buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.record  = new BookingRecord();
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+    /**
+     * Returns the number of events written so far.
+     *
+     * @return  the number of events
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the {@code id} of the last event written, or {@code 0} if no
+     * event has been written.
+     *
+     * @return  the last id
+     */
+    public long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Encodes the specified event.
+     *
+     * @param event  the event
+     *
+     * @throws IllegalArgumentException  if the event type is unknown
+     * @throws IllegalStateException     if the stream has been finished
+     * @throws UncheckedIOException      if the buffer could not be written
+     */
+    public void write(Booking event) {
+        write(record.set(event));
+    }
+
+    /**
+     * Encodes the specified event.
+     *
+     * @param event  the event
+     *
+     * @throws IllegalStateException  if the stream has been finished
+     * @throws UncheckedIOException   if the buffer could not be written
+     */
+    public void write(BookingRecord event) {
+        if (finished) {
+            throw new IllegalStateException(
+                "Events can not be written after the stream is finished."
+            );
+        }
+
+        if (buffer.remaining() < MAX_EVENT_SIZE) {
+            drain();
+        }
+
+        int flags = 0;
+        if (event.hasTenant())     flags |= HAS_TENANT;
+        if (event.hasSauna())      flags |= HAS_SAUNA;
+        if (event.hasBookedFrom()) flags |= HAS_FROM;
+        if (event.hasBookedTo())   flags |= HAS_TO;
+
+        buffer.put((byte) (event.getEventType().code() | flags << FLAGS_SHIFT));
+
+        // Zig-zag encode the difference so that small negative differences
+        // are as short as small positive ones.
+        final long delta = event.getId() - lastId;
+        long zigzag = (delta << 1) ^ (delta >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+
+        buffer.put((byte) zigzag);
+        buffer.putLong(event.getBookingId());
+
+        if (event.hasTenant())     buffer.putInt(event.getTenant());
+        if (event.hasSauna())      buffer.putInt(event.getSauna());
+        if (event.hasBookedFrom()) buffer.putInt(event.getBookedFrom());
+        if (event.hasBookedTo())   buffer.putInt(event.getBookedTo());
+
+        lastId = event.getId();
+        count++;
+    }
+
+    /**
+     * Writes the events that are still buffered to the channel.
+     *
+     * @throws UncheckedIOException  if the buffer could not be written
+     */
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Marks the end of the stream and writes any buffered events to the
+     * channel, without closing it. No events can be written after this.
+     *
+     * @throws UncheckedIOException  if the buffer could not be written
+     */
+    public void finish() {
+        if (!finished) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+
+            buffer.put(END);
+            finished = true;
+            drain();
+        }
+    }
+
+    /**
+     * Finishes the stream and closes the channel.
+     *
+     * @throws UncheckedIOException  if the stream could not be finished or
+     *                               the channel could not be closed
+     */
+    @Override
+    public void close() {
+        try {
+            finish();
+        } finally {
+            try {
+                channel.close();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(
+                    "Error closing the channel.", ex
+                );
+            }
+        }
+    }
+
+    private void drain() {
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error writing booking events.", ex
+            );
+        } finally {
+            buffer.clear();
+        }
+    }
+}
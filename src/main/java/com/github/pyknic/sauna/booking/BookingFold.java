@@ -0,0 +1,155 @@
+package com.github.pyknic.sauna.booking;
+
+import java.util.ArrayList;
+import static java.util.Comparator.comparing;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Folds the events of a few bookings into their current state, without a
+ * materialized view. Events must be passed in {@code id} order, but the
+ * events of different bookings can be mixed.
+ * <p>
+ * The same rules as in the view decide if an event is applied: a
+ * {@code CREATE} must contain every value and concern a new booking, and an
+ * {@code UPDATE} or {@code DELETE} must concern an existing one. A
+ * {@code CREATE} or {@code UPDATE} that would leave the booking ending 
+ * before it starts is ignored. Events that
+ * would have been refused by the view because they overlap another booking
+ * can not be detected here, so the result only matches the view if events are
+ * validated before they are persisted.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class BookingFold implements Consumer<BookingRecord> {
+
+    private final Map<Long, State> bookings;
+
+    BookingFold() {
+        this.bookings = new HashMap<>();
+    }
+
+    @Override
+    public void accept(BookingRecord ev) {
+        final State state = bookings.get(ev.getBookingId());
+
+        switch (ev.getEventType()) {
+            case CREATE :
+                if (state == null
+                &&  ev.hasTenant()
+                &&  ev.hasSauna()
+                &&  ev.hasBookedFrom()
+                &&  ev.hasBookedTo()
+                &&  ev.getBookedFrom() <= ev.getBookedTo()) {
+                    bookings.put(ev.getBookingId(), new State(ev));
+                }
+                break;
+
+            case UPDATE :
+                if (state != null) {
+                    final int from = ev.hasBookedFrom() ? ev.getBookedFrom() : state.from;
+                    final int to   = ev.hasBookedTo()   ? ev.getBookedTo()   : state.to;
+                    
+                    // Like the view, refuse the whole update if the booking 
+                    // would end before it starts.
+                    if (from <= to) {
+                        if (ev.hasTenant()) state.tenant = ev.getTenant();
+                        if (ev.hasSauna())  state.sauna  = ev.getSauna();
+                        state.from = from;
+                        state.to   = to;
+                    }
+                }
+                break;
+
+            case DELETE :
+                bookings.remove(ev.getBookingId());
+                break;
+        }
+    }
+
+    /**
+     * Returns every booking that exists after the folded events as a
+     * {@code CREATE} event with the {@code id} of the event that created it,
+     * ordered by start date.
+     *
+     * @return  the current bookings
+     */
+    List<Booking> bookings() {
+        return find(s -> true);
+    }
+
+    /**
+     * Returns every booking of the specified sauna that overlaps the 
+     * specified period, as in {@link #bookings()}.
+     *
+     * @param sauna  the sauna
+     * @param from   the first day of the period, in epoch days
+     * @param to     the last day of the period, in epoch days
+     * @return       the bookings ordered by start date
+     */
+    List<Booking> bySauna(int sauna, int from, int to) {
+        return find(s -> s.sauna == sauna && s.from <= to && s.to >= from);
+    }
+
+    /**
+     * Returns every booking of the specified tenant that overlaps the 
+     * specified period, as in {@link #bookings()}.
+     *
+     * @param tenant  the tenant
+     * @param from    the first day of the period, in epoch days
+     * @param to      the last day of the period, in epoch days
+     * @return        the bookings ordered by start date
+     */
+    List<Booking> byTenant(int tenant, int from, int to) {
+        return find(s -> s.tenant == tenant && s.from <= to && s.to >= from);
+    }
+
+    private List<Booking> find(Predicate<State> filter) {
+        final List<State> states = new ArrayList<>();
+        bookings.values().forEach(s -> {
+            if (filter.test(s)) {
+                states.add(s);
+            }
+        });
+
+        states.sort(comparing((State s) -> s.from).thenComparing(s -> s.id));
+
+        final List<Booking> result = new ArrayList<>(states.size());
+        states.forEach(s -> result.add(s.toBooking()));
+        return result;
+    }
+
+    private final static class State {
+
+        private final long id;
+        private final long bookingId;
+        private int tenant;
+        private int sauna;
+        private int from;
+        private int to;
+
+        private State(BookingRecord ev) {
+            this.id        = ev.getId();
+            this.bookingId = ev.getBookingId();
+            this.tenant    = ev.getTenant();
+            this.sauna     = ev.getSauna();
+            this.from      = ev.getBookedFrom();
+            this.to        = ev.getBookedTo();
+        }
+
+        private Booking toBooking() {
+            return new BookingImpl()
+                .setId(id)
+                .setBookingId(bookingId)
+                .setEventType(EventType.CREATE.name())
+                .setTenant(tenant)
+                .setSauna(sauna)
+                .setBookedFrom(EpochDays.toDate(from))
+                .setBookedTo(EpochDays.toDate(to));
+        }
+    }
+}
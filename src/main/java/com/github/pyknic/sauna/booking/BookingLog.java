@@ -0,0 +1,803 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An embedded, append-only log of booking events that can be used instead of
+ * the database table. The log is stored in a directory as a sequence of
+ * memory-mapped segment files, so appending an event is a few writes to
+ * memory and reading the tail of the log is a binary search followed by
+ * sequential reads.
+ * <p>
+ * Every event is stored as a fixed-size record of {@value #RECORD_SIZE} bytes:
+ * {@code id}, {@code booking_id}, {@code tenant}, {@code sauna} and the epoch
+ * days of {@code booked_from} and {@code booked_to}. The upper 16 bits of the
+ * {@code id} field are a header with the event type and flags telling which of
+ * the nullable columns are set. Ids are generated by the log and never need
+ * more than 48 bits, so the full 64 bits of the {@code booking_id} are kept.
+ * Since the records have a fixed size and are sorted by {@code id}, the
+ * position of any {@code id} is found by a binary search over the segments
+ * followed by one within the segment, without a separate index file. Each
+ * segment is named after the first {@code id} it contains.
+ * <p>
+ * Ids are generated by the log, starting at {@code 1}, just like the
+ * {@code AUTO_INCREMENT} column of the table. The {@code id} of a record is
+ * written last, so if the process dies in the middle of an append, the
+ * partial record is ignored when the log is opened again. Data is written to
+ * disk by the operating system, or when {@link #flush()} is called.
+ * <p>
+ * Old events can be folded into the current state of each booking using
+ * {@link #compact(long, Stream)}. The state is stored in a separate file named
+ * after the horizon, the last {@code id} it covers, with the extension
+ * {@value #COMPACTED_SUFFIX}. Segments that only contain events up to the
+ * horizon are then deleted, and the older events in the first remaining one
+ * are skipped by readers.
+ * <p>
+ * Appends are synchronized. Any number of threads can read the log while
+ * events are being appended.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingLog implements AutoCloseable {
+
+    /**
+     * The default size of a segment file in bytes.
+     */
+    public final static long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    private final static String SUFFIX = ".log";
+    private final static String PATTERN = "\\d{20}\\" + SUFFIX;
+    private final static String COMPACTED_SUFFIX  = ".compacted";
+    private final static String COMPACTED_PATTERN = "\\d{20}\\" + COMPACTED_SUFFIX;
+    private final static int RECORD_SIZE = 32;
+
+    // Offsets of the fields within a record.
+    private final static int ID         = 0;
+    private final static int BOOKING_ID = 8;
+    private final static int TENANT     = 16;
+    private final static int SAUNA      = 20;
+    private final static int FROM       = 24;
+    private final static int TO         = 28;
+
+    // The type and the flags share the upper bytes of the id field, which
+    // leaves 48 bits for the id itself.
+    private final static long ID_MASK = 0x0000_FFFF_FFFF_FFFFL;
+    private final static int TYPE_SHIFT  = 56;
+    private final static int FLAGS_SHIFT = 48;
+
+    private final static int HAS_TENANT = 1;
+    private final static int HAS_SAUNA  = 2;
+    private final static int HAS_FROM   = 4;
+    private final static int HAS_TO     = 8;
+
+    /**
+     * A memory-mapped segment file. Only the records from {@link #first} up
+     * to {@link #count} are visible to readers.
+     */
+    private final static class Segment {
+        final long base;
+        final int capacity;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int first; // Records before this have been compacted
+        volatile int count;
+
+        Segment(long base, FileChannel channel) throws IOException {
+            this.base     = base;
+            this.channel  = channel;
+            this.capacity = (int) (channel.size() / RECORD_SIZE);
+            this.buffer   = channel.map(READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+            this.first    = 0;
+
+            // Records are written in order, so the used ones come first.
+            int lo = 0, hi = capacity;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (id(mid) != 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            this.count = lo;
+        }
+
+        /**
+         * Creates a segment that reads the same file as the specified one, but
+         * hides every record with an {@code id} up to the specified one.
+         */
+        Segment(Segment original, long horizon) {
+            this.base     = original.base;
+            this.channel  = original.channel;
+            this.capacity = original.capacity;
+            this.buffer   = original.buffer;
+            this.count    = original.count;
+            this.first    = original.search(horizon, original.count);
+        }
+
+        long id(int i) {
+            return buffer.getLong(i * RECORD_SIZE + ID) & ID_MASK;
+        }
+
+        /**
+         * Returns the index of the first record with an {@code id} greater
+         * than the specified one, or {@code count} if there is none.
+         */
+        int search(long afterId, int count) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (id(mid) <= afterId) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            return Math.max(lo, first);
+        }
+
+        /**
+         * Returns {@code true} if the record has no sauna or a sauna within
+         * the specified range.
+         */
+        boolean concerns(int i, int firstSauna, int lastSauna) {
+            final int pos   = i * RECORD_SIZE;
+            final int flags = (int) (buffer.getLong(pos + ID) >>> FLAGS_SHIFT) & 0xFF;
+            if ((flags & HAS_SAUNA) == 0) {
+                return true;
+            }
+
+            final int sauna = buffer.getInt(pos + SAUNA);
+            return sauna >= firstSauna && sauna <= lastSauna;
+        }
+
+        void read(int i, BookingRecord record) {
+            final int pos = i * RECORD_SIZE;
+            final long packed = buffer.getLong(pos + ID);
+            final int flags   = (int) (packed >>> FLAGS_SHIFT) & 0xFF;
+
+            record.set(
+                packed & ID_MASK,
+                buffer.getLong(pos + BOOKING_ID),
+                EventType.of((byte) ((packed >>> TYPE_SHIFT) + 1)) // Stored from 0
+            );
+
+            if ((flags & HAS_TENANT) != 0) {
+                record.setTenant(buffer.getInt(pos + TENANT));
+            }
+
+            if ((flags & HAS_SAUNA) != 0) {
+                record.setSauna(buffer.getInt(pos + SAUNA));
+            }
+
+            if ((flags & HAS_FROM) != 0) {
+                record.setBookedFrom(buffer.getInt(pos + FROM));
+            }
+
+            if ((flags & HAS_TO) != 0) {
+                record.setBookedTo(buffer.getInt(pos + TO));
+            }
+        }
+
+        void write(int i, long id, Booking entity) {
+            final int pos = i * RECORD_SIZE;
+            int flags = 0;
+
+            if (entity.getTenant().isPresent()) {
+                buffer.putInt(pos + TENANT, entity.getTenant().getAsInt());
+                flags |= HAS_TENANT;
+            }
+
+            if (entity.getSauna().isPresent()) {
+                buffer.putInt(pos + SAUNA, entity.getSauna().getAsInt());
+                flags |= HAS_SAUNA;
+            }
+
+            if (entity.getBookedFrom().isPresent()) {
+                buffer.putInt(pos + FROM, EpochDays.of(entity.getBookedFrom().get()));
+                flags |= HAS_FROM;
+            }
+
+            if (entity.getBookedTo().isPresent()) {
+                buffer.putInt(pos + TO, EpochDays.of(entity.getBookedTo().get()));
+                flags |= HAS_TO;
+            }
+
+            buffer.putLong(pos + BOOKING_ID, entity.getBookingId());
+
+            // The id is written last since it marks the record as complete.
+            buffer.putLong(pos + ID, id
+                | (long) flags << FLAGS_SHIFT
+                | (long) typeOf(entity) << TYPE_SHIFT
+            );
+        }
+
+        void clear(int i) {
+            buffer.putLong(i * RECORD_SIZE + ID, 0);
+        }
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private volatile Segment[] segments; // Replaced when a segment is added
+    private volatile Segment compacted;  // Null if the log is not compacted
+    private volatile long horizon;       // The last id that is compacted
+    private long last;                   // Guarded by this
+
+    private BookingLog(Path directory, long segmentSize, Segment[] segments,
+            Segment compacted, long horizon) {
+        
+        this.directory   = directory;
+        this.segmentSize = segmentSize;
+        this.segments    = segments;
+        this.compacted   = compacted;
+        this.horizon     = horizon;
+
+        final Segment tail = segments[segments.length - 1];
+        this.last = tail.count == 0 ? tail.base - 1 : tail.id(tail.count - 1);
+    }
+
+    /**
+     * Opens the log in the specified directory, creating it if it does not
+     * exist. New segments will be {@link #DEFAULT_SEGMENT_SIZE} bytes.
+     *
+     * @param directory  the directory of the log
+     * @return           the opened log
+     *
+     * @throws UncheckedIOException  if the log could not be opened
+     */
+    public static BookingLog open(Path directory) {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the log in the specified directory, creating it if it does not
+     * exist. Segments that already exist keep their size.
+     *
+     * @param directory    the directory of the log
+     * @param segmentSize  the size of new segment files in bytes
+     * @return             the opened log
+     *
+     * @throws UncheckedIOException  if the log could not be opened
+     */
+    public static BookingLog open(Path directory, long segmentSize) {
+        requireNonNull(directory);
+
+        // A segment must fit in a single mapped buffer.
+        if (segmentSize < RECORD_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Illegal segment size " + segmentSize + "."
+            );
+        }
+
+        try {
+            Files.createDirectories(directory);
+
+            final List<Path> files = list(directory, PATTERN);
+            final List<Path> compactions = list(directory, COMPACTED_PATTERN);
+
+            // Only the latest compaction is used. Older ones are left if the
+            // process died before they could be removed.
+            long horizon = 0;
+            Segment compacted = null;
+            if (!compactions.isEmpty()) {
+                final Path latest = compactions.get(compactions.size() - 1);
+                horizon   = baseOf(latest, COMPACTED_SUFFIX);
+                compacted = new Segment(1, FileChannel.open(latest, READ, WRITE));
+                for (final Path older : compactions.subList(0, compactions.size() - 1)) {
+                    Files.delete(older);
+                }
+            }
+
+            final List<Segment> segments = new ArrayList<>();
+            for (final Path file : files) {
+                segments.add(new Segment(
+                    baseOf(file, SUFFIX), FileChannel.open(file, READ, WRITE)
+                ));
+            }
+
+            if (segments.isEmpty()) {
+                segments.add(create(directory, segmentSize, 1));
+            }
+
+            return new BookingLog(directory, segmentSize, 
+                compact(directory, segments, horizon), compacted, horizon
+            );
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error opening booking log '" + directory + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Returns the {@code id} of the last event that has been compacted, or
+     * {@code 0} if the log has never been compacted. Events up to this id are
+     * only available from {@link #forEachCompacted(Consumer)}.
+     *
+     * @return  the compaction horizon
+     */
+    public long getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Returns the {@code id} of the last event in the log, or {@code 0} if
+     * the log is empty.
+     *
+     * @return  the last id
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * Appends an event to the log. The generated {@code id} is set on the
+     * entity.
+     *
+     * @param entity  the event to append
+     * @return        the generated id
+     *
+     * @throws IllegalArgumentException  if the event type is unknown
+     * @throws UncheckedIOException      if a new segment could not be created
+     */
+    public synchronized long append(Booking entity) {
+        return appendAll(Stream.of(entity))[0];
+    }
+
+    /**
+     * Appends all the specified events to the log. The generated {@code id}
+     * is set on each entity and returned in the same order as the entities
+     * were given. If any event fails, no event is appended.
+     *
+     * @param entities  the events to append
+     * @return          the generated ids
+     *
+     * @throws IllegalArgumentException  if an event type is unknown
+     * @throws UncheckedIOException      if a new segment could not be created
+     */
+    public synchronized long[] appendAll(Stream<? extends Booking> entities) {
+        final Booking[] batch = entities.toArray(Booking[]::new);
+        for (final Booking entity : batch) {
+            typeOf(entity);
+        }
+
+        final Segment[] before = segments;
+        final int countBefore  = before[before.length - 1].count;
+        final long[] ids = new long[batch.length];
+
+        try {
+            for (int i = 0; i < batch.length; i++) {
+                Segment tail = segments[segments.length - 1];
+                if (tail.count == tail.capacity) {
+                    tail = roll();
+                }
+
+                ids[i] = last + 1;
+                tail.write(tail.count, ids[i], batch[i]);
+                tail.count++;
+                last = ids[i];
+            }
+        } catch (final UncheckedIOException ex) {
+            rollback(before, countBefore);
+            throw ex;
+        }
+
+        for (int i = 0; i < batch.length; i++) {
+            batch[i].setId(ids[i]);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns a stream of every event in the log, ordered by {@code id}.
+     *
+     * @return  stream of all events
+     */
+    public Stream<Booking> stream() {
+        return tail(0);
+    }
+
+    /**
+     * Returns a stream of every event with an {@code id} greater than the
+     * specified one, ordered by {@code id}. The first event is found using
+     * binary search, so the cost only depends on the number of events that
+     * are consumed. Events appended while the stream is consumed may or may
+     * not be included.
+     *
+     * @param afterId  the id to start after
+     * @return         stream of the following events
+     */
+    public Stream<Booking> tail(long afterId) {
+        final Segment[] segs = segments;
+        final int first = segmentOf(segs, afterId);
+        final int index = segs[first].search(afterId, segs[first].count);
+
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Booking>(
+                Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+
+            private final BookingRecord record = new BookingRecord();
+            private int segment = first;
+            private int next    = index;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Booking> action) {
+                while (segment < segs.length) {
+                    final Segment seg = segs[segment];
+                    if (next < seg.count) {
+                        seg.read(next++, record);
+                        action.accept(record.toBooking());
+                        return true;
+                    }
+
+                    segment++;
+                    next = 0;
+                }
+
+                return false;
+            }
+        }, false);
+    }
+
+    /**
+     * Decodes every event with an {@code id} greater than the specified one
+     * into the same record and passes it to the specified action, in 
+     * {@code id} order, until the limit is reached. No objects are created 
+     * for each event.
+     *
+     * @param afterId  the id to start after
+     * @param limit    the maximum number of events
+     * @param action   the action to call with each event
+     * @return         the number of events
+     */
+    public int forEachAfter(long afterId, int limit, Consumer<? super BookingRecord> action) {
+        return forEachAfter(afterId, Integer.MIN_VALUE, Integer.MAX_VALUE, limit, action);
+    }
+
+    /**
+     * Decodes every event with an {@code id} greater than the specified one
+     * that either has no sauna or a sauna within the specified range, in the
+     * same way as {@link #forEachAfter(long, int, Consumer)}. Other events
+     * are skipped without being decoded and are not counted.
+     *
+     * @param afterId     the id to start after
+     * @param firstSauna  the first sauna of the range
+     * @param lastSauna   the last sauna of the range
+     * @param limit       the maximum number of events
+     * @param action      the action to call with each event
+     * @return            the number of events
+     */
+    public int forEachAfter(long afterId, int firstSauna, int lastSauna, 
+            int limit, Consumer<? super BookingRecord> action) {
+        
+        final Segment[] segs = segments;
+        final BookingRecord record = new BookingRecord();
+        final boolean all = firstSauna == Integer.MIN_VALUE 
+                         && lastSauna  == Integer.MAX_VALUE;
+        int s = segmentOf(segs, afterId);
+        int next = segs[s].search(afterId, segs[s].count);
+        int count = 0;
+
+        for (; s < segs.length && count < limit; s++, next = 0) {
+            final Segment seg = segs[s];
+            final int end = seg.count;
+            for (; next < end && count < limit; next++) {
+                if (all || seg.concerns(next, firstSauna, lastSauna)) {
+                    seg.read(next, record);
+                    action.accept(record);
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Decodes the state of every booking at the time of the last compaction
+     * into the same record and passes it to the specified action, in 
+     * {@code id} order. Each booking is a {@code CREATE} event with the 
+     * {@code id} of the event that originally created it.
+     *
+     * @param action  the action to call with each booking
+     * @return        the number of bookings
+     */
+    public int forEachCompacted(Consumer<? super BookingRecord> action) {
+        final Segment seg = compacted;
+        if (seg == null) {
+            return 0;
+        }
+
+        final BookingRecord record = new BookingRecord();
+        final int end = seg.count;
+        for (int i = 0; i < end; i++) {
+            seg.read(i, record);
+            action.accept(record);
+        }
+
+        return end;
+    }
+
+    /**
+     * Replaces every event up to and including the specified horizon with the
+     * specified state, given as one {@code CREATE} event per booking that 
+     * exists after the event at the horizon. The events keep their 
+     * {@code id}, which must not be greater than the horizon. Segments that
+     * only contain older events are deleted.
+     * <p>
+     * The new state is written to a separate file that is moved into place
+     * once it is complete, so the log is never left partially compacted. 
+     * Readers that are already past the horizon are not affected.
+     *
+     * @param horizon  the id of the last event to replace
+     * @param state    the bookings after the event at the horizon
+     *
+     * @throws IllegalArgumentException  if the horizon is beyond the last
+     *                                   event or before the current one, or
+     *                                   if an event is not a valid creation
+     * @throws UncheckedIOException      if the state could not be written
+     */
+    public synchronized void compact(long horizon, Stream<? extends Booking> state) {
+        if (horizon > last || horizon < this.horizon) {
+            throw new IllegalArgumentException(
+                "Horizon " + horizon + " must be between " + this.horizon + 
+                " and " + last + "."
+            );
+        }
+
+        final Booking[] bookings = state.toArray(Booking[]::new);
+        Arrays.sort(bookings, Comparator.comparingLong(Booking::getId));
+        for (int i = 0; i < bookings.length; i++) {
+            final Booking b = bookings[i];
+            if (EventType.of(b.getEventType()) != EventType.CREATE) {
+                throw new IllegalArgumentException(
+                    "Compacted events must be creations, found " + b + "."
+                );
+            } else if (b.getId() <= 0 || b.getId() > horizon
+                   || (i > 0 && b.getId() == bookings[i - 1].getId())) {
+                throw new IllegalArgumentException(
+                    "Illegal id of compacted event " + b + "."
+                );
+            }
+        }
+
+        final Path temp = directory.resolve("compacting.tmp");
+        final Path file = directory.resolve(
+            String.format("%020d%s", horizon, COMPACTED_SUFFIX)
+        );
+
+        final Segment written;
+        try {
+            Files.deleteIfExists(temp);
+            final FileChannel channel = FileChannel.open(temp, CREATE_NEW, READ, WRITE);
+            if (bookings.length > 0) {
+                channel.write(ByteBuffer.allocate(1), (long) bookings.length * RECORD_SIZE - 1);
+            }
+
+            written = new Segment(1, channel);
+            for (int i = 0; i < bookings.length; i++) {
+                written.write(i, bookings[i].getId(), bookings[i]);
+            }
+
+            written.count = bookings.length;
+            written.buffer.force();
+            Files.move(temp, file, ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error compacting booking log '" + directory + "'.", ex
+            );
+        }
+
+        final Segment previous = compacted;
+        final long previousHorizon = this.horizon;
+
+        try {
+            segments = compact(directory, Arrays.asList(segments), horizon);
+            this.compacted = written;
+            this.horizon   = horizon;
+
+            if (previous != null) {
+                previous.channel.close();
+                Files.deleteIfExists(directory.resolve(
+                    String.format("%020d%s", previousHorizon, COMPACTED_SUFFIX)
+                ));
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error removing compacted segments in '" + directory + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Writes any appended events that are still only in memory to disk.
+     *
+     * @throws UncheckedIOException  if the log could not be written
+     */
+    public synchronized void flush() {
+        segments[segments.length - 1].buffer.force();
+    }
+
+    /**
+     * Flushes and closes the log. It must not be used afterwards.
+     *
+     * @throws UncheckedIOException  if the log could not be closed
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+
+        final List<Segment> all = new ArrayList<>(Arrays.asList(segments));
+        if (compacted != null) {
+            all.add(compacted);
+        }
+
+        for (final Segment seg : all) {
+            try {
+                seg.channel.close();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(
+                    "Error closing booking log '" + directory + "'.", ex
+                );
+            }
+        }
+    }
+
+    private Segment roll() {
+        final Segment[] segs = segments;
+        segs[segs.length - 1].buffer.force();
+
+        try {
+            final Segment[] grown = Arrays.copyOf(segs, segs.length + 1);
+            grown[segs.length] = create(directory, segmentSize, last + 1);
+            segments = grown;
+            return grown[segs.length];
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error creating a new segment in '" + directory + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Removes every record appended after the specified state, including any
+     * segments that were created.
+     */
+    private void rollback(Segment[] before, int countBefore) {
+        final Segment[] segs = segments;
+        for (int s = segs.length - 1; s >= before.length - 1; s--) {
+            final Segment seg = segs[s];
+            final int keep = s == before.length - 1 ? countBefore : 0;
+            for (int i = seg.count - 1; i >= keep; i--) {
+                seg.clear(i);
+            }
+
+            seg.count = keep;
+        }
+
+        for (int s = before.length; s < segs.length; s++) {
+            try {
+                segs[s].channel.close();
+                Files.deleteIfExists(fileOf(directory, segs[s].base));
+            } catch (final IOException ex) {
+                // The segment is empty and will be reused when reopened.
+            }
+        }
+
+        segments = before;
+        final Segment tail = before[before.length - 1];
+        last = tail.count == 0 ? tail.base - 1 : tail.id(tail.count - 1);
+    }
+
+    /**
+     * Returns the index of the last segment that starts at or before the id
+     * following the specified one.
+     */
+    private static int segmentOf(Segment[] segs, long afterId) {
+        int lo = 0, hi = segs.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (segs[mid].base <= afterId + 1) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Removes the segments that only contain events up to the specified
+     * horizon, except the last one which is needed for appending. The events
+     * up to the horizon in the first remaining segment are hidden.
+     */
+    private static Segment[] compact(Path directory, List<Segment> segments, 
+            long horizon) throws IOException {
+
+        if (horizon == 0) {
+            return segments.toArray(new Segment[segments.size()]);
+        }
+
+        final List<Segment> kept = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment seg = segments.get(i);
+            final boolean tail = i == segments.size() - 1;
+            final int end = seg.count;
+
+            if (!tail && (end == 0 || seg.id(end - 1) <= horizon)) {
+                seg.channel.close();
+                Files.delete(fileOf(directory, seg.base));
+            } else if (kept.isEmpty() && seg.base <= horizon) {
+                kept.add(new Segment(seg, horizon));
+            } else {
+                kept.add(seg);
+            }
+        }
+
+        return kept.toArray(new Segment[kept.size()]);
+    }
+
+    private static List<Path> list(Path directory, String pattern) throws IOException {
+        try (final Stream<Path> list = Files.list(directory)) {
+            return list
+                .filter(f -> f.getFileName().toString().matches(pattern))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static long baseOf(Path file, String suffix) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    }
+
+    private static Segment create(Path directory, long segmentSize, long base)
+            throws IOException {
+
+        final FileChannel channel = FileChannel.open(
+            fileOf(directory, base), CREATE_NEW, READ, WRITE
+        );
+
+        // Extend the file to the full size so that it can be mapped at once.
+        final long size = segmentSize - segmentSize % RECORD_SIZE;
+        channel.write(ByteBuffer.allocate(1), size - 1);
+        return new Segment(base, channel);
+    }
+
+    private static Path fileOf(Path directory, long base) {
+        return directory.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    private static int typeOf(Booking entity) {
+        return EventType.of(entity.getEventType()).ordinal();
+    }
+
+}
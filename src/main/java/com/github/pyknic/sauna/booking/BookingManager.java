@@ -1,6 +1,12 @@
 package com.github.pyknic.sauna.booking;
 
 import com.github.pyknic.sauna.booking.generated.GeneratedBookingManager;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The main interface for the manager of every {@link
@@ -12,5 +18,325 @@ import com.github.pyknic.sauna.booking.generated.GeneratedBookingManager;
  */
 public interface BookingManager extends GeneratedBookingManager {
     
+    /**
+     * Persists the specified event unless the validator set using
+     * {@link #setValidator(BookingValidator)} refuses it. Refused events are
+     * never written, so they don't have to be skipped every time the events
+     * are replayed.
+     * <p>
+     * The event is persisted only if no other event has been persisted by 
+     * this manager since it was validated. Otherwise it is validated again.
+     * Every write through this manager, including {@code persist}
+     * and {@link #persistAll(Stream)}, waits while a validated event is 
+     * persisted. Two events that conflict with each other can therefore 
+     * never both be written by the same manager. Events that are written by
+     * other processes are not validated. Those are refused by the views when
+     * they are applied instead.
+     * <p>
+     * The validator is never called while other writes are blocked, except 
+     * when events keep being persisted while this one is validated. It is 
+     * then checked again while holding the lock, so that it is not starved.
+     * <p>
+     * If no validator has been set, the event is always persisted.
+     * 
+     * @param entity  the event to persist
+     * @return        the persisted event, or empty if it was refused
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                if the event could not be persisted
+     */
+    Optional<Booking> persistIfAllowed(Booking entity);
     
-}
\ No newline at end of file
+    /**
+     * Sets the validator used by {@link #persistIfAllowed(Booking)}.
+     * 
+     * @param validator  the validator
+     */
+    void setValidator(BookingValidator validator);
+    
+    /**
+     * Persists all the specified events in a single transaction, using 
+     * multi-row inserts to limit the number of round-trips to the database. 
+     * The generated {@code id} is set on each entity and returned in the same
+     * order as the entities were given. If any event fails, no event is 
+     * persisted.
+     * <p>
+     * The ids are generated when the rows are inserted, but the events are 
+     * only visible once the transaction commits. Events persisted by others
+     * in the meantime get greater ids and can become visible first, leaving
+     * a gap of ids that readers have not seen yet. Views don't read past 
+     * such a gap (see {@link #getContiguousId(long, long)}) until it is 
+     * filled, or until it has stayed open longer than the 
+     * {@link com.github.pyknic.sauna.view.BookingViewBuilder#withGapTimeout(long) 
+     * gap timeout}, after which the missing ids are assumed to have been 
+     * rolled back. Transactions that take longer than that, like a large 
+     * import, should be split into several calls, or the events in them 
+     * might never be applied to running views.
+     * 
+     * @param bookings  the events to persist
+     * @return          the generated ids
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                  if the events could not be persisted
+     */
+    long[] persistAll(Stream<? extends Booking> bookings);
+    
+    /**
+     * Persists all the specified events in a single transaction. This is 
+     * equivalent to {@code persistAll(bookings.stream())}.
+     * 
+     * @param bookings  the events to persist
+     * @return          the generated ids
+     * 
+     * @see #persistAll(Stream)
+     */
+    default long[] persistAll(Collection<? extends Booking> bookings) {
+        return persistAll(bookings.stream());
+    }
+    
+    /**
+     * Returns a stream of every event with an {@code id} greater than the 
+     * specified one, ordered by {@code id}. This is the query used to keep a
+     * view up to date, so it is answered from an index when possible.
+     * 
+     * @param id  the id to start after
+     * @return    stream of the following events
+     */
+    Stream<Booking> tail(long id);
+    
+    /**
+     * Decodes every event with an {@code id} greater than the specified one 
+     * into a reusable {@link BookingRecord} and passes it to the specified 
+     * action, in {@code id} order, until the limit is reached. Unlike 
+     * {@link #tail(long)}, no entity is created for each event. The same 
+     * record is passed for every event, so the action must copy any values
+     * that it wants to keep.
+     * 
+     * @param id      the id to start after
+     * @param limit   the maximum number of events
+     * @param action  the action to call with each event
+     * @return        the number of events
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                if the events could not be read
+     */
+    default int forEachAfter(long id, int limit, Consumer<? super BookingRecord> action) {
+        return forEachAfter(id, Integer.MIN_VALUE, Integer.MAX_VALUE, limit, action);
+    }
+    
+    /**
+     * Decodes the events after the specified {@code id} in the same way as 
+     * {@link #forEachAfter(long, int, Consumer)}, but only the events that 
+     * either have no {@code sauna} or a {@code sauna} within the specified 
+     * range. The filter is applied where the events are stored, so other
+     * events are never sent to the caller and don't count towards the limit.
+     * This is used by views that only materialize a range of saunas.
+     * 
+     * @param id          the id to start after
+     * @param firstSauna  the first sauna of the range
+     * @param lastSauna   the last sauna of the range
+     * @param limit       the maximum number of events
+     * @param action      the action to call with each event
+     * @return            the number of events
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                    if the events could not be read
+     */
+    int forEachAfter(long id, int firstSauna, int lastSauna, int limit, 
+        Consumer<? super BookingRecord> action);
+    
+    /**
+     * Returns the {@code id} of the last event that has been folded into the
+     * compacted state by {@link #compact(long, Stream)}, or {@code 0} if the
+     * events have never been compacted. Events up to this id are only 
+     * available through {@link #forEachCompacted(Consumer)}, so a reader 
+     * that has not reached it must start over from the compacted state.
+     * 
+     * @return  the compaction horizon
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *          if the horizon could not be read
+     */
+    long getHorizon();
+    
+    /**
+     * Decodes the compacted state into a reusable {@link BookingRecord} and 
+     * passes it to the specified action, in {@code id} order. There is one
+     * {@code CREATE} event for every booking that existed after the event at
+     * the {@link #getHorizon() horizon}, with the {@code id} of the event 
+     * that originally created it. A reader should apply these before the
+     * events after the horizon.
+     * 
+     * @param action  the action to call with each booking
+     * @return        the number of bookings
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                if the events could not be read
+     */
+    int forEachCompacted(Consumer<? super BookingRecord> action);
+    
+    /**
+     * Replaces the compacted state and every event up to and including the
+     * specified horizon with the specified bookings, given as one 
+     * {@code CREATE} event for every booking that exists after the event at 
+     * the horizon. The events must keep their original {@code id}. This is 
+     * done in a single transaction, and is typically done by 
+     * {@link com.github.pyknic.sauna.view.BookingCompaction}.
+     * 
+     * @param horizon  the id of the last event to replace
+     * @param state    the bookings after the event at the horizon
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                 if the events could not be compacted
+     */
+    void compact(long horizon, Stream<? extends Booking> state);
+    
+    /**
+     * Closes the partition that new events are written to at the latest 
+     * {@code id}, so that events persisted from now on go into a new one. 
+     * This is typically done at the start of every season. The table must be
+     * partitioned by range of {@code id} with a {@code MAXVALUE} partition 
+     * at the end, as in {@code setup.sql}.
+     * <p>
+     * Every query of the events after an {@code id}, like 
+     * {@link #forEachAfter(long, int, Consumer)}, only reads the partitions
+     * that can contain them. When the events are compacted, partitions that
+     * only contain compacted events are dropped instead of deleted row by 
+     * row. The embedded event log is already split into segments by 
+     * {@code id}, so there this only returns the next {@code id}.
+     * 
+     * @return  the first {@code id} of the new partition
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *          if the table is not partitioned or could not be altered
+     */
+    long rollPartition();
+    
+    /**
+     * Returns every event of the specified booking in {@code id} order. If 
+     * the events have been compacted, the history starts with the compacted
+     * {@code CREATE} event. The events are looked up by the index on 
+     * {@code booking_id}, so no view is needed.
+     * 
+     * @param bookingId  the booking
+     * @return           the events of the booking
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                   if the events could not be read
+     */
+    List<Booking> findHistory(long bookingId);
+    
+    /**
+     * Returns the current state of the specified booking as a {@code CREATE}
+     * event with the {@code id} of the event that created it, or empty if it
+     * does not exist. Only the events of the booking are read. Events that a
+     * view would refuse because the booking overlaps another one are not
+     * detected, so the result only matches the view if events are validated
+     * using {@link #persistIfAllowed(Booking)}.
+     * 
+     * @param bookingId  the booking
+     * @return           the current state of the booking, if it exists
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                   if the events could not be read
+     */
+    Optional<Booking> findBooking(long bookingId);
+    
+    /**
+     * Returns the current state of every booking of the specified sauna that 
+     * overlaps the specified period, ordered by start date, like 
+     * {@link #findBooking(long)}. The bookings that have ever been in the 
+     * sauna are found using the index on {@code sauna}, and only their events
+     * are read. Use {@link LocalDate#MIN} or {@link LocalDate#MAX} for an 
+     * open period.
+     * 
+     * @param sauna  the sauna
+     * @param from   the first day of the period
+     * @param to     the last day of the period
+     * @return       the bookings ordered by start date
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *               if the events could not be read
+     */
+    List<Booking> findBySauna(int sauna, LocalDate from, LocalDate to);
+    
+    /**
+     * Returns the current state of every booking made by the specified tenant
+     * that overlaps the specified period, ordered by start date, like 
+     * {@link #findBooking(long)}. The bookings that have ever belonged to the
+     * tenant are found using the index on {@code tenant}, and only their 
+     * events are read. Use {@link LocalDate#MIN} or {@link LocalDate#MAX} for
+     * an open period.
+     * 
+     * @param tenant  the tenant
+     * @param from    the first day of the period
+     * @param to      the last day of the period
+     * @return        the bookings ordered by start date
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                if the events could not be read
+     */
+    List<Booking> findByTenant(int tenant, LocalDate from, LocalDate to);
+    
+    /**
+     * Returns the greatest {@code id} of any persisted event, or {@code 0} if
+     * there are no events. This is used to tell how far behind a view is.
+     * 
+     * @return  the latest id
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *          if the id could not be read
+     */
+    long getLatestId();
+    
+    /**
+     * Returns the greatest {@code id} up to the specified one such that 
+     * every id after {@code afterId} up to it belongs to a committed event, 
+     * or {@code afterId} if the next id is missing. Since ids are generated
+     * before a transaction commits, a missing id either belongs to a 
+     * transaction that is still running or to one that was rolled back.
+     * Readers that tail the events use this to avoid skipping events that 
+     * are committed after events with greater ids.
+     * 
+     * @param afterId  the id of the last event seen by the reader
+     * @param upTo     the greatest id to check
+     * @return         the greatest id without any gap before it
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                 if the ids could not be read
+     */
+    long getContiguousId(long afterId, long upTo);
+    
+    /**
+     * Returns the number of committed events with an {@code id} after 
+     * {@code afterId} up to and including {@code upTo}. Readers use this to
+     * tell how many ids in a range are missing.
+     * 
+     * @param afterId  the id to count events after
+     * @param upTo     the greatest id to count
+     * @return         the number of events in the range
+     * 
+     * @throws com.speedment.runtime.core.exception.SpeedmentException  
+     *                 if the events could not be counted
+     */
+    long countEvents(long afterId, long upTo);
+    
+    /**
+     * Adds a listener that is called on the persisting thread every time an
+     * event has been successfully persisted using this manager. The entity
+     * passed to the listener has its generated {@code id} set. Listeners 
+     * should return quickly and must not throw exceptions.
+     * 
+     * @param listener  the listener to add
+     */
+    void addPersistListener(Consumer<Booking> listener);
+    
+    /**
+     * Removes a listener previously added using 
+     * {@link #addPersistListener(Consumer)}.
+     * 
+     * @param listener  the listener to remove
+     */
+    void removePersistListener(Consumer<Booking> listener);
+    
+}
@@ -1,6 +1,46 @@
 package com.github.pyknic.sauna.booking;
 
 import com.github.pyknic.sauna.booking.generated.GeneratedBookingManagerImpl;
+import com.speedment.common.injector.annotation.ExecuteBefore;
+import com.speedment.common.injector.annotation.Inject;
+import com.speedment.runtime.config.Dbms;
+import com.speedment.runtime.config.identifier.TableIdentifier;
+import com.speedment.runtime.core.component.ProjectComponent;
+import com.speedment.runtime.core.component.connectionpool.ConnectionPoolComponent;
+import com.speedment.runtime.core.exception.SpeedmentException;
+import com.speedment.runtime.field.Field;
+import static com.speedment.common.injector.State.STOPPED;
+import static com.speedment.runtime.config.util.DocumentDbUtil.referencedDbms;
+import static com.speedment.runtime.core.util.OptionalUtil.unwrap;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 /**
  * The default implementation for the manager of every {@link
@@ -12,5 +52,1088 @@ import com.github.pyknic.sauna.booking.generated.GeneratedBookingManagerImpl;
  */
 public final class BookingManagerImpl extends GeneratedBookingManagerImpl implements BookingManager {
     
+    private final static Logger LOGGER =
+        Logger.getLogger(BookingManagerImpl.class.getName());
     
-}
\ No newline at end of file
+    private final static int ROWS_PER_INSERT = 1_000;
+    private final static int VALIDATION_ATTEMPTS = 3;
+    private final static String COMPACTED        = "_compacted";
+    private final static String HORIZON          = "_horizon";
+    private final static String PARTITION_PREFIX = "p";
+    
+    private final List<Consumer<Booking>> persistListeners;
+    private @Inject ProjectComponent projects;
+    private @Inject ConnectionPoolComponent connectionPool;
+    private @Inject BookingSqlAdapter sqlAdapter;
+    private final LongAccumulator latest; // Latest id persisted by this manager
+    private final ReadWriteLock writes;   // Exclusive for validated events
+    private volatile BookingLog log;      // Null if the database is used
+    private volatile BookingValidator validator;
+    
+    public BookingManagerImpl() {
+        this.persistListeners = new CopyOnWriteArrayList<>();
+        this.latest           = new LongAccumulator(Math::max, 0);
+        this.writes           = new ReentrantReadWriteLock();
+    }
+    
+    /**
+     * Makes this manager store events in the specified log instead of in the
+     * database. This is done by 
+     * {@link com.github.pyknic.sauna.SaunaApplicationBuilder} before the 
+     * application is returned, and the log is closed when it is stopped.
+     * 
+     * @param log  the log to use
+     */
+    public void setLog(BookingLog log) {
+        this.log = requireNonNull(log);
+    }
+    
+    @ExecuteBefore(STOPPED)
+    void closeLog() {
+        final BookingLog current = log;
+        if (current != null) {
+            current.close();
+        }
+    }
+    
+    @Override
+    public Stream<Booking> stream() {
+        final BookingLog current = log;
+        return current == null ? super.stream() : current.stream();
+    }
+    
+    @Override
+    public Stream<Booking> tail(long id) {
+        final BookingLog current = log;
+        if (current == null) {
+            // The sort is applied by the database (ORDER BY id).
+            return super.stream()
+                .filter(Booking.ID.greaterThan(id))
+                .sorted(Booking.ID.comparator());
+        } else {
+            return current.tail(id);
+        }
+    }
+    
+    @Override
+    public int forEachAfter(long id, int firstSauna, int lastSauna, int limit, 
+            Consumer<? super BookingRecord> action) {
+        
+        final BookingLog current = log;
+        if (current != null) {
+            return current.forEachAfter(id, firstSauna, lastSauna, limit, action);
+        }
+        
+        final boolean all = firstSauna == Integer.MIN_VALUE 
+                         && lastSauna  == Integer.MAX_VALUE;
+        final BookingRecord record = new BookingRecord();
+        int count = 0;
+        
+        try (final Connection conn = connection();
+             final PreparedStatement ps = conn.prepareStatement(tailSql(!all))) {
+            
+            int i = 0;
+            ps.setLong(++i, id);
+            if (!all) {
+                ps.setInt(++i, firstSauna);
+                ps.setInt(++i, lastSauna);
+            }
+            
+            ps.setInt(++i, limit);
+            
+            try (final ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sqlAdapter.decode(rs, record);
+                    action.accept(record);
+                    count++;
+                }
+            }
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error reading events from " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+        
+        return count;
+    }
+    
+    @Override
+    public long getLatestId() {
+        final BookingLog current = log;
+        if (current != null) {
+            return current.getLast();
+        }
+        
+        try (final Connection conn = connection();
+             final Statement stmt = conn.createStatement();
+             final ResultSet rs = stmt.executeQuery(
+                 "SELECT MAX(" + column(Booking.ID) + ") FROM " + tableName()
+             )) {
+            
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error reading the latest id from " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+    }
+    
+    @Override
+    public long getContiguousId(long afterId, long upTo) {
+        if (upTo <= afterId) {
+            return afterId;
+        }
+        
+        // Appends to the log are synchronized and become visible in id 
+        // order, so there are never any gaps.
+        final BookingLog current = log;
+        if (current != null) {
+            return Math.max(afterId, Math.min(upTo, current.getLast()));
+        }
+        
+        final long[] contiguous = {afterId};
+        read("the ids after " + afterId, conn -> {
+            // There is usually no gap, which can be told from the number of 
+            // rows in the range without reading the ids.
+            if (count(conn, afterId, upTo) == upTo - afterId) {
+                contiguous[0] = upTo;
+                return;
+            }
+            
+            try (final PreparedStatement ps = conn.prepareStatement(
+                    "SELECT " + column(Booking.ID) + range() + 
+                    " ORDER BY " + column(Booking.ID))) {
+                
+                ps.setLong(1, afterId);
+                ps.setLong(2, upTo);
+                
+                try (final ResultSet rs = ps.executeQuery()) {
+                    while (rs.next() && rs.getLong(1) == contiguous[0] + 1) {
+                        contiguous[0]++;
+                    }
+                }
+            }
+        });
+        
+        return contiguous[0];
+    }
+    
+    @Override
+    public long countEvents(long afterId, long upTo) {
+        if (upTo <= afterId) {
+            return 0;
+        }
+        
+        final BookingLog current = log;
+        if (current != null) {
+            return Math.max(0, Math.min(upTo, current.getLast()) - afterId);
+        }
+        
+        final long[] count = {0};
+        read("the ids after " + afterId, conn -> 
+            count[0] = count(conn, afterId, upTo)
+        );
+        
+        return count[0];
+    }
+    
+    /**
+     * Returns the {@code FROM} and {@code WHERE} clauses that select a range
+     * of ids, with the id to start after and the last id as parameters.
+     */
+    private String range() {
+        return " FROM " + tableName() + 
+            " WHERE " + column(Booking.ID) + " > ?" + 
+            " AND " + column(Booking.ID) + " <= ?";
+    }
+    
+    private long count(Connection conn, long afterId, long upTo) 
+            throws SQLException {
+        
+        try (final PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*)" + range())) {
+            
+            ps.setLong(1, afterId);
+            ps.setLong(2, upTo);
+            
+            try (final ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+    
+    @Override
+    public long getHorizon() {
+        final BookingLog current = log;
+        if (current != null) {
+            return current.getHorizon();
+        }
+        
+        try (final Connection conn = connection()) {
+            return horizon(conn);
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error reading the compaction horizon of " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+    }
+    
+    @Override
+    public int forEachCompacted(Consumer<? super BookingRecord> action) {
+        final BookingLog current = log;
+        if (current != null) {
+            return current.forEachCompacted(action);
+        }
+        
+        final BookingRecord record = new BookingRecord();
+        int count = 0;
+        
+        try (final Connection conn = connection();
+             final Statement stmt = conn.createStatement();
+             final ResultSet rs = stmt.executeQuery(
+                 selectSql(tableName(COMPACTED)) + 
+                 " ORDER BY " + column(Booking.ID)
+             )) {
+            
+            while (rs.next()) {
+                sqlAdapter.decode(rs, record);
+                action.accept(record);
+                count++;
+            }
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error reading compacted events of " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+        
+        return count;
+    }
+    
+    @Override
+    public void compact(long horizon, Stream<? extends Booking> state) {
+        final BookingLog current = log;
+        if (current != null) {
+            current.compact(horizon, state);
+            return;
+        }
+        
+        try (final Connection conn = connection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            
+            try (final Statement stmt = conn.createStatement()) {
+                final long previous = horizon(conn);
+                if (horizon < previous) {
+                    throw new SpeedmentException(
+                        "Horizon " + horizon + " is before the current " + 
+                        "horizon " + previous + "."
+                    );
+                }
+                
+                stmt.executeUpdate("DELETE FROM " + tableName(COMPACTED));
+                
+                final Iterator<? extends Booking> it = state.iterator();
+                final List<Booking> chunk = new ArrayList<>(ROWS_PER_INSERT);
+                while (it.hasNext()) {
+                    final Booking entity = it.next();
+                    if (entity.getId() <= 0 || entity.getId() > horizon) {
+                        throw new SpeedmentException(
+                            "Illegal id of compacted event " + entity + "."
+                        );
+                    }
+                    
+                    chunk.add(entity);
+                    if (chunk.size() == ROWS_PER_INSERT || !it.hasNext()) {
+                        try (final PreparedStatement ps = conn.prepareStatement(
+                                compactedInsertSql(chunk.size()))) {
+                            
+                            int i = 0;
+                            for (final Booking b : chunk) {
+                                ps.setLong(++i, b.getId());
+                                i = setRow(ps, i, b);
+                            }
+                            
+                            ps.executeUpdate();
+                        }
+                        
+                        chunk.clear();
+                    }
+                }
+                
+                // Partitions that only contain compacted events are dropped
+                // once the transaction is complete, which is much cheaper 
+                // than deleting their rows. The events in them are ignored
+                // by every query since they are not after the horizon.
+                final List<Partition> dropped = compacted(partitions(conn), horizon);
+                
+                try (final PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM " + tableName() + 
+                        " WHERE " + column(Booking.ID) + " >= ?" + 
+                        " AND " + column(Booking.ID) + " <= ?")) {
+                    ps.setLong(1, dropped.isEmpty() ? 0 
+                        : dropped.get(dropped.size() - 1).bound);
+                    ps.setLong(2, horizon);
+                    ps.executeUpdate();
+                }
+                
+                stmt.executeUpdate("DELETE FROM " + tableName(HORIZON));
+                try (final PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO " + tableName(HORIZON) + 
+                        " (" + column(Booking.ID) + ") VALUES (?)")) {
+                    ps.setLong(1, horizon);
+                    ps.executeUpdate();
+                }
+                
+                conn.commit();
+                
+                // Dropping a partition commits implicitly, so it can not be
+                // part of the transaction. If it fails, the partition is 
+                // dropped by the next compaction instead.
+                for (final Partition p : dropped) {
+                    try {
+                        stmt.executeUpdate(
+                            "ALTER TABLE " + tableName() + 
+                            " DROP PARTITION " + quote(p.name)
+                        );
+                    } catch (final SQLException ex) {
+                        LOGGER.log(WARNING, ex, () -> String.format(
+                            "Could not drop compacted partition %s of %s.",
+                            p.name, getTableIdentifier().getTableName()
+                        ));
+                    }
+                }
+            } catch (final SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error compacting events in " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+    }
+    
+    @Override
+    public long rollPartition() {
+        final BookingLog current = log;
+        if (current != null) {
+            return current.getLast() + 1;
+        }
+        
+        try (final Connection conn = connection();
+             final Statement stmt = conn.createStatement()) {
+            
+            final List<Partition> partitions = partitions(conn);
+            if (partitions.isEmpty() 
+            ||  partitions.get(partitions.size() - 1).bound != Long.MAX_VALUE) {
+                throw new SpeedmentException(
+                    "Table " + getTableIdentifier().getTableName() + 
+                    " is not partitioned by range of " + 
+                    Booking.ID.identifier().getColumnName() + 
+                    " with a MAXVALUE partition at the end."
+                );
+            }
+            
+            final long start = start(partitions);
+            final long bound = getLatestId() + 1;
+            
+            // Don't create empty partitions.
+            if (bound <= start) {
+                return start;
+            }
+            
+            stmt.executeUpdate(rollSql(
+                tableName(), partitions.get(partitions.size() - 1), bound
+            ));
+            
+            return bound;
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error partitioning " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+    }
+    
+    @Override
+    public List<Booking> findHistory(long bookingId) {
+        final List<Booking> history = new ArrayList<>();
+        final long[] ids = {bookingId};
+        
+        final BookingLog current = log;
+        if (current != null) {
+            forEachOfBookings(current, ids, ev -> history.add(ev.toBooking()));
+        } else {
+            read("the history of booking " + bookingId, conn -> 
+                forEachOfBookings(conn, ids, ev -> history.add(ev.toBooking()))
+            );
+        }
+        
+        return history;
+    }
+    
+    @Override
+    public Optional<Booking> findBooking(long bookingId) {
+        final BookingFold fold = new BookingFold();
+        final long[] ids = {bookingId};
+        
+        final BookingLog current = log;
+        if (current != null) {
+            forEachOfBookings(current, ids, fold);
+        } else {
+            read("booking " + bookingId, conn -> 
+                forEachOfBookings(conn, ids, fold)
+            );
+        }
+        
+        return fold.bookings().stream().findFirst();
+    }
+    
+    @Override
+    public List<Booking> findBySauna(int sauna, LocalDate from, LocalDate to) {
+        final BookingFold fold = new BookingFold();
+        find(Booking.SAUNA, sauna, ev -> ev.hasSauna() && ev.getSauna() == sauna, fold);
+        return fold.bySauna(sauna, EpochDays.of(from), EpochDays.of(to));
+    }
+    
+    @Override
+    public List<Booking> findByTenant(int tenant, LocalDate from, LocalDate to) {
+        final BookingFold fold = new BookingFold();
+        find(Booking.TENANT, tenant, ev -> ev.hasTenant() && ev.getTenant() == tenant, fold);
+        return fold.byTenant(tenant, EpochDays.of(from), EpochDays.of(to));
+    }
+    
+    @Override
+    public Booking persist(Booking entity) {
+        return shared(() -> {
+            final BookingLog current = log;
+            final Booking persisted;
+
+            if (current == null) {
+                persisted = super.persist(entity);
+            } else {
+                current.append(entity);
+                persisted = entity;
+            }
+
+            notifyPersisted(persisted);
+            return persisted;
+        });
+    }
+    
+    @Override
+    public Optional<Booking> persistIfAllowed(Booking entity) {
+        final BookingValidator current = validator;
+        if (current == null) {
+            return Optional.of(persist(entity));
+        }
+        
+        // The validator might have to wait for the view to catch up, so it is
+        // called without holding the lock. The event is then only persisted
+        // if nothing else has been persisted in the meantime. Otherwise it is
+        // checked again, against the new events as well.
+        final Lock exclusive = writes.writeLock();
+        for (int attempt = 1; attempt < VALIDATION_ATTEMPTS; attempt++) {
+            final long after = latest.get();
+            if (!current.isAllowed(entity, after)) {
+                return Optional.empty();
+            }
+            
+            exclusive.lock();
+            try {
+                if (latest.get() == after) {
+                    return Optional.of(persist(entity));
+                }
+            } finally {
+                exclusive.unlock();
+            }
+        }
+        
+        // Events keep being persisted while this one is validated. Check it 
+        // while holding the lock, so that it is not starved. The view has 
+        // just caught up, so it only waits for the last few events.
+        exclusive.lock();
+        try {
+            return current.isAllowed(entity, latest.get())
+                ? Optional.of(persist(entity))
+                : Optional.empty();
+        } finally {
+            exclusive.unlock();
+        }
+    }
+    
+    @Override
+    public void setValidator(BookingValidator validator) {
+        this.validator = requireNonNull(validator);
+    }
+    
+    @Override
+    public Booking update(Booking entity) {
+        requireDatabase();
+        return shared(() -> super.update(entity));
+    }
+    
+    @Override
+    public Booking remove(Booking entity) {
+        requireDatabase();
+        return shared(() -> super.remove(entity));
+    }
+    
+    @Override
+    public long[] persistAll(Stream<? extends Booking> bookings) {
+        return shared(() -> persistAllShared(bookings));
+    }
+    
+    private long[] persistAllShared(Stream<? extends Booking> bookings) {
+        final BookingLog current = log;
+        if (current != null) {
+            final List<Booking> persisted = bookings.collect(toList());
+            final long[] ids = current.appendAll(persisted.stream());
+            
+            persisted.forEach(this::notifyPersisted);
+            return ids;
+        }
+        
+        final List<Booking> persisted = new ArrayList<>();
+        final LongStream.Builder ids = LongStream.builder();
+        
+        try (final Connection conn = connection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            
+            try {
+                final Iterator<? extends Booking> it = bookings.iterator();
+                final List<Booking> chunk = new ArrayList<>(ROWS_PER_INSERT);
+                
+                try (final PreparedStatement full = conn.prepareStatement(
+                        insertSql(ROWS_PER_INSERT), 
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    
+                    while (it.hasNext()) {
+                        chunk.add(it.next());
+                        
+                        if (chunk.size() == ROWS_PER_INSERT) {
+                            insert(full, chunk, ids);
+                            persisted.addAll(chunk);
+                            chunk.clear();
+                        }
+                    }
+                }
+                
+                // Insert any remaining rows using a smaller statement.
+                if (!chunk.isEmpty()) {
+                    try (final PreparedStatement rest = conn.prepareStatement(
+                            insertSql(chunk.size()), 
+                            Statement.RETURN_GENERATED_KEYS)) {
+                        
+                        insert(rest, chunk, ids);
+                        persisted.addAll(chunk);
+                    }
+                }
+                
+                conn.commit();
+            } catch (final SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error persisting events in " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+        
+        // Only notify listeners once the whole transaction has been committed.
+        persisted.forEach(this::notifyPersisted);
+        
+        return ids.build().toArray();
+    }
+    
+    @Override
+    public void addPersistListener(Consumer<Booking> listener) {
+        persistListeners.add(requireNonNull(listener));
+    }
+    
+    @Override
+    public void removePersistListener(Consumer<Booking> listener) {
+        persistListeners.remove(listener);
+    }
+    
+    private void requireDatabase() {
+        if (log != null) {
+            throw new SpeedmentException(
+                "Events in " + getTableIdentifier().getTableName() + 
+                " can't be modified since they are stored in an append-only log."
+            );
+        }
+    }
+    
+    /**
+     * Runs a write while holding the shared lock, so that it is not persisted
+     * between the validation of an event and the write of it. Writes that 
+     * are not validated can still run in parallel with each other.
+     * 
+     * @param write  the write to run
+     * @return       the result of the write
+     */
+    private <T> T shared(Supplier<T> write) {
+        final Lock lock = writes.readLock();
+        lock.lock();
+        try {
+            return write.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void notifyPersisted(Booking entity) {
+        latest.accumulate(entity.getId());
+        persistListeners.forEach(listener -> listener.accept(entity));
+    }
+    
+    /**
+     * Returns a connection from the Speedment connection pool to the database
+     * that this table belongs to. The connection is returned to the pool when
+     * it is closed.
+     * 
+     * @return  a pooled connection
+     */
+    Connection connection() {
+        final Dbms dbms = referencedDbms(
+            projects.getProject(), 
+            getTableIdentifier().getDbmsName()
+        );
+        
+        return connectionPool.getConnection(dbms);
+    }
+    
+    /**
+     * Returns the quoted, fully qualified name of this table.
+     * 
+     * @return  the table name
+     */
+    String tableName() {
+        return tableName("");
+    }
+    
+    /**
+     * Returns the quoted, fully qualified name of a table next to this one,
+     * named like this table followed by the specified suffix.
+     * 
+     * @param suffix  the suffix of the table name
+     * @return        the table name
+     */
+    String tableName(String suffix) {
+        final TableIdentifier<Booking> table = getTableIdentifier();
+        return quote(table.getSchemaName()) + "." + 
+            quote(table.getTableName() + suffix);
+    }
+    
+    /**
+     * Folds the events of every booking that has an event where the specified
+     * column has the specified value. A booking can be moved by an event that
+     * only changes its dates, so the period can not be part of the query.
+     */
+    private void find(Field<Booking> field, int key, 
+            Predicate<BookingRecord> matches, BookingFold fold) {
+        
+        final BookingLog current = log;
+        if (current != null) {
+            final Set<Long> ids = new HashSet<>();
+            forEach(current, ev -> {
+                if (matches.test(ev)) {
+                    ids.add(ev.getBookingId());
+                }
+            });
+            
+            forEachOfBookings(current, 
+                ids.stream().mapToLong(Long::longValue).toArray(), fold
+            );
+        } else {
+            read("the bookings of " + field.identifier().getColumnName() + 
+                " " + key, conn -> 
+                forEachOfBookings(conn, bookingIds(conn, field, key), fold)
+            );
+        }
+    }
+    
+    /**
+     * Runs the specified queries on a single connection within a transaction,
+     * so that they all see the same state even if the events are compacted
+     * at the same time.
+     */
+    private void read(String what, SqlAction action) {
+        try (final Connection conn = connection()) {
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            
+            try {
+                action.run(conn);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (final SQLException ex) {
+            throw new SpeedmentException(
+                "Error reading " + what + " from " + 
+                getTableIdentifier().getTableName() + ".", ex
+            );
+        }
+    }
+    
+    @FunctionalInterface
+    private interface SqlAction {
+        void run(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * Returns the {@code booking_id} of every event, compacted or not, where
+     * the specified column has the specified value.
+     */
+    private long[] bookingIds(Connection conn, Field<Booking> field, int key) 
+            throws SQLException {
+        
+        final String select = "SELECT " + column(Booking.BOOKING_ID) + 
+            " FROM %s WHERE " + column(field) + " = ?";
+        
+        try (final PreparedStatement ps = conn.prepareStatement(
+                String.format(select, tableName(COMPACTED)) + " UNION " + 
+                String.format(select, tableName()) + 
+                " AND " + column(Booking.ID) + " > ?")) {
+            
+            ps.setInt(1, key);
+            ps.setInt(2, key);
+            ps.setLong(3, horizon(conn));
+            
+            try (final ResultSet rs = ps.executeQuery()) {
+                final LongStream.Builder ids = LongStream.builder();
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+                
+                return ids.build().toArray();
+            }
+        }
+    }
+    
+    /**
+     * Decodes every event, compacted or not, of the specified bookings. The
+     * events of a booking are passed in {@code id} order.
+     */
+    private void forEachOfBookings(Connection conn, long[] bookingIds, 
+            Consumer<? super BookingRecord> action) throws SQLException {
+        
+        final BookingRecord record = new BookingRecord();
+        final long horizon = horizon(conn);
+        
+        for (int i = 0; i < bookingIds.length; i += ROWS_PER_INSERT) {
+            final int rows = Math.min(ROWS_PER_INSERT, bookingIds.length - i);
+            final String where = " WHERE " + column(Booking.BOOKING_ID) + 
+                " IN (" + Stream.generate(() -> "?").limit(rows)
+                    .collect(joining(", ")) + ")";
+            
+            try (final PreparedStatement ps = conn.prepareStatement(
+                    selectSql(tableName(COMPACTED)) + where + " UNION ALL " + 
+                    selectSql(tableName()) + where + 
+                    " AND " + column(Booking.ID) + " > ?" + 
+                    " ORDER BY " + column(Booking.ID))) {
+                
+                for (int j = 0; j < rows; j++) {
+                    ps.setLong(j + 1, bookingIds[i + j]);
+                    ps.setLong(rows + j + 1, bookingIds[i + j]);
+                }
+                
+                ps.setLong(2 * rows + 1, horizon);
+                
+                try (final ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        sqlAdapter.decode(rs, record);
+                        action.accept(record);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Decodes every event of the specified bookings from the event log, 
+     * which has no index on {@code booking_id}.
+     */
+    private static void forEachOfBookings(BookingLog log, long[] bookingIds, 
+            Consumer<? super BookingRecord> action) {
+        
+        final Set<Long> ids = new HashSet<>();
+        for (final long id : bookingIds) {
+            ids.add(id);
+        }
+        
+        forEach(log, ev -> {
+            if (ids.contains(ev.getBookingId())) {
+                action.accept(ev);
+            }
+        });
+    }
+    
+    /**
+     * Decodes every event in the log, starting with the compacted ones.
+     */
+    private static void forEach(BookingLog log, 
+            Consumer<? super BookingRecord> action) {
+        
+        log.forEachCompacted(action);
+        log.forEachAfter(log.getHorizon(), Integer.MAX_VALUE, action);
+    }
+    
+    /**
+     * Returns the range partitions of the event table in order, or an empty
+     * list if the table is not partitioned.
+     */
+    private List<Partition> partitions(Connection conn) throws SQLException {
+        final TableIdentifier<Booking> table = getTableIdentifier();
+        final List<Partition> partitions = new ArrayList<>();
+        
+        try (final PreparedStatement ps = conn.prepareStatement(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION" + 
+                " FROM information_schema.PARTITIONS" + 
+                " WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?" + 
+                " AND PARTITION_NAME IS NOT NULL" + 
+                " ORDER BY PARTITION_ORDINAL_POSITION")) {
+            
+            ps.setString(1, table.getSchemaName());
+            ps.setString(2, table.getTableName());
+            
+            try (final ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    final String bound = rs.getString(2);
+                    partitions.add(new Partition(rs.getString(1), 
+                        "MAXVALUE".equals(bound) 
+                            ? Long.MAX_VALUE 
+                            : Long.parseLong(bound)
+                    ));
+                }
+            }
+        }
+        
+        return partitions;
+    }
+    
+    /**
+     * Returns the partitions that only contain events up to and including 
+     * the horizon, in order.
+     */
+    static List<Partition> compacted(List<Partition> partitions, long horizon) {
+        final List<Partition> compacted = new ArrayList<>();
+        for (final Partition p : partitions) {
+            if (p.bound <= horizon + 1) {
+                compacted.add(p);
+            }
+        }
+        
+        return compacted;
+    }
+    
+    /**
+     * Returns the first {@code id} of the last partition, which is the one
+     * that new events are written to.
+     */
+    static long start(List<Partition> partitions) {
+        return partitions.size() == 1 ? 1 
+            : partitions.get(partitions.size() - 2).bound;
+    }
+    
+    /**
+     * Returns the statement that splits the specified partition at the 
+     * bound, so that events from the bound go into a partition of the same
+     * name and the older ones into a new partition named after the bound.
+     */
+    static String rollSql(String table, Partition open, long bound) {
+        return "ALTER TABLE " + table + 
+            " REORGANIZE PARTITION " + quote(open.name) + " INTO (" + 
+            "PARTITION " + quote(PARTITION_PREFIX + bound) + 
+            " VALUES LESS THAN (" + bound + "), " + 
+            "PARTITION " + quote(open.name) + 
+            " VALUES LESS THAN MAXVALUE)";
+    }
+    
+    /**
+     * A range partition of the event table, holding the events with an 
+     * {@code id} less than the bound.
+     */
+    final static class Partition {
+        
+        private final String name;
+        private final long bound;
+        
+        Partition(String name, long bound) {
+            this.name  = requireNonNull(name);
+            this.bound = bound;
+        }
+    }
+    
+    /**
+     * Returns the horizon stored in the database, or {@code 0} if the table
+     * has never been compacted.
+     */
+    private long horizon(Connection conn) throws SQLException {
+        try (final Statement stmt = conn.createStatement();
+             final ResultSet rs = stmt.executeQuery(
+                 "SELECT MAX(" + column(Booking.ID) + ") FROM " + tableName(HORIZON)
+             )) {
+            
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    private String compactedInsertSql(int rows) {
+        final String row = "(?, ?, ?, ?, ?, ?, ?)";
+        
+        return "INSERT INTO " + tableName(COMPACTED) + " (" + 
+            Stream.of(
+                Booking.ID, 
+                Booking.BOOKING_ID, 
+                Booking.EVENT_TYPE, 
+                Booking.TENANT, 
+                Booking.SAUNA, 
+                Booking.BOOKED_FROM, 
+                Booking.BOOKED_TO
+            ).map(BookingManagerImpl::column).collect(joining(", ")) + 
+            ") VALUES " + 
+            Stream.generate(() -> row).limit(rows).collect(joining(", "));
+    }
+    
+    private String insertSql(int rows) {
+        final String row = "(?, ?, ?, ?, ?, ?)";
+        
+        return "INSERT INTO " + tableName() + " (" + 
+            Stream.of(
+                Booking.BOOKING_ID, 
+                Booking.EVENT_TYPE, 
+                Booking.TENANT, 
+                Booking.SAUNA, 
+                Booking.BOOKED_FROM, 
+                Booking.BOOKED_TO
+            ).map(BookingManagerImpl::column).collect(joining(", ")) + 
+            ") VALUES " + 
+            Stream.generate(() -> row).limit(rows).collect(joining(", "));
+    }
+    
+    /**
+     * Returns a query for the events after an id in the form expected by
+     * {@link BookingSqlAdapter#decode(ResultSet, BookingRecord)}. The type is
+     * selected as the index of the {@code ENUM} and the dates as the number
+     * of days since the epoch, so that they can be read as primitives. If 
+     * the query is filtered, only events without a sauna or with a sauna in
+     * a range are selected.
+     */
+    private String tailSql(boolean filtered) {
+        final String id    = column(Booking.ID);
+        final String sauna = column(Booking.SAUNA);
+        
+        return selectSql(tableName()) + 
+            " WHERE " + id + " > ?" + 
+            (filtered ? " AND (" + sauna + " IS NULL OR " + 
+                sauna + " BETWEEN ? AND ?)" : "") + 
+            " ORDER BY " + id + " LIMIT ?";
+    }
+    
+    /**
+     * Returns a query for every row in the specified table, in the form 
+     * expected by {@link BookingSqlAdapter#decode(ResultSet, BookingRecord)}.
+     */
+    private static String selectSql(String table) {
+        return "SELECT " + column(Booking.ID) + ", " + 
+            column(Booking.BOOKING_ID) + ", " + 
+            column(Booking.EVENT_TYPE) + " + 0, " + 
+            column(Booking.TENANT) + ", " + 
+            column(Booking.SAUNA) + ", " + 
+            epochDays(Booking.BOOKED_FROM) + ", " + 
+            epochDays(Booking.BOOKED_TO) + 
+            " FROM " + table;
+    }
+    
+    private static String epochDays(Field<Booking> field) {
+        return "DATEDIFF(" + column(field) + ", '1970-01-01')";
+    }
+    
+    private static void insert(PreparedStatement ps, List<Booking> chunk, 
+            LongStream.Builder ids) throws SQLException {
+        
+        int i = 0;
+        for (final Booking entity : chunk) {
+            i = setRow(ps, i, entity);
+        }
+        
+        ps.executeUpdate();
+        
+        // MySQL returns the generated keys of a multi-row insert in the 
+        // order that the rows were given.
+        try (final ResultSet keys = ps.getGeneratedKeys()) {
+            for (final Booking entity : chunk) {
+                if (!keys.next()) {
+                    throw new SQLException(
+                        "Expected " + chunk.size() + " generated keys."
+                    );
+                }
+                
+                final long id = keys.getLong(1);
+                entity.setId(id);
+                ids.add(id);
+            }
+        }
+    }
+    
+    /**
+     * Sets every column except the {@code id} of the specified entity, 
+     * starting after the specified parameter index.
+     * 
+     * @return  the index of the last parameter set
+     */
+    private static int setRow(PreparedStatement ps, int i, Booking entity) 
+            throws SQLException {
+        
+        ps.setLong(++i, entity.getBookingId());
+        ps.setString(++i, entity.getEventType());
+        setInt(ps, ++i, unwrap(entity.getTenant()));
+        setInt(ps, ++i, unwrap(entity.getSauna()));
+        setDate(ps, ++i, unwrap(entity.getBookedFrom()));
+        setDate(ps, ++i, unwrap(entity.getBookedTo()));
+        return i;
+    }
+    
+    private static void setInt(PreparedStatement ps, int index, Integer value) 
+            throws SQLException {
+        
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+    
+    private static void setDate(PreparedStatement ps, int index, Date value) 
+            throws SQLException {
+        
+        if (value == null) {
+            ps.setNull(index, Types.DATE);
+        } else {
+            ps.setDate(index, value);
+        }
+    }
+    
+    static String column(Field<Booking> field) {
+        return quote(field.identifier().getColumnName());
+    }
+    
+    private static String quote(String name) {
+        return "`" + name + "`";
+    }
+}
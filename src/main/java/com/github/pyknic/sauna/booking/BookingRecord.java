@@ -0,0 +1,150 @@
+package com.github.pyknic.sauna.booking;
+
+import java.time.LocalDate;
+import java.util.StringJoiner;
+
+/**
+ * A mutable, primitive representation of a row in the {@code booking} table,
+ * used to decode many events without creating any objects per event. The same
+ * instance is typically refilled for every row, so a consumer that wants to
+ * keep the values must copy them.
+ * <p>
+ * The event type is stored as an {@link EventType}, and dates are stored as
+ * days since the epoch. Columns that can be {@code null} have a flag telling if they are
+ * set.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingRecord {
+
+    private final static int HAS_TENANT = 1;
+    private final static int HAS_SAUNA  = 2;
+    private final static int HAS_FROM   = 4;
+    private final static int HAS_TO     = 8;
+
+    private long id;
+    private long bookingId;
+    private EventType eventType;
+    private int tenant;
+    private int sauna;
+    private int bookedFrom;
+    private int bookedTo;
+    private int present;
+
+    public long getId()             { return id; }
+    public long getBookingId()      { return bookingId; }
+    public EventType getEventType() { return eventType; }
+    public boolean hasTenant()      { return (present & HAS_TENANT) != 0; }
+    public int getTenant()          { return tenant; }
+    public boolean hasSauna()       { return (present & HAS_SAUNA) != 0; }
+    public int getSauna()           { return sauna; }
+    public boolean hasBookedFrom()  { return (present & HAS_FROM) != 0; }
+    public int getBookedFrom()      { return bookedFrom; }
+    public boolean hasBookedTo()    { return (present & HAS_TO) != 0; }
+    public int getBookedTo()        { return bookedTo; }
+
+    /**
+     * Replaces every value of this record with the values of the specified
+     * entity.
+     *
+     * @param entity  the entity to copy
+     * @return        this record
+     *
+     * @throws IllegalArgumentException  if the event type is unknown
+     */
+    public BookingRecord set(Booking entity) {
+        set(entity.getId(), entity.getBookingId(), EventType.of(entity.getEventType()));
+
+        if (entity.getTenant().isPresent()) {
+            setTenant(entity.getTenant().getAsInt());
+        }
+
+        if (entity.getSauna().isPresent()) {
+            setSauna(entity.getSauna().getAsInt());
+        }
+
+        if (entity.getBookedFrom().isPresent()) {
+            setBookedFrom(EpochDays.of(entity.getBookedFrom().get()));
+        }
+
+        if (entity.getBookedTo().isPresent()) {
+            setBookedTo(EpochDays.of(entity.getBookedTo().get()));
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns a new entity with the values of this record.
+     *
+     * @return  the entity
+     */
+    public Booking toBooking() {
+        final Booking entity = new BookingImpl()
+            .setId(id)
+            .setBookingId(bookingId)
+            .setEventType(eventType.name());
+
+        if (hasTenant()) {
+            entity.setTenant(tenant);
+        }
+
+        if (hasSauna()) {
+            entity.setSauna(sauna);
+        }
+
+        if (hasBookedFrom()) {
+            entity.setBookedFrom(EpochDays.toDate(bookedFrom));
+        }
+
+        if (hasBookedTo()) {
+            entity.setBookedTo(EpochDays.toDate(bookedTo));
+        }
+
+        return entity;
+    }
+
+    /**
+     * Starts decoding a new row, clearing all nullable values.
+     */
+    void set(long id, long bookingId, EventType eventType) {
+        this.id        = id;
+        this.bookingId = bookingId;
+        this.eventType = eventType;
+        this.present   = 0;
+    }
+
+    void setTenant(int tenant) {
+        this.tenant   = tenant;
+        this.present |= HAS_TENANT;
+    }
+
+    void setSauna(int sauna) {
+        this.sauna    = sauna;
+        this.present |= HAS_SAUNA;
+    }
+
+    void setBookedFrom(int bookedFrom) {
+        this.bookedFrom = bookedFrom;
+        this.present   |= HAS_FROM;
+    }
+
+    void setBookedTo(int bookedTo) {
+        this.bookedTo = bookedTo;
+        this.present |= HAS_TO;
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner sj = new StringJoiner(", ", "BookingRecord { ", " }");
+        sj.add("id = "         + id);
+        sj.add("bookingId = "  + bookingId);
+        sj.add("eventType = "  + eventType);
+        sj.add("tenant = "     + (hasTenant() ? tenant : null));
+        sj.add("sauna = "      + (hasSauna() ? sauna : null));
+        sj.add("bookedFrom = " + (hasBookedFrom() ? LocalDate.ofEpochDay(bookedFrom) : null));
+        sj.add("bookedTo = "   + (hasBookedTo() ? LocalDate.ofEpochDay(bookedTo) : null));
+        return sj.toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.github.pyknic.sauna.booking;
 
 import com.github.pyknic.sauna.booking.generated.GeneratedBookingSqlAdapter;
+import com.speedment.runtime.core.exception.SpeedmentException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * The SqlAdapter for every {@link com.github.pyknic.sauna.booking.Booking}
@@ -12,5 +15,73 @@ import com.github.pyknic.sauna.booking.generated.GeneratedBookingSqlAdapter;
  */
 public class BookingSqlAdapter extends GeneratedBookingSqlAdapter {
     
+    /**
+     * Decodes the current row into a new entity. The event type is validated
+     * and replaced by the name of the {@link EventType} constant, so that 
+     * entities don't keep a separate copy of the string read from the 
+     * database.
+     * 
+     * @param resultSet  the result set positioned at a row
+     * @return           the entity
+     * @throws SpeedmentException  if the row could not be decoded
+     */
+    @Override
+    protected Booking apply(ResultSet resultSet) throws SpeedmentException {
+        final Booking entity = super.apply(resultSet);
+        
+        try {
+            entity.setEventType(EventType.of(entity.getEventType()).name());
+        } catch (final IllegalArgumentException ex) {
+            throw new SpeedmentException(
+                "Error decoding event " + entity.getId() + ".", ex
+            );
+        }
+        
+        return entity;
+    }
     
+    /**
+     * Decodes the current row of the specified result set into the record
+     * without creating any objects. Unlike {@link #apply(ResultSet)}, the 
+     * columns must be {@code id}, {@code booking_id}, the index of 
+     * {@code event_type} and {@code tenant}, {@code sauna} followed by the 
+     * epoch days of {@code booked_from} and {@code booked_to}, in that order.
+     * 
+     * @param resultSet  the result set positioned at a row
+     * @param record     the record to decode into
+     * @throws SQLException  if a column could not be read or the event type 
+     *                        is unknown
+     */
+    public void decode(ResultSet resultSet, BookingRecord record) throws SQLException {
+        final long id = resultSet.getLong(1);
+        final EventType type;
+        
+        try {
+            type = EventType.of(resultSet.getByte(3));
+        } catch (final IllegalArgumentException ex) {
+            throw new SQLException("Error decoding event " + id + ".", ex);
+        }
+        
+        record.set(id, resultSet.getLong(2), type);
+        
+        final int tenant = resultSet.getInt(4);
+        if (!resultSet.wasNull()) {
+            record.setTenant(tenant);
+        }
+        
+        final int sauna = resultSet.getInt(5);
+        if (!resultSet.wasNull()) {
+            record.setSauna(sauna);
+        }
+        
+        final int from = resultSet.getInt(6);
+        if (!resultSet.wasNull()) {
+            record.setBookedFrom(from);
+        }
+        
+        final int to = resultSet.getInt(7);
+        if (!resultSet.wasNull()) {
+            record.setBookedTo(to);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exports and imports the events of a {@link BookingManager} in the binary
+ * format of {@link BookingEncoder}, to copy the booking log to another
+ * region or to backfill a new database. Events are exported using
+ * {@link BookingManager#forEachAfter(long, int, java.util.function.Consumer)}
+ * so that no entity is created for each event, and imported in batches
+ * using {@link BookingManager#persistAll(java.util.Collection)}.
+ * <p>
+ * A full export starts with the compacted state, if there is one, followed
+ * by every event after the horizon. Imported events get new ids from the
+ * receiving manager, in the same order as in the stream, so the views of the
+ * receiving manager end up with the same bookings. Events are not validated
+ * again when they are imported.
+ * <p>
+ * Ids are generated before a transaction commits, so an event can become
+ * visible after events with greater ids. An export never reads past an id
+ * that is missing until the gap timeout has passed since the export started.
+ * After that, every id that was missing up to the latest id when the export
+ * started is assumed to have been rolled back. A later transfer that starts
+ * after the last exported id therefore never misses an event.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingTransfer {
+
+    private final static int BATCH_SIZE = 10_000;
+    
+    /**
+     * The default time in milliseconds to wait for a missing id before it is
+     * assumed to have been rolled back.
+     */
+    public final static long DEFAULT_GAP_TIMEOUT = 30_000;
+    
+    private final static long GAP_CHECK_EVERY = 100; // Milliseconds
+
+    /**
+     * Exports every event with an {@code id} greater than the specified one
+     * to a file, replacing any existing file.
+     *
+     * @param mgr      the manager to export the events of
+     * @param afterId  the id to start after, or {@code 0} for every event
+     * @param file     the file to write to
+     * @return         the number of exported events
+     *
+     * @throws IllegalArgumentException  if the events after the id have been
+     *                                   compacted
+     * @throws UncheckedIOException      if the file could not be written
+     */
+    public static long export(BookingManager mgr, long afterId, Path file) {
+        try (final FileChannel channel = FileChannel.open(file,
+                CREATE, TRUNCATE_EXISTING, WRITE)) {
+
+            final long count = export(mgr, afterId, channel);
+            channel.force(false);
+            return count;
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error writing export '" + file + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Exports every event with an {@code id} greater than the specified one
+     * to a channel, for example a socket. The channel is not closed.
+     *
+     * @param mgr      the manager to export the events of
+     * @param afterId  the id to start after, or {@code 0} for every event
+     * @param channel  the channel to write to
+     * @return         the number of exported events
+     *
+     * @throws IllegalArgumentException  if the events after the id have been
+     *                                   compacted
+     * @throws UncheckedIOException      if the channel could not be written
+     */
+    public static long export(BookingManager mgr, long afterId,
+            WritableByteChannel channel) {
+
+        return export(mgr, afterId, channel, DEFAULT_GAP_TIMEOUT);
+    }
+
+    /**
+     * Exports every event with an {@code id} greater than the specified one
+     * to a channel, waiting at most the specified time for ids that are 
+     * missing. The channel is not closed.
+     *
+     * @param mgr         the manager to export the events of
+     * @param afterId     the id to start after, or {@code 0} for every event
+     * @param channel     the channel to write to
+     * @param gapTimeout  how long to wait for a missing id in milliseconds
+     *                    before it is skipped
+     * @return            the number of exported events
+     *
+     * @throws IllegalArgumentException  if the events after the id have been
+     *                                   compacted
+     * @throws UncheckedIOException      if the channel could not be written,
+     *                                   or the thread was interrupted while
+     *                                   waiting for a missing id
+     */
+    public static long export(BookingManager mgr, long afterId,
+            WritableByteChannel channel, long gapTimeout) {
+
+        final long started = System.currentTimeMillis();
+        final long latest  = mgr.getLatestId();
+        final long horizon = mgr.getHorizon();
+        if (afterId > 0 && afterId < horizon) {
+            throw new IllegalArgumentException(
+                "Events after " + afterId + " have been compacted up to " +
+                horizon + "."
+            );
+        }
+
+        final BookingEncoder encoder = new BookingEncoder(channel);
+        if (afterId < horizon) {
+            mgr.forEachCompacted(encoder::write);
+        }
+
+        // Export the events up to the first missing id. If there is one, 
+        // wait for it to be committed. Once the timeout has passed, every id
+        // that is still missing up to the latest one is skipped.
+        long from = Math.max(afterId, horizon);
+        from = exportRange(mgr, from, mgr.getContiguousId(from, latest), encoder);
+        
+        while (from < latest) {
+            final long remaining = started + gapTimeout - System.currentTimeMillis();
+            if (remaining <= 0) {
+                exportRange(mgr, from, latest, encoder);
+                break;
+            }
+            
+            try {
+                Thread.sleep(Math.min(remaining, GAP_CHECK_EVERY));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException(
+                    "Interrupted while waiting for event " + (from + 1) + "."
+                ));
+            }
+            
+            from = exportRange(mgr, from, mgr.getContiguousId(from, latest), encoder);
+        }
+
+        encoder.finish();
+        return encoder.getCount();
+    }
+
+    /**
+     * Exports the events after the first id up to and including the second.
+     * Returns the id that the next range should start after.
+     */
+    private static long exportRange(BookingManager mgr, long afterId, 
+            long upTo, BookingEncoder encoder) {
+        
+        long from = afterId;
+        while (from < upTo) {
+            final long[] last = {from};
+            final int added = mgr.forEachAfter(from, BATCH_SIZE, record -> {
+                if (record.getId() <= upTo) {
+                    encoder.write(record);
+                    last[0] = record.getId();
+                }
+            });
+            
+            if (added < BATCH_SIZE || last[0] == from) {
+                break;
+            }
+
+            from = last[0];
+        }
+        
+        return upTo;
+    }
+
+    /**
+     * Imports every event in a file created by
+     * {@link #export(BookingManager, long, Path)}.
+     *
+     * @param file  the file to read from
+     * @param mgr   the manager to persist the events in
+     * @return      the number of imported events
+     *
+     * @throws UncheckedIOException  if the file could not be read or is not
+     *                               complete
+     */
+    public static long importFrom(Path file, BookingManager mgr) {
+        try (final FileChannel channel = FileChannel.open(file, READ)) {
+            return importFrom(channel, mgr);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error reading export '" + file + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Imports every event from a channel until the end of the stream. Each
+     * batch of events is persisted in a separate transaction, so if the
+     * stream is not complete, the events before the failing batch have
+     * already been persisted. The channel is not closed.
+     *
+     * @param channel  the channel to read from
+     * @param mgr      the manager to persist the events in
+     * @return         the number of imported events
+     *
+     * @throws UncheckedIOException  if the channel could not be read or the
+     *                               stream is not complete
+     */
+    public static long importFrom(ReadableByteChannel channel, BookingManager mgr) {
+        final BookingDecoder decoder = new BookingDecoder(channel);
+        final BookingRecord record   = new BookingRecord();
+        final List<Booking> batch    = new ArrayList<>(BATCH_SIZE);
+        long count = 0;
+
+        while (decoder.read(record)) {
+            batch.add(record.toBooking());
+
+            if (batch.size() == BATCH_SIZE) {
+                count += mgr.persistAll(batch).length;
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            count += mgr.persistAll(batch).length;
+        }
+
+        return count;
+    }
+
+    private BookingTransfer() {}
+}
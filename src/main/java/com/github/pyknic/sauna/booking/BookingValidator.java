@@ -0,0 +1,27 @@
+package com.github.pyknic.sauna.booking;
+
+/**
+ * Decides if an event should be persisted by 
+ * {@link BookingManager#persistIfAllowed(Booking)}. This is typically a 
+ * materialized view of the events, like 
+ * {@link com.github.pyknic.sauna.view.BookingView#isAllowed(Booking, long)}.
+ * 
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+@FunctionalInterface
+public interface BookingValidator {
+    
+    /**
+     * Returns {@code true} if the specified event would be accepted if it 
+     * was appended after every event up to and including the specified 
+     * {@code id}. Those are the events that have been persisted by the 
+     * manager so far, so the validator might have to wait until it has seen
+     * them.
+     * 
+     * @param event  the event to check
+     * @param after  the id of the last event persisted by the manager
+     * @return       {@code true} if the event is allowed
+     */
+    boolean isAllowed(Booking event, long after);
+}
@@ -0,0 +1,83 @@
+package com.github.pyknic.sauna.booking;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.TimeZone;
+
+/**
+ * Conversions between {@link Date} and the number of days since the epoch,
+ * which is how dates are stored by the view and the event log.
+ * <p>
+ * A {@code java.sql.Date} is midnight of the day in the default time zone.
+ * The conversions are done with arithmetic on the milliseconds of the date 
+ * and the offset of the time zone, instead of using the deprecated calendar
+ * fields of {@code Date} that {@link Date#toLocalDate()} and 
+ * {@link Date#valueOf(LocalDate)} go through. The default time zone is read
+ * when this class is loaded.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class EpochDays {
+
+    private final static long MILLIS_PER_DAY = 86_400_000L;
+    private final static TimeZone ZONE = TimeZone.getDefault();
+
+    /**
+     * Returns the epoch day of the specified date.
+     *
+     * @param date  the date
+     * @return      the number of days since 1970-01-01
+     */
+    public static int of(Date date) {
+        return Math.toIntExact(dayOf(date.getTime(), ZONE));
+    }
+
+    /**
+     * Returns the epoch day of the specified date, limited to the range of an
+     * {@code int} so that {@link LocalDate#MIN} and {@link LocalDate#MAX} can
+     * be used as open bounds.
+     *
+     * @param date  the date
+     * @return      the number of days since 1970-01-01
+     */
+    public static int of(LocalDate date) {
+        final long day = date.toEpochDay();
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, day));
+    }
+
+    /**
+     * Returns a new date at midnight of the specified epoch day.
+     *
+     * @param epochDay  the number of days since 1970-01-01
+     * @return          the date
+     */
+    public static Date toDate(int epochDay) {
+        final TimeZone zone = ZONE;
+        final long utc = epochDay * MILLIS_PER_DAY;
+
+        // The offset at local midnight might differ from the one at UTC
+        // midnight, so adjust it once using the offset at the first guess.
+        // If midnight is skipped by a transition, the adjusted time ends up
+        // on the day before and the first guess is the start of the day.
+        final long first  = utc - zone.getOffset(utc);
+        final long second = utc - zone.getOffset(first);
+        return new Date(dayOf(second, zone) == epochDay ? second : first);
+    }
+
+    /**
+     * Returns the specified epoch day as a {@link LocalDate}.
+     *
+     * @param epochDay  the number of days since 1970-01-01
+     * @return          the date
+     */
+    public static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static long dayOf(long millis, TimeZone zone) {
+        return Math.floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    private EpochDays() {}
+}
@@ -0,0 +1,68 @@
+package com.github.pyknic.sauna.booking;
+
+/**
+ * The type of a booking event, as stored in the {@code event_type} column.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public enum EventType {
+
+    CREATE,
+    UPDATE,
+    DELETE;
+
+    private final static EventType[] VALUES = values();
+
+    /**
+     * Returns the code of this type, which is the index of the value in the
+     * {@code ENUM} column (starting at {@code 1}).
+     *
+     * @return  the code
+     */
+    public byte code() {
+        return (byte) (ordinal() + 1);
+    }
+
+    /**
+     * Returns the type with the specified code.
+     *
+     * @param code  the code
+     * @return      the type
+     *
+     * @throws IllegalArgumentException  if there is no such type
+     */
+    public static EventType of(byte code) {
+        if (code < 1 || code > VALUES.length) {
+            throw new IllegalArgumentException(
+                "Unknown event type code " + code + "."
+            );
+        }
+
+        return VALUES[code - 1];
+    }
+
+    /**
+     * Returns the type with the specified name. Unlike 
+     * {@link #valueOf(String)}, the name is compared without creating any
+     * objects.
+     *
+     * @param name  the name as stored in the database
+     * @return      the type
+     *
+     * @throws IllegalArgumentException  if there is no such type
+     */
+    public static EventType of(String name) {
+        if (name != null) {
+            switch (name) {
+                case "CREATE" : return CREATE;
+                case "UPDATE" : return UPDATE;
+                case "DELETE" : return DELETE;
+            }
+        }
+
+        throw new IllegalArgumentException(
+            "Unknown event type '" + name + "'."
+        );
+    }
+}
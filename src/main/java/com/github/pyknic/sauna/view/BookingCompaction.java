@@ -0,0 +1,111 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.BookingManager;
+import static java.util.Collections.singletonList;
+import static java.util.logging.Level.INFO;
+import java.util.logging.Logger;
+
+/**
+ * Folds the history of every booking up to a retention horizon into a single
+ * {@code CREATE} event with its current state, dropping bookings that have
+ * been deleted. The events are replayed into a temporary {@link BookingView}
+ * so that exactly the same rules decide the state as in any other view, and
+ * the result is handed to 
+ * {@link BookingManager#compact(long, java.util.stream.Stream)}.
+ * <p>
+ * Views that are already past the horizon are not affected, and new views
+ * start from the compacted state. A view that has stopped before the horizon
+ * can not catch up and must be rebuilt, so the horizon should be chosen well
+ * behind every running view.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingCompaction {
+
+    private final static Logger LOGGER =
+        Logger.getLogger(BookingCompaction.class.getName());
+
+    private final static int BATCH_SIZE = 100_000;
+
+    /**
+     * Compacts every event up to and including the specified horizon.
+     *
+     * @param mgr      the manager to compact the events of
+     * @param horizon  the id of the last event to compact
+     * @return         the number of bookings in the compacted state
+     *
+     * @throws IllegalArgumentException  if the horizon is before the current
+     *                                   horizon of the manager
+     */
+    public static int compact(BookingManager mgr, long horizon) {
+        final long previous = mgr.getHorizon();
+        if (horizon < previous) {
+            throw new IllegalArgumentException(
+                "Horizon " + horizon + " is before the current horizon " +
+                previous + "."
+            );
+        }
+
+        final CapturingSource source = new CapturingSource();
+        final BookingView view = BookingView.create(
+            singletonList(source), null, null
+        );
+
+        try {
+            final BookingEventSink sink = source.sink;
+
+            // Start from the previous compaction and replay the events after
+            // it, up to the new horizon.
+            mgr.forEachCompacted(sink::accept);
+            sink.skipTo(previous);
+
+            while (true) {
+                final long from = sink.getLast();
+                final int added = mgr.forEachAfter(from, BATCH_SIZE, record -> {
+                    if (record.getId() <= horizon) {
+                        sink.accept(record);
+                    }
+                });
+
+                if (added < BATCH_SIZE || sink.getLast() >= horizon
+                ||  sink.getLast() == from) {
+                    break;
+                }
+            }
+
+            sink.skipTo(horizon);
+
+            final BookingViewSnapshot state = view.snapshot();
+            mgr.compact(horizon, state.stream());
+
+            LOGGER.log(INFO, () -> String.format(
+                "%s: Compacted events up to %d into %d booking(s).",
+                System.identityHashCode(sink), horizon, state.size()
+            ));
+
+            return state.size();
+        } finally {
+            view.stop();
+        }
+    }
+
+    /**
+     * A source that only keeps the sink so that events can be delivered to it
+     * from the calling thread.
+     */
+    private final static class CapturingSource implements BookingEventSource {
+
+        private BookingEventSink sink;
+
+        @Override
+        public void start(BookingEventSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void stop() {}
+    }
+
+    private BookingCompaction() {}
+}
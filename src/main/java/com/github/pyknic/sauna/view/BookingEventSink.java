@@ -0,0 +1,143 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import java.util.List;
+
+/**
+ * The receiving end of a {@link BookingEventSource}. Events are applied in
+ * {@code id} order and every event is applied at most once, even if several
+ * sources deliver it. All methods are thread safe.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public interface BookingEventSink {
+
+    /**
+     * Returns the {@code id} of the last event that has been applied.
+     *
+     * @return  the id of the last applied event, or {@code 0} if none
+     */
+    long getLast();
+
+    /**
+     * Applies an event that is known to be the next one in the log, meaning
+     * that there is no event with an {@code id} between {@link #getLast()}
+     * and the {@code id} of this one that has not been delivered yet. Events
+     * that have already been applied are ignored.
+     * <p>
+     * This is used by sources that read the log in order, like a poller.
+     *
+     * @param event  the event to apply
+     */
+    void accept(Booking event);
+
+    /**
+     * Applies an event decoded into a record, with the same guarantees as
+     * {@link #accept(Booking)}. The record is not retained, so the caller may
+     * reuse it as soon as the method returns.
+     *
+     * @param record  the event to apply
+     */
+    default void accept(BookingRecord record) {
+        accept(record.toBooking());
+    }
+
+    /**
+     * Returns {@code true} if batches given to {@link #acceptAll(List)} are
+     * applied in parallel. Sources that can deliver events both as records 
+     * and as entities should then prefer batches of entities.
+     *
+     * @return  {@code true} if batches are applied in parallel
+     */
+    default boolean isParallel() {
+        return false;
+    }
+
+    /**
+     * Applies a batch of events that are ordered by {@code id}, with the same
+     * guarantees as {@link #accept(Booking)}. Depending on how the view is
+     * configured, events that don't concern the same booking, sauna or tenant
+     * might be applied in parallel. The method returns once every event has
+     * been applied.
+     *
+     * @param events  the events to apply
+     */
+    default void acceptAll(List<Booking> events) {
+        events.forEach(this::accept);
+    }
+
+    /**
+     * Applies an event only if its {@code id} immediately follows the
+     * {@link #getLast()} one. Events that have already been applied are
+     * ignored. If {@code false} is returned, some earlier event has not been
+     * seen yet and the event must be delivered again later using
+     * {@link #accept(Booking)}, typically after calling {@link #refresh()}.
+     * <p>
+     * This is used by sources that are notified about events out of band.
+     *
+     * @param event  the event to apply
+     * @return       {@code false} if there is a gap before the event
+     */
+    boolean offer(Booking event);
+
+    /**
+     * Notifies the sink that the calling source has delivered every event up
+     * to and including the specified {@code id} that concerns the view. This
+     * is used by sources that filter events, so that the view does not have
+     * to wait for events that will never be delivered to it.
+     *
+     * @param id  the id to skip to
+     */
+    default void skipTo(long id) {}
+
+    /**
+     * Asks every source of the view to look for missed events.
+     */
+    void refresh();
+
+    /**
+     * Records that the calling source read a batch of events and delivered
+     * them to this sink. The time should cover both reading and applying the
+     * events.
+     *
+     * @param events  the number of events in the batch
+     * @param nanos   the time it took in nanoseconds
+     */
+    default void reportBatch(int events, long nanos) {}
+
+    /**
+     * Records the {@code id} of the latest event that the calling source
+     * knows exists, even if it has not been delivered yet. This is used to
+     * tell how far behind the view is.
+     *
+     * @param id  the latest known id
+     */
+    default void reportLatest(long id) {}
+
+    /**
+     * Records that the calling source gave up waiting for a number of ids
+     * that were missing, and skipped them. This happens if a transaction is
+     * rolled back after its ids have been generated.
+     *
+     * @param ids  the number of skipped ids
+     */
+    default void reportSkipped(long ids) {}
+
+    /**
+     * Records that the view is behind the compaction horizon of the calling
+     * source. The events that the view has missed no longer exist, so it will
+     * not be updated any more and has to be rebuilt.
+     *
+     * @param horizon  the compaction horizon
+     */
+    default void reportStale(long horizon) {}
+
+    /**
+     * Notifies the view that the calling source has delivered every event it
+     * currently knows of. The view might use this to do housekeeping, like
+     * saving a snapshot.
+     */
+    void caughtUp();
+}
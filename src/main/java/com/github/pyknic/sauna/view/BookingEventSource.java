@@ -0,0 +1,33 @@
+package com.github.pyknic.sauna.view;
+
+/**
+ * A source of booking events that feeds a {@link BookingView}. A view can
+ * have several sources at once, for an example one that is notified directly
+ * when events are persisted in this process and one that polls the database
+ * for events written by other processes.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public interface BookingEventSource {
+
+    /**
+     * Starts delivering events to the specified sink. This is called once
+     * when the view is created.
+     *
+     * @param sink  the sink to deliver events to
+     */
+    void start(BookingEventSink sink);
+
+    /**
+     * Asks the source to look for events that might have been missed as soon
+     * as possible. Sources that can't miss events can ignore this.
+     */
+    default void refresh() {}
+
+    /**
+     * Stops delivering events. This is called once when the view is stopped.
+     * The view ignores any event that is delivered after it has stopped.
+     */
+    void stop();
+}
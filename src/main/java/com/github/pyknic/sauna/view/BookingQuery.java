@@ -0,0 +1,108 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import static java.util.Objects.requireNonNull;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * A standing query on a {@link BookingView}, created by
+ * {@link BookingView#subscribe(Predicate, Comparator, BookingQueryListener)}.
+ * The result is kept sorted and is updated with every event that the view
+ * applies, so the cost of keeping it up to date depends on the number of
+ * changes rather than the size of the view. Every change is also sent to the
+ * listener of the query.
+ * <p>
+ * The filter and the order are tested against the state of each booking, so
+ * predicates and comparators built from the fields of {@link Booking}, like
+ * {@code Booking.SAUNA.equal(1)} and {@code Booking.BOOKED_FROM.comparator()},
+ * can be used.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingQuery implements AutoCloseable {
+
+    private final BookingView view;
+    private final Predicate<? super Booking> filter;
+    private final BookingQueryListener listener;
+    private final NavigableSet<Booking> result;     // Guarded by this
+    private final Map<Long, Booking> byBookingId;   // Guarded by this
+
+    BookingQuery(BookingView view, Predicate<? super Booking> filter,
+            Comparator<? super Booking> order, BookingQueryListener listener) {
+
+        this.view        = requireNonNull(view);
+        this.filter      = requireNonNull(filter);
+        this.listener    = requireNonNull(listener);
+        this.byBookingId = new HashMap<>();
+
+        // Bookings that are equal according to the order are still different
+        // elements of the result.
+        final Comparator<Booking> cmp = order::compare;
+        this.result = new TreeSet<>(
+            cmp.thenComparingLong(Booking::getBookingId)
+        );
+    }
+
+    /**
+     * Returns the bookings that currently match the query, in order.
+     *
+     * @return  the current result
+     */
+    public synchronized List<Booking> getResult() {
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns the number of bookings that currently match the query.
+     *
+     * @return  the size of the result
+     */
+    public synchronized int size() {
+        return result.size();
+    }
+
+    /**
+     * Stops updating the result and calling the listener.
+     */
+    @Override
+    public void close() {
+        view.unsubscribe(this);
+    }
+
+    /**
+     * Updates the result after a booking has changed.
+     *
+     * @param bookingId  the booking that changed
+     * @param after      the new state of the booking, or {@code null} if it
+     *                   has been deleted
+     */
+    synchronized void update(long bookingId, Booking after) {
+        final Booking before = byBookingId.get(bookingId);
+        final boolean matches = after != null && filter.test(after);
+
+        if (before != null) {
+            result.remove(before);
+
+            if (matches) {
+                result.add(after);
+                byBookingId.put(bookingId, after);
+                listener.updated(before, after);
+            } else {
+                byBookingId.remove(bookingId);
+                listener.removed(before);
+            }
+        } else if (matches) {
+            result.add(after);
+            byBookingId.put(bookingId, after);
+            listener.added(after);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+
+/**
+ * Receives the changes to the result of a {@link BookingQuery}. The methods
+ * are called by the thread that applies the event to the view while the view
+ * is locked, so they should return quickly.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public interface BookingQueryListener {
+
+    /**
+     * Called when a booking starts matching the query, either because it was
+     * created or because it was changed.
+     *
+     * @param booking  the booking
+     */
+    void added(Booking booking);
+
+    /**
+     * Called when a booking stops matching the query, either because it was
+     * deleted or because it was changed.
+     *
+     * @param booking  the booking as it was before the change
+     */
+    void removed(Booking booking);
+
+    /**
+     * Called when a booking that matches the query is changed and still
+     * matches it. By default, this is reported as a removal followed by an
+     * addition.
+     *
+     * @param before  the booking before the change
+     * @param after   the booking after the change
+     */
+    default void updated(Booking before, Booking after) {
+        removed(before);
+        added(after);
+    }
+}
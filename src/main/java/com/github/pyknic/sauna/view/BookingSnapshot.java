@@ -0,0 +1,222 @@
+package com.github.pyknic.sauna.view;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.util.Objects.requireNonNull;
+import java.util.OptionalLong;
+import static java.util.logging.Level.INFO;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A checkpoint of the bookings in a {@link BookingView} together with the
+ * {@code id} of the last event that was applied to it. The snapshot is stored
+ * in a compact binary file that is memory-mapped both when it is written and
+ * when it is loaded.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: a magic
+ * number, the format version, the last applied {@code id}, the number of
+ * records and a CRC32 checksum of the records. Each record is then
+ * {@value #RECORD_SIZE} bytes: {@code id}, {@code booking_id},
+ * {@code tenant}, {@code sauna} and the epoch days of {@code booked_from} and
+ * {@code booked_to}.
+ * <p>
+ * A new snapshot is first written to a temporary file that is then moved into
+ * place, so a crash while saving never destroys the previous snapshot.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class BookingSnapshot {
+
+    private final static Logger LOGGER =
+        Logger.getLogger(BookingSnapshot.class.getName());
+
+    private final static int MAGIC       = 0x53_4E_41_50; // "SNAP"
+    private final static int VERSION     = 1;
+    private final static int HEADER_SIZE = 32;
+    private final static int RECORD_SIZE = 32;
+
+    private final Path file;
+    private final long saveEvery;
+    private long lastSaved;
+    private long lastSavedId;
+    private long horizon;
+
+    BookingSnapshot(Path file, long saveEvery) {
+        this.file        = requireNonNull(file);
+        this.saveEvery   = saveEvery;
+        this.lastSavedId = -1;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the compaction horizon of the events. A snapshot that is older 
+     * than the horizon can not be brought up to date since the events after
+     * it have been compacted, so it is ignored when loaded.
+     *
+     * @param horizon  the id of the last compacted event
+     */
+    void setHorizon(long horizon) {
+        this.horizon = horizon;
+    }
+
+    /**
+     * Returns {@code true} if it is time to save a new snapshot and something
+     * has been applied to the view since the last one was saved.
+     *
+     * @param last  the id of the last event applied to the view
+     * @return      {@code true} if a new snapshot should be saved
+     */
+    boolean isDue(long last) {
+        return last != lastSavedId
+            && System.currentTimeMillis() - lastSaved >= saveEvery;
+    }
+
+    /**
+     * Loads the snapshot file (if it exists) into the specified empty store.
+     * If the file is missing or could not be validated, nothing is loaded
+     * and an empty result is returned so that the view is rebuilt from the
+     * beginning.
+     *
+     * @param store  the store to insert the loaded bookings into
+     * @return       the id of the last event included, if any
+     */
+    OptionalLong load(BookingStore store) {
+        try (final FileChannel channel = FileChannel.open(file, READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return invalid("the header is truncated");
+            }
+
+            final MappedByteBuffer buffer = channel.map(READ_ONLY, 0, size);
+
+            if (buffer.getInt(0) != MAGIC) {
+                return invalid("it is not a snapshot file");
+            } else if (buffer.getInt(4) != VERSION) {
+                return invalid("version " + buffer.getInt(4) + " is unknown");
+            }
+
+            final long last  = buffer.getLong(8);
+            final long count = buffer.getLong(16);
+            final long crc   = buffer.getLong(24);
+
+            if (size != HEADER_SIZE + count * RECORD_SIZE) {
+                return invalid("the size does not match the header");
+            } else if (last < horizon) {
+                return invalid("it is older than the compaction horizon");
+            }
+
+            buffer.position(HEADER_SIZE);
+            if (checksum(buffer.slice()) != crc) {
+                return invalid("the checksum does not match");
+            }
+
+            for (int i = 0; i < count; i++) {
+                store.insert(
+                    buffer.getLong(),
+                    buffer.getLong(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt()
+                );
+            }
+
+            lastSaved   = System.currentTimeMillis();
+            lastSavedId = last;
+            return OptionalLong.of(last);
+        } catch (final NoSuchFileException ex) {
+            return OptionalLong.empty();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error reading snapshot '" + file + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Saves a new snapshot of the specified bookings, replacing any existing
+     * snapshot file.
+     *
+     * @param last   the id of the last event applied to the bookings
+     * @param store  the state of the view after that event
+     */
+    void save(long last, BookingStore.Frozen store) {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        final long count = store.size();
+        final long size  = HEADER_SIZE + count * RECORD_SIZE;
+
+        try (final FileChannel channel = FileChannel.open(temp,
+                CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+
+            final MappedByteBuffer buffer = channel.map(READ_WRITE, 0, size);
+            buffer.position(HEADER_SIZE);
+
+            store.forEach(slot -> {
+                buffer.putLong(store.id(slot));
+                buffer.putLong(store.bookingId(slot));
+                buffer.putInt(store.tenant(slot));
+                buffer.putInt(store.sauna(slot));
+                buffer.putInt(store.from(slot));
+                buffer.putInt(store.to(slot));
+            });
+
+            buffer.position(HEADER_SIZE);
+            final long crc = checksum(buffer.slice());
+
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, last);
+            buffer.putLong(16, count);
+            buffer.putLong(24, crc);
+            buffer.force();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error writing snapshot '" + temp + "'.", ex
+            );
+        }
+
+        try {
+            Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error replacing snapshot '" + file + "'.", ex
+            );
+        }
+
+        lastSaved   = System.currentTimeMillis();
+        lastSavedId = last;
+    }
+
+    private OptionalLong invalid(String reason) {
+        LOGGER.log(INFO, "Ignoring snapshot ''{0}'' since {1}.",
+            new Object[] {file, reason}
+        );
+
+        return OptionalLong.empty();
+    }
+
+    private static long checksum(ByteBuffer records) {
+        final CRC32 crc = new CRC32();
+        crc.update(records);
+        return crc.getValue();
+    }
+}
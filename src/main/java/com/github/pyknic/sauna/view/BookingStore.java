@@ -0,0 +1,561 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.util.Arrays;
+import static java.util.Objects.requireNonNull;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The state of every booking in a {@link BookingView}, stored in primitive
+ * columns indexed by a slot number. Dates are stored as days since the epoch.
+ * A booking keeps its slot for as long as it exists, and the slots of
+ * removed bookings are reused.
+ * <p>
+ * Slots are found by {@code booking_id} using an open-addressing hash table
+ * with linear probing, so no objects are created for each booking. Including
+ * the hash table, about 60 bytes are used per booking.
+ * <p>
+ * The columns are split into chunks of {@value #CHUNK_SIZE} slots. Calling
+ * {@link #freeze()} returns the current chunks as an immutable {@link Frozen}
+ * state without copying anything. The next time a frozen chunk is modified,
+ * the store makes a private copy of that chunk first, so the cost of a
+ * snapshot is paid by the writer, one chunk at a time, and only for the
+ * chunks that actually change.
+ * <p>
+ * The store is modified by the threads applying events to the view. Methods
+ * that look up or change slots are synchronized, so that events for different
+ * bookings can be applied in parallel. Other threads should only read the
+ * store through {@link #freeze()}.
+ * <p>
+ * By default, the chunks and the hash table are arrays on the heap. If the
+ * store is created with a {@link MappedStateFile}, they are instead stored
+ * off-heap in memory-mapped files that can be mapped again when the process
+ * is restarted.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class BookingStore {
+
+    private final static int CHUNK_BITS = 9;
+    final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+    private final static int INITIAL_CAPACITY = 1024;
+    private final static int EMPTY = -1;
+
+    /**
+     * The columns of {@value #CHUNK_SIZE} consecutive slots. A chunk is only
+     * modified as long as its version is the current version of the store.
+     */
+    abstract static class Chunk {
+        final long version;
+
+        Chunk(long version) {
+            this.version = version;
+        }
+
+        abstract long id(int pos);        // 0 if the slot is free
+        abstract long bookingId(int pos);
+        abstract int tenant(int pos);
+        abstract int sauna(int pos);
+        abstract int from(int pos);
+        abstract int to(int pos);
+
+        abstract void set(int pos, long id, long bookingId, 
+            int tenant, int sauna, int from, int to);
+
+        abstract void update(int pos, int tenant, int sauna, int from, int to);
+
+        abstract void clear(int pos);
+
+        /**
+         * Returns a chunk with the same content and the specified version 
+         * that can be modified without affecting this one.
+         */
+        abstract Chunk copy(long version);
+    }
+
+    /**
+     * A chunk stored in arrays on the heap.
+     */
+    private final static class HeapChunk extends Chunk {
+        private final long[] ids;
+        private final long[] bookingIds;
+        private final int[] tenants;
+        private final int[] saunas;
+        private final int[] froms;
+        private final int[] tos;
+
+        HeapChunk(long version) {
+            super(version);
+            this.ids        = new long[CHUNK_SIZE];
+            this.bookingIds = new long[CHUNK_SIZE];
+            this.tenants    = new int[CHUNK_SIZE];
+            this.saunas     = new int[CHUNK_SIZE];
+            this.froms      = new int[CHUNK_SIZE];
+            this.tos        = new int[CHUNK_SIZE];
+        }
+
+        private HeapChunk(long version, HeapChunk original) {
+            super(version);
+            this.ids        = original.ids.clone();
+            this.bookingIds = original.bookingIds.clone();
+            this.tenants    = original.tenants.clone();
+            this.saunas     = original.saunas.clone();
+            this.froms      = original.froms.clone();
+            this.tos        = original.tos.clone();
+        }
+
+        @Override long id(int pos)        { return ids[pos]; }
+        @Override long bookingId(int pos) { return bookingIds[pos]; }
+        @Override int tenant(int pos)     { return tenants[pos]; }
+        @Override int sauna(int pos)      { return saunas[pos]; }
+        @Override int from(int pos)       { return froms[pos]; }
+        @Override int to(int pos)         { return tos[pos]; }
+
+        @Override
+        void set(int pos, long id, long bookingId, 
+                int tenant, int sauna, int from, int to) {
+            
+            bookingIds[pos] = bookingId;
+            update(pos, tenant, sauna, from, to);
+            ids[pos] = id;
+        }
+
+        @Override
+        void update(int pos, int tenant, int sauna, int from, int to) {
+            tenants[pos] = tenant;
+            saunas[pos]  = sauna;
+            froms[pos]   = from;
+            tos[pos]     = to;
+        }
+
+        @Override
+        void clear(int pos) {
+            ids[pos] = 0;
+        }
+
+        @Override
+        Chunk copy(long version) {
+            return new HeapChunk(version, this);
+        }
+    }
+
+    /**
+     * The open-addressing hash table from {@code booking_id} to slot. The
+     * capacity is always a power of two.
+     */
+    abstract static class Table {
+        abstract int capacity();
+        abstract long key(int i);
+        abstract int slot(int i);         // EMPTY if unused
+        abstract void put(int i, long key, int slot);
+        abstract void clear(int i);
+
+        /**
+         * Returns a new, empty table with the specified capacity.
+         */
+        abstract Table create(int capacity);
+
+        /**
+         * Called once a new table has been filled and replaces this one.
+         */
+        void replace(Table previous) {}
+    }
+
+    /**
+     * A hash table stored in arrays on the heap.
+     */
+    private final static class HeapTable extends Table {
+        private final long[] keys;
+        private final int[] slots;
+
+        HeapTable(int capacity) {
+            this.keys  = new long[capacity];
+            this.slots = new int[capacity];
+            Arrays.fill(slots, EMPTY);
+        }
+
+        @Override int capacity()     { return slots.length; }
+        @Override long key(int i)    { return keys[i]; }
+        @Override int slot(int i)    { return slots[i]; }
+        @Override void clear(int i)  { slots[i] = EMPTY; }
+
+        @Override
+        void put(int i, long key, int slot) {
+            keys[i]  = key;
+            slots[i] = slot;
+        }
+
+        @Override
+        Table create(int capacity) {
+            return new HeapTable(capacity);
+        }
+    }
+
+    /**
+     * The state of a store at the time {@link BookingStore#freeze()} was
+     * called. It is never modified, so it can be read by any number of
+     * threads without synchronization.
+     */
+    final static class Frozen {
+        private final Chunk[] chunks;
+        private final int high;
+        private final int size;
+
+        private Frozen(Chunk[] chunks, int high, int size) {
+            this.chunks = chunks;
+            this.high   = high;
+            this.size   = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long id(int slot)        { return chunks[slot >>> CHUNK_BITS].id(slot & CHUNK_MASK); }
+        long bookingId(int slot) { return chunks[slot >>> CHUNK_BITS].bookingId(slot & CHUNK_MASK); }
+        int tenant(int slot)     { return chunks[slot >>> CHUNK_BITS].tenant(slot & CHUNK_MASK); }
+        int sauna(int slot)      { return chunks[slot >>> CHUNK_BITS].sauna(slot & CHUNK_MASK); }
+        int from(int slot)       { return chunks[slot >>> CHUNK_BITS].from(slot & CHUNK_MASK); }
+        int to(int slot)         { return chunks[slot >>> CHUNK_BITS].to(slot & CHUNK_MASK); }
+
+        /**
+         * Calls the specified action with the slot of every booking.
+         *
+         * @param action  the action to call
+         */
+        void forEach(IntConsumer action) {
+            for (int slot = 0; slot < high; slot++) {
+                if (id(slot) != 0) {
+                    action.accept(slot);
+                }
+            }
+        }
+
+        /**
+         * Returns a stream of the bookings. Each element is created when it
+         * is consumed from the stream.
+         *
+         * @return  stream of bookings
+         */
+        Stream<Booking> stream() {
+            return IntStream.range(0, high)
+                .filter(slot -> id(slot) != 0)
+                .mapToObj(slot -> get(chunks[slot >>> CHUNK_BITS], slot & CHUNK_MASK));
+        }
+    }
+
+    private volatile Chunk[] chunks;
+    private int high; // Number of slots that have ever been used
+    private int size;
+    private int[] free;
+    private int freeCount;
+
+    // Copy-on-write state.
+    private long version;       // Increased every time the store is frozen
+    private long chunksVersion; // The version that owns the chunk array
+    private Frozen frozen;      // The latest frozen state, if still current
+
+    // Open-addressing index from booking_id to slot.
+    private Table table;
+    private int mask;
+
+    private final MappedStateFile file; // Null if the store is on the heap
+
+    BookingStore() {
+        this.chunks = new Chunk[16];
+        this.free   = new int[16];
+        this.table  = new HeapTable(INITIAL_CAPACITY * 2);
+        this.mask   = table.capacity() - 1;
+        this.file   = null;
+    }
+
+    /**
+     * Creates a store in the specified file. If the file contains a saved 
+     * state, the store starts with the bookings in it.
+     *
+     * @param file  the file to store the bookings in
+     */
+    BookingStore(MappedStateFile file) {
+        this.file = requireNonNull(file);
+
+        if (file.isRestored()) {
+            this.high  = file.getHigh();
+            this.size  = file.getSize();
+            this.table = file.table();
+
+            final int count = (high + CHUNK_MASK) >>> CHUNK_BITS;
+            this.chunks = new Chunk[Math.max(16, Integer.highestOneBit(count) * 2)];
+            for (int c = 0; c < count; c++) {
+                chunks[c] = file.chunk(c, version);
+            }
+
+            // Slots below the high mark that are not used can be reused.
+            this.free = new int[Math.max(16, high - size)];
+            for (int slot = 0; slot < high; slot++) {
+                if (id(slot) == 0) {
+                    free[freeCount++] = slot;
+                }
+            }
+        } else {
+            this.chunks = new Chunk[16];
+            this.free   = new int[16];
+            this.table  = file.table(INITIAL_CAPACITY * 2);
+        }
+
+        this.mask = table.capacity() - 1;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    long id(int slot)        { return chunks[slot >>> CHUNK_BITS].id(slot & CHUNK_MASK); }
+    long bookingId(int slot) { return chunks[slot >>> CHUNK_BITS].bookingId(slot & CHUNK_MASK); }
+    int tenant(int slot)     { return chunks[slot >>> CHUNK_BITS].tenant(slot & CHUNK_MASK); }
+    int sauna(int slot)      { return chunks[slot >>> CHUNK_BITS].sauna(slot & CHUNK_MASK); }
+    int from(int slot)       { return chunks[slot >>> CHUNK_BITS].from(slot & CHUNK_MASK); }
+    int to(int slot)         { return chunks[slot >>> CHUNK_BITS].to(slot & CHUNK_MASK); }
+
+    /**
+     * Returns the current state of the booking in the specified slot.
+     *
+     * @param slot  the slot
+     * @return      the booking
+     */
+    Booking get(int slot) {
+        return get(chunks[slot >>> CHUNK_BITS], slot & CHUNK_MASK);
+    }
+
+    /**
+     * Returns the current state of the store. The returned state will not
+     * change, however the store is modified afterwards. If nothing has been
+     * modified since the last call, the same instance is returned again.
+     *
+     * @return  the frozen state
+     */
+    synchronized Frozen freeze() {
+        if (frozen == null) {
+            frozen = new Frozen(chunks, high, size);
+            version++;
+        }
+
+        return frozen;
+    }
+
+    /**
+     * Returns the slot of the booking with the specified {@code booking_id},
+     * or {@code -1} if there is no such booking.
+     *
+     * @param bookingId  the booking id
+     * @return           the slot or {@code -1}
+     */
+    synchronized int find(long bookingId) {
+        for (int i = hash(bookingId) & mask; ; i = (i + 1) & mask) {
+            final int slot = table.slot(i);
+            if (slot == EMPTY) {
+                return EMPTY;
+            } else if (table.key(i) == bookingId) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Inserts a new booking unless there already is one with the same
+     * {@code booking_id}.
+     *
+     * @return  the slot of the new booking or {@code -1} if it already existed
+     */
+    synchronized int insert(long id, long bookingId, int tenant, int sauna, int from, int to) {
+        int i = hash(bookingId) & mask;
+        for (; table.slot(i) != EMPTY; i = (i + 1) & mask) {
+            if (table.key(i) == bookingId) {
+                return EMPTY;
+            }
+        }
+
+        modifying();
+        final int slot = allocate();
+        writable(slot).set(
+            slot & CHUNK_MASK, id, bookingId, tenant, sauna, from, to
+        );
+
+        table.put(i, bookingId, slot);
+        size++;
+
+        if (size * 2 > table.capacity()) {
+            rehash();
+        }
+
+        return slot;
+    }
+
+    /**
+     * Replaces the state of an existing booking.
+     */
+    synchronized void update(int slot, int tenant, int sauna, int from, int to) {
+        modifying();
+        writable(slot).update(slot & CHUNK_MASK, tenant, sauna, from, to);
+    }
+
+    /**
+     * Removes an existing booking, making the slot available for reuse.
+     */
+    synchronized void remove(int slot) {
+        final long bookingId = bookingId(slot);
+        modifying();
+        writable(slot).clear(slot & CHUNK_MASK);
+
+        // Remove the key from the hash table by shifting back any following
+        // keys that would otherwise become unreachable.
+        int i = hash(bookingId) & mask;
+        while (table.key(i) != bookingId || table.slot(i) != slot) {
+            i = (i + 1) & mask;
+        }
+
+        for (int j = (i + 1) & mask; table.slot(j) != EMPTY; j = (j + 1) & mask) {
+            final int home = hash(table.key(j)) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table.put(i, table.key(j), table.slot(j));
+                i = j;
+            }
+        }
+
+        table.clear(i);
+        size--;
+
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Calls the specified action with the slot of every booking.
+     *
+     * @param action  the action to call
+     */
+    void forEach(IntConsumer action) {
+        for (int slot = 0; slot < high; slot++) {
+            if (id(slot) != 0) {
+                action.accept(slot);
+            }
+        }
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+
+        // Add another chunk if the previous one is full.
+        if ((high & CHUNK_MASK) == 0) {
+            final int c = high >>> CHUNK_BITS;
+            final Chunk[] own = ownChunks();
+            if (c == own.length) {
+                chunks = Arrays.copyOf(own, c * 2);
+            }
+
+            chunks[c] = file == null 
+                ? new HeapChunk(version) 
+                : file.chunk(c, version);
+        }
+
+        return high++;
+    }
+
+    /**
+     * Returns the chunk of the specified slot, first copying it if it might
+     * be part of a frozen state.
+     */
+    private Chunk writable(int slot) {
+        frozen = null;
+
+        final int c = slot >>> CHUNK_BITS;
+        final Chunk chunk = chunks[c];
+        if (chunk.version == version) {
+            return chunk;
+        }
+
+        final Chunk copy = chunk.copy(version);
+        ownChunks()[c] = copy;
+        return copy;
+    }
+
+    /**
+     * Returns the array of chunks, first copying it if it might be part of a
+     * frozen state. Only the references are copied.
+     */
+    private Chunk[] ownChunks() {
+        if (chunksVersion != version) {
+            chunks = chunks.clone();
+            chunksVersion = version;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Saves the state of the store to its file together with the id of the
+     * last event applied to it, so that it can be restored by a new store.
+     * Does nothing if the store is on the heap.
+     *
+     * @param last  the id of the last event applied to the store
+     */
+    synchronized void save(long last) {
+        if (file != null) {
+            file.save(last, high, size);
+        }
+    }
+
+    /**
+     * Marks the file as modified before anything in it is changed, so that a
+     * partially written state is never restored.
+     */
+    private void modifying() {
+        if (file != null) {
+            file.modifying();
+        }
+    }
+
+    private void rehash() {
+        final Table old = table;
+        table = old.create(old.capacity() * 2);
+        mask  = table.capacity() - 1;
+
+        for (int j = 0; j < old.capacity(); j++) {
+            final int slot = old.slot(j);
+            if (slot != EMPTY) {
+                int i = hash(old.key(j)) & mask;
+                while (table.slot(i) != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+
+                table.put(i, old.key(j), slot);
+            }
+        }
+
+        table.replace(old);
+    }
+
+    private static Booking get(Chunk chunk, int pos) {
+        return new StoredBooking(
+            chunk.id(pos),
+            chunk.bookingId(pos),
+            chunk.tenant(pos),
+            chunk.sauna(pos),
+            chunk.from(pos),
+            chunk.to(pos)
+        );
+    }
+
+    private static int hash(long bookingId) {
+        final long h = bookingId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,20 +1,34 @@
 package com.github.pyknic.sauna.view;
 
 import com.github.pyknic.sauna.booking.Booking;
-import com.github.pyknic.sauna.booking.BookingImpl;
 import com.github.pyknic.sauna.booking.BookingManager;
-import static com.speedment.runtime.core.util.OptionalUtil.unwrap;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import static java.util.Collections.unmodifiableList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import static java.util.Objects.requireNonNull;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import static java.util.stream.Collectors.toList;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.function.Predicate;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  *
@@ -22,191 +36,980 @@ import java.util.stream.Stream;
  */
 public final class BookingView {
     
-    private final static int MAX_BATCH_SIZE = 25;
-    private final static int UPDATE_EVERY   = 1_000; // Milliseconds
+    private final static Logger LOGGER =
+        Logger.getLogger(BookingView.class.getName());
+    
+    final static int DEFAULT_BATCH_SIZE   = 10_000;
+    final static int DEFAULT_UPDATE_EVERY = 1_000;  // Milliseconds
+    final static int DEFAULT_IDLE_EVERY   = 5_000;  // Milliseconds
+    final static int DEFAULT_GAP_TIMEOUT  = 30_000; // Milliseconds
+    
+    private final static int CHECK_SAMPLE_MASK = 15; // Time 1 in 16 checks
+    private final static long VALIDATION_TIMEOUT = 10_000; // Milliseconds
 
-    private final Timer timer;
-    private final Map<Long, Booking> bookings;
+    private final List<BookingEventSource> sources;
+    private final BookingSnapshot snapshot;
+    private final MappedStateFile state;
+    private final BookingStore bookings;
+    private final IntervalIndex bySauna;
+    private final IntervalIndex byTenant;
+    private final ParallelReplay replay;
+    private final Sink sink;
+    private final int firstSauna;
+    private final int lastSauna;
+    private final TenantIndex tenants; // Shared by shards, or null
+    private final List<BookingQuery> queries;
+    private final BookingViewMetrics metrics;
+    private final Object lock;  // Held while an event is applied
+    private volatile long last; // Written while holding sink and lock
+    private int waiting;        // Threads waiting for 'last', guarded by lock
+    private volatile boolean stopped; // Written while holding sink
+    private List<Future<?>> reporters; // Guarded by this
+    private ObjectName mbean;   // Guarded by this
 
-    private BookingView(Timer timer) {
-        this.timer = requireNonNull(timer);
-        this.bookings = new ConcurrentHashMap<>();
+    private BookingView(List<BookingEventSource> sources, BookingSnapshot snapshot,
+            MappedStateFile state, ForkJoinPool pool, int firstSauna, int lastSauna, 
+            TenantIndex tenants) {
+        
+        this.sources    = requireNonNull(sources);
+        this.snapshot   = snapshot; // Nullable
+        this.state      = state;    // Nullable
+        this.firstSauna = firstSauna;
+        this.lastSauna  = lastSauna;
+        this.tenants    = tenants;  // Nullable
+        this.bookings = state == null ? new BookingStore() : new BookingStore(state);
+        this.bySauna  = new IntervalIndex(bookings, bookings::sauna);
+        this.byTenant = new IntervalIndex(bookings, bookings::tenant);
+        this.replay   = pool == null ? null 
+            : new ParallelReplay(pool, bookings, this::accept);
+        this.sink     = new Sink();
+        this.metrics  = new BookingViewMetrics(() -> last);
+        this.lock     = new Object();
+        this.queries  = new CopyOnWriteArrayList<>();
     }
 
+    /**
+     * Returns a stream of the bookings in the view. The stream is read from
+     * a {@link #snapshot()}, so it is not affected by events applied while it
+     * is consumed.
+     *
+     * @return  stream of bookings
+     */
     public Stream<Booking> stream() {
-        return bookings.values().stream();
+        return snapshot().stream();
+    }
+
+    /**
+     * Returns the current state of the view. The snapshot is consistent with
+     * the {@code id} returned by {@link BookingViewSnapshot#getLast()} and
+     * never changes afterwards.
+     * <p>
+     * No bookings are copied when the snapshot is taken. Instead, the view
+     * copies the part of its storage that an event is about to modify the
+     * first time it is modified after a snapshot. A snapshot therefore only
+     * waits for the event that is currently being applied (or the parallel
+     * batch, if {@link BookingViewBuilder#withParallelReplay()} is used), and
+     * reading it never delays the view.
+     *
+     * @return  the current state of the view
+     */
+    public BookingViewSnapshot snapshot() {
+        synchronized (lock) {
+            return new BookingViewSnapshot(last, bookings.freeze());
+        }
+    }
+
+    /**
+     * Registers a standing query that is kept up to date as events are 
+     * applied. The listener is first called with every booking that matches 
+     * the filter, in order, and then with every change to the result until
+     * the query is closed. Only the bookings affected by an event are tested,
+     * so the cost of an event does not depend on the size of the view or the
+     * result.
+     * <p>
+     * If {@link BookingViewBuilder#withParallelReplay()} is used, the 
+     * listener can be called by several threads at once for different 
+     * bookings. The changes to each booking are always delivered in order.
+     *
+     * @param filter    the bookings to include
+     * @param order     the order of the result
+     * @param listener  the listener to send changes to
+     * @return          the query
+     */
+    public BookingQuery subscribe(Predicate<? super Booking> filter, 
+            Comparator<? super Booking> order, BookingQueryListener listener) {
+        
+        final BookingQuery query = new BookingQuery(this, filter, order, listener);
+        
+        // No event is applied while the existing bookings are added.
+        synchronized (lock) {
+            final List<Booking> matching = new ArrayList<>();
+            bookings.forEach(slot -> {
+                final Booking booking = bookings.get(slot);
+                if (filter.test(booking)) {
+                    matching.add(booking);
+                }
+            });
+            
+            matching.sort(order);
+            matching.forEach(b -> update(query, b.getBookingId(), b));
+            queries.add(query);
+        }
+        
+        return query;
+    }
+    
+    void unsubscribe(BookingQuery query) {
+        queries.remove(query);
+    }
+
+    /**
+     * Returns every booking of the specified sauna that overlaps the specified
+     * period, ordered by start date. The bookings are read from an index, so
+     * the cost depends on the number of results rather than the size of the
+     * view. Use {@link LocalDate#MIN} or {@link LocalDate#MAX} for an open
+     * period.
+     *
+     * @param sauna  the sauna
+     * @param from   the first day of the period
+     * @param to     the last day of the period
+     * @return       the bookings ordered by start date
+     */
+    public List<Booking> findBySauna(int sauna, LocalDate from, LocalDate to) {
+        return find(bySauna, sauna, from, to);
+    }
+
+    /**
+     * Returns every booking made by the specified tenant that overlaps the
+     * specified period, ordered by start date. The bookings are read from an
+     * index, so the cost depends on the number of results rather than the
+     * size of the view. Use {@link LocalDate#MIN} or {@link LocalDate#MAX} 
+     * for an open period.
+     *
+     * @param tenant  the tenant
+     * @param from    the first day of the period
+     * @param to      the last day of the period
+     * @return        the bookings ordered by start date
+     */
+    public List<Booking> findByTenant(int tenant, LocalDate from, LocalDate to) {
+        return find(byTenant, tenant, from, to);
+    }
+
+    /**
+     * Returns the saunas in the specified range that have no booking at any
+     * day of the specified period. Each sauna is checked using a single 
+     * lookup in the index, so the cost depends on the number of saunas but
+     * not on the number of bookings. Saunas that are not owned by this view
+     * are not included.
+     *
+     * @param firstSauna  the first sauna to check
+     * @param lastSauna   the last sauna to check
+     * @param from        the first day of the period
+     * @param to          the last day of the period
+     * @return            the free saunas in ascending order
+     */
+    public List<Integer> findFreeSaunas(int firstSauna, int lastSauna, 
+            LocalDate from, LocalDate to) {
+        
+        final int first = Math.max(firstSauna, this.firstSauna);
+        final int last  = Math.min(lastSauna, this.lastSauna);
+        final int start = EpochDays.of(from);
+        final int end   = EpochDays.of(to);
+        final List<Integer> result = new ArrayList<>();
+        
+        synchronized (lock) {
+            for (long sauna = first; sauna <= last; sauna++) {
+                if (!bySauna.overlaps((int) sauna, start, end)) {
+                    result.add((int) sauna);
+                }
+            }
+        }
+        
+        return unmodifiableList(result);
+    }
+
+    /**
+     * Returns every period within the specified one when the specified sauna
+     * has no booking, in order. The periods are found by walking the bookings
+     * of the sauna in the period, so the cost depends on the number of them
+     * rather than the size of the view.
+     *
+     * @param sauna  the sauna
+     * @param from   the first day of the period
+     * @param to     the last day of the period
+     * @return       the free periods ordered by date
+     */
+    public List<FreePeriod> findFreePeriods(int sauna, LocalDate from, LocalDate to) {
+        final List<FreePeriod> result = new ArrayList<>();
+        
+        synchronized (lock) {
+            bySauna.forEachGap(
+                sauna, EpochDays.of(from), EpochDays.of(to),
+                (first, last) -> result.add(new FreePeriod(sauna, first, last))
+            );
+        }
+        
+        return unmodifiableList(result);
+    }
+
+    /**
+     * Returns the earliest period of the specified number of days, starting
+     * no earlier than the specified day, when the specified sauna has no 
+     * booking. The search starts from a lookup in the index and then only 
+     * visits the bookings that are too close to each other for the period to
+     * fit in between.
+     *
+     * @param sauna  the sauna
+     * @param from   the earliest first day
+     * @param days   the number of days
+     * @return       the free period, or empty if there is none
+     */
+    public Optional<FreePeriod> findFirstFree(int sauna, LocalDate from, int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException(
+                "Number of days must be positive, was " + days + "."
+            );
+        }
+        
+        final long first;
+        synchronized (lock) {
+            first = bySauna.firstGap(sauna, EpochDays.of(from), days);
+        }
+        
+        final long last = first + days - 1;
+        return last > Integer.MAX_VALUE ? Optional.empty()
+            : Optional.of(new FreePeriod(sauna, (int) first, (int) last));
+    }
+
+    /**
+     * Returns {@code true} if the specified event would be accepted by this
+     * view if it was persisted right after the event with the specified 
+     * {@code id}. If the view has not applied that event yet, the sources 
+     * are asked to look for new events and this method waits until it has.
+     * The check is done against the indexes of the view, so events that are
+     * refused don't cost more than a lookup.
+     * <p>
+     * This method can be used as a 
+     * {@link com.github.pyknic.sauna.booking.BookingValidator}, see
+     * {@link BookingViewBuilder#withValidation()}. If the view is a shard,
+     * events that concern another shard are allowed. Updates that move a
+     * booking into or out of this shard are refused, since neither shard
+     * could apply them (see {@link ShardedBookingView}).
+     *
+     * @param event  the event to check
+     * @param after  the id of the event to check it after
+     * @return       {@code true} if the event would be accepted
+     *
+     * @throws IllegalStateException  if the view did not reach the specified
+     *                                {@code id} in time
+     */
+    public boolean isAllowed(Booking event, long after) {
+        final BookingRecord ev;
+        
+        try {
+            ev = new BookingRecord().set(event);
+        } catch (final IllegalArgumentException ex) {
+            return false;
+        }
+        
+        if (!await(after)) {
+            throw new IllegalStateException(
+                "The view did not reach event " + after + " within " + 
+                VALIDATION_TIMEOUT + " ms. Last event is " + last + "."
+            );
+        }
+        
+        synchronized (lock) {
+            return !movesBetweenShards(ev) && (!concerns(ev) || isValid(ev));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the bookings of the specified sauna are 
+     * materialized by this view. This is always the case unless the view
+     * was built using {@link BookingViewBuilder#withSaunas(int, int)}.
+     *
+     * @param sauna  the sauna
+     * @return       {@code true} if the sauna belongs to this view
+     */
+    public boolean owns(int sauna) {
+        return sauna >= firstSauna && sauna <= lastSauna;
+    }
+
+    /**
+     * Returns the metrics of this view, like the number of applied events and
+     * how far behind the database it is.
+     *
+     * @return  the metrics
+     */
+    public BookingViewMetrics getMetrics() {
+        return metrics;
     }
 
     public void stop() {
-        timer.cancel();
+        // Wait for any event that is being applied. Sources that are still
+        // running after this can no longer modify the view.
+        synchronized (sink) {
+            if (stopped) {
+                return;
+            }
+            
+            stopped = true;
+        }
+        
+        sources.forEach(BookingEventSource::stop);
+        queries.clear();
+        
+        if (state != null) {
+            synchronized (lock) {
+                bookings.save(last);
+                state.close();
+            }
+        }
+        
+        synchronized (this) {
+            if (reporters != null) {
+                reporters.forEach(task -> task.cancel(false));
+                reporters = null;
+            }
+            
+            if (mbean != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+                } catch (final JMException ex) {
+                    // Already unregistered.
+                }
+            }
+        }
+    }
+    
+    /**
+     * Calls the specified reporter with the metrics of this view at a fixed 
+     * rate until the view is stopped.
+     *
+     * @param reporter   the reporter
+     * @param millis     the interval in milliseconds
+     * @param scheduler  the scheduler to call the reporter on
+     */
+    synchronized void report(MetricsReporter reporter, long millis, 
+            ScheduledExecutorService scheduler) {
+        
+        if (reporters == null) {
+            reporters = new ArrayList<>();
+        }
+        
+        reporters.add(scheduler.scheduleAtFixedRate(() -> {
+            try {
+                reporter.report(metrics);
+            } catch (final RuntimeException ex) {
+                LOGGER.log(WARNING, ex, () -> String.format(
+                    "%s: Metrics reporter failed.",
+                    System.identityHashCode(sink)
+                ));
+            }
+        }, millis, millis, MILLISECONDS));
+    }
+    
+    /**
+     * Registers the metrics of this view with the platform MBean server. The
+     * MBean is unregistered when the view is stopped.
+     */
+    synchronized void registerMBean() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        
+        try {
+            mbean = new ObjectName(
+                "com.github.pyknic.sauna:type=BookingView,name=" + 
+                System.identityHashCode(sink)
+            );
+            
+            server.registerMBean(metrics, mbean);
+        } catch (final JMException ex) {
+            mbean = null;
+            LOGGER.log(WARNING, ex, () -> String.format(
+                "%s: Failed to register metrics MBean.",
+                System.identityHashCode(sink)
+            ));
+        }
     }
     
     private boolean accept(Booking ev) {
-        final String type = ev.getEventType();
+        final BookingRecord record;
+        
+        try {
+            record = new BookingRecord().set(ev);
+        } catch (final IllegalArgumentException ex) {
+            metrics.invalid();
+            return false;
+        }
+        
+        return accept(record);
+    }
+    
+    private boolean accept(BookingRecord ev) {
+        // Events that concern another shard are ignored.
+        if (!concerns(ev)) {
+            return false;
+        }
+        
+        final boolean accepted = handle(ev);
+        metrics.count(ev.getEventType(), accepted);
+        
+        if (accepted && !queries.isEmpty()) {
+            final int slot = bookings.find(ev.getBookingId());
+            final Booking after = slot >= 0 ? bookings.get(slot) : null;
+            queries.forEach(q -> update(q, ev.getBookingId(), after));
+        }
+        
+        return accepted;
+    }
+    
+    /**
+     * Updates the specified query after a booking has changed. A failing 
+     * listener must not stop the view from applying the event.
+     */
+    private void update(BookingQuery query, long bookingId, Booking after) {
+        try {
+            query.update(bookingId, after);
+        } catch (final RuntimeException ex) {
+            LOGGER.log(WARNING, ex, () -> String.format(
+                "%s: Query listener failed.",
+                System.identityHashCode(sink)
+            ));
+        }
+    }
+    
+    private boolean handle(BookingRecord ev) {
+        final EventType type = ev.getEventType();
 
         // If this was a creation event
         switch (type) {
-            case "CREATE" :
+            case CREATE : {
                 // Creation events must contain all information.
-                if (!ev.getSauna().isPresent()
-                ||  !ev.getTenant().isPresent()
-                ||  !ev.getBookedFrom().isPresent()
-                ||  !ev.getBookedTo().isPresent()
-                ||  !checkIfAllowed(ev)) {
+                if (!ev.hasSauna()
+                ||  !ev.hasTenant()
+                ||  !ev.hasBookedFrom()
+                ||  !ev.hasBookedTo()) {
+                    return false;
+                }
+                
+                final int tenant = ev.getTenant();
+                final int sauna  = ev.getSauna();
+                final int from   = ev.getBookedFrom();
+                final int to     = ev.getBookedTo();
+                
+                if (!checkIfAllowed(ev.getBookingId(), tenant, sauna, from, to)) {
+                    return false;
+                }
+                
+                // Bookings of the same tenant in other shards are checked
+                // when the booking is claimed in the shared index.
+                if (tenants != null 
+                &&  !tenants.add(ev.getBookingId(), tenant, from, to)) {
                     return false;
                 }
 
                 // If something is already mapped to that key, refuse the event.
-                return bookings.putIfAbsent(ev.getBookingId(), ev) == null;
+                final int slot = bookings.insert(
+                    ev.getId(), ev.getBookingId(), tenant, sauna, from, to
+                );
+                
+                if (slot >= 0) {
+                    index(slot);
+                    return true;
+                }
+                
+                if (tenants != null) {
+                    tenants.remove(ev.getBookingId());
+                }
 
-            case "UPDATE" :
-                // Create a copy of the current state
-                final Booking existing = bookings.get(ev.getBookingId());
+                return false;
+            }
 
-                // If the specified key did not exist, refuse the event.
-                if (existing != null) {
-                    final Booking proposed = new BookingImpl();
-                    proposed.setId(existing.getId());
+            case UPDATE : {
+                final int slot = bookings.find(ev.getBookingId());
 
+                // If the specified key did not exist, refuse the event.
+                if (slot >= 0) {
+                    
                     // Update non-null values
-                    proposed.setSauna(ev.getSauna().orElse(
-                        unwrap(existing.getSauna())
-                    ));
-                    proposed.setTenant(ev.getTenant().orElse(
-                        unwrap(existing.getTenant())
-                    ));
-                    proposed.setBookedFrom(ev.getBookedFrom().orElse(
-                        unwrap(existing.getBookedFrom())
-                    ));
-                    proposed.setBookedTo(ev.getBookedTo().orElse(
-                        unwrap(existing.getBookedTo())
-                    ));
+                    final int tenant = ev.hasTenant() 
+                        ? ev.getTenant() 
+                        : bookings.tenant(slot);
+                    final int sauna = ev.hasSauna() 
+                        ? ev.getSauna() 
+                        : bookings.sauna(slot);
+                    final int from = ev.hasBookedFrom()
+                        ? ev.getBookedFrom()
+                        : bookings.from(slot);
+                    final int to = ev.hasBookedTo()
+                        ? ev.getBookedTo()
+                        : bookings.to(slot);
 
                     // Make sure these changes are allowed.
-                    if (checkIfAllowed(proposed)) {
-                        bookings.put(ev.getBookingId(), proposed);
+                    if (checkIfAllowed(ev.getBookingId(), tenant, sauna, from, to)
+                    &&  (tenants == null 
+                    ||   tenants.move(ev.getBookingId(), tenant, from, to))) {
+                        unindex(slot);
+                        bookings.update(slot, tenant, sauna, from, to);
+                        index(slot);
                         return true;
                     }
                 }
 
                 return false;
+            }
 
-            case "DELETE" :
+            case DELETE : {
                 // Remove the event if it exists, else refuse the event.
-                return bookings.remove(ev.getBookingId()) != null;
+                final int slot = bookings.find(ev.getBookingId());
+                if (slot >= 0) {
+                    if (tenants != null) {
+                        tenants.remove(ev.getBookingId());
+                    }
+                    
+                    unindex(slot);
+                    bookings.remove(slot);
+                    return true;
+                }
+
+                return false;
+            }
 
             default :
-                System.out.format("Unexpected type '%s' was refused.%n", type);
+                throw new IllegalStateException(
+                    "Unexpected type '" + type + "'."
+                );
+        }
+    }
+    
+    /**
+     * Returns {@code true} if the specified event would be accepted by
+     * {@link #handle(BookingRecord)}, without modifying anything.
+     */
+    private boolean isValid(BookingRecord ev) {
+        final EventType type = ev.getEventType();
+        
+        switch (type) {
+            case CREATE : {
+                return ev.hasSauna()
+                    && ev.hasTenant()
+                    && ev.hasBookedFrom()
+                    && ev.hasBookedTo()
+                    && bookings.find(ev.getBookingId()) < 0
+                    && checkIfAllowed(ev.getBookingId(), ev.getTenant(), 
+                        ev.getSauna(), ev.getBookedFrom(), ev.getBookedTo())
+                    && isTenantFree(ev.getBookingId(), ev.getTenant(), 
+                        ev.getBookedFrom(), ev.getBookedTo());
+            }
+            
+            case UPDATE : {
+                final int slot = bookings.find(ev.getBookingId());
+                if (slot < 0) {
+                    return false;
+                }
+                
+                final int tenant = ev.hasTenant() ? ev.getTenant() : bookings.tenant(slot);
+                final int sauna  = ev.hasSauna() ? ev.getSauna() : bookings.sauna(slot);
+                final int from   = ev.hasBookedFrom() ? ev.getBookedFrom() : bookings.from(slot);
+                final int to     = ev.hasBookedTo() ? ev.getBookedTo() : bookings.to(slot);
+                
+                return checkIfAllowed(ev.getBookingId(), tenant, sauna, from, to)
+                    && isTenantFree(ev.getBookingId(), tenant, from, to);
+            }
+            
+            case DELETE : {
+                return bookings.find(ev.getBookingId()) >= 0;
+            }
+            
+            default :
+                throw new IllegalStateException(
+                    "Unexpected type '" + type + "'."
+                );
+        }
+    }
+    
+    /**
+     * Returns {@code true} if the tenant has no other booking in the index 
+     * shared by the shards during the period. If the view is not a shard, the
+     * tenant is checked by {@link #checkIfAllowed(long, int, int, int, int)}.
+     */
+    private boolean isTenantFree(long bookingId, int tenant, int from, int to) {
+        return tenants == null || !tenants.overlaps(tenant, bookingId, from, to);
+    }
+    
+    /**
+     * Waits until the event with the specified {@code id} has been applied,
+     * asking the sources to look for it if needed.
+     *
+     * @return  {@code false} if it took too long
+     */
+    private boolean await(long id) {
+        if (last >= id) {
+            return true;
+        }
+        
+        sink.refresh();
+        final long deadline = System.nanoTime() + VALIDATION_TIMEOUT * 1_000_000;
+        
+        synchronized (lock) {
+            waiting++;
+            try {
+                while (last < id) {
+                    final long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return false;
+                    }
+                    
+                    lock.wait(left / 1_000_000 + 1);
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
                 return false;
+            } finally {
+                waiting--;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Makes the specified event the last one. This must be called while 
+     * holding the lock.
+     */
+    private void setLast(long id) {
+        last = id;
+        if (waiting > 0) {
+            lock.notifyAll();
         }
     }
     
-    private boolean checkIfAllowed(Booking booking) {
+    private boolean checkIfAllowed(long bookingId, int tenant, int sauna, 
+            int from, int to) {
+        
+        // Reading the clock costs about as much as the check, so only a 
+        // sample of the checks is timed.
+        if ((ThreadLocalRandom.current().nextInt() & CHECK_SAMPLE_MASK) != 0) {
+            return isAllowed(bookingId, tenant, sauna, from, to);
+        }
+        
+        final long start = System.nanoTime();
+        final boolean allowed = isAllowed(bookingId, tenant, sauna, from, to);
+        metrics.check(System.nanoTime() - start);
+        return allowed;
+    }
+    
+    private boolean isAllowed(long bookingId, int tenant, int sauna, 
+            int from, int to) {
+        
         // Bookings where the end date is after the start are always invalid.
         // (Same start and end date is okey).
-        if (booking.getBookedFrom().get().after(booking.getBookedTo().get())) {
+        if (from > to) {
             return false;
         }
         
         // Make sure there is no other booking made for the same sauna or by the 
-        // same tenant during this time.
-        return (bookings.entrySet().stream()
-            
-            // Exclude this booking from the search.
-            .filter(e -> !e.getKey().equals(booking.getBookingId()))
-            .map(Map.Entry::getValue)
-            
-            // Only consider bookings about the same sauna or the same tenant
-            .filter(b -> 
-                   b.getSauna().getAsInt()  == booking.getSauna().getAsInt()
-                || b.getTenant().getAsInt() == booking.getTenant().getAsInt()
-            )
-            
-            // If any booking collides time-wise, refuse this event.
-            .noneMatch(b -> 
-                !( b.getBookedTo().get().before(booking.getBookedFrom().get())
-                || b.getBookedFrom().get().after(booking.getBookedTo().get()))
-            )
-        );
+        // same tenant during this time. The booking itself is excluded from 
+        // the search so that updates don't collide with the old state. If
+        // the view is a shard, the tenant is checked in the shared index.
+        return !bySauna.overlaps(sauna, bookingId, from, to) 
+            && (tenants != null || !byTenant.overlaps(tenant, bookingId, from, to));
+    }
+    
+    /**
+     * Returns {@code true} if the event is an update that moves a booking
+     * into or out of this shard. The shard that owns the new sauna doesn't
+     * know the rest of the booking, and the shard that has the booking never
+     * reads the event, so such updates are refused by 
+     * {@link #isAllowed(Booking, long)} and never written if the events are
+     * validated. If one is written anyway, the new shard refuses it when it
+     * is applied and the booking stays where it was.
+     */
+    private boolean movesBetweenShards(BookingRecord ev) {
+        return ev.getEventType() == EventType.UPDATE
+            && ev.hasSauna()
+            && (firstSauna != Integer.MIN_VALUE || lastSauna != Integer.MAX_VALUE)
+            && owns(ev.getSauna()) != (bookings.find(ev.getBookingId()) >= 0);
+    }
+
+    /**
+     * Returns {@code false} if the event concerns a booking that belongs to
+     * another shard. Creations and updates that set a sauna outside of this
+     * shard are ignored, and updates that move a booking into this shard are
+     * refused (see {@link #movesBetweenShards(BookingRecord)}). Other 
+     * updates and deletions are ignored unless the booking is in this view.
+     */
+    private boolean concerns(BookingRecord ev) {
+        if (ev.hasSauna()) {
+            return owns(ev.getSauna());
+        } else if (firstSauna == Integer.MIN_VALUE 
+               &&  lastSauna  == Integer.MAX_VALUE) {
+            return true;
+        } else {
+            return ev.getEventType() == EventType.CREATE
+                || bookings.find(ev.getBookingId()) >= 0;
+        }
+    }
+
+    private List<Booking> find(IntervalIndex index, int key, 
+            LocalDate from, LocalDate to) {
+        
+        final List<Booking> result = new ArrayList<>();
+        
+        // The indexes are only modified while holding the lock.
+        synchronized (lock) {
+            index.forEachOverlapping(
+                key, EpochDays.of(from), EpochDays.of(to),
+                slot -> result.add(bookings.get(slot))
+            );
+        }
+        
+        return unmodifiableList(result);
+    }
+
+    private void index(int slot) {
+        bySauna.add(slot);
+        byTenant.add(slot);
+    }
+
+    private void unindex(int slot) {
+        bySauna.remove(slot);
+        byTenant.remove(slot);
     }
     
     public static BookingView create(BookingManager mgr) {
-        final AtomicBoolean working = new AtomicBoolean(false);
-        final AtomicLong last  = new AtomicLong();
-        final AtomicLong total = new AtomicLong();
+        return builder(mgr).build();
+    }
+
+    public static BookingViewBuilder builder(BookingManager mgr) {
+        return new BookingViewBuilder(mgr);
+    }
+    
+    static BookingView create(List<BookingEventSource> sources, 
+            BookingSnapshot snapshot, ForkJoinPool pool) {
+        
+        return create(
+            sources, snapshot, pool, Integer.MIN_VALUE, Integer.MAX_VALUE, null
+        );
+    }
+    
+    static BookingView create(List<BookingEventSource> sources, 
+            BookingSnapshot snapshot, ForkJoinPool pool, 
+            int firstSauna, int lastSauna, TenantIndex tenants) {
+        
+        return create(
+            sources, snapshot, null, pool, firstSauna, lastSauna, tenants
+        );
+    }
+    
+    static BookingView create(List<BookingEventSource> sources, 
+            BookingSnapshot snapshot, MappedStateFile state, ForkJoinPool pool, 
+            int firstSauna, int lastSauna, TenantIndex tenants) {
+        
+        final BookingView view = new BookingView(
+            sources, snapshot, state, pool, firstSauna, lastSauna, tenants
+        );
         
-        final String table = mgr.getTableIdentifier().getTableName();
-        final String field = Booking.ID.identifier().getColumnName();
+        // If the state file was saved when the view was last stopped, the
+        // bookings are already in place. Otherwise, if there is a snapshot, 
+        // start from it. Either way, only replay the events that are newer.
+        if (state != null && state.isRestored()) {
+            view.restored(state.getLast(), state.getFile());
+        } else if (snapshot != null) {
+            snapshot.load(view.bookings).ifPresent(id -> 
+                view.restored(id, snapshot.getFile())
+            );
+        }
 
-        final Timer timer = new Timer();
-        final BookingView view = new BookingView(timer);
+        sources.forEach(src -> src.start(view.sink));
+        return view;
+    }
+    
+    /**
+     * Indexes the bookings that were loaded into the store from the 
+     * specified file, which includes every event up to the specified one.
+     */
+    private void restored(long id, Path file) {
+        bookings.forEach(this::index);
         
-        // Create a timed task that will execute every second.
-        final TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                boolean first = true;
+        if (tenants != null) {
+            bookings.forEach(slot -> tenants.add(
+                bookings.bookingId(slot),
+                bookings.tenant(slot),
+                bookings.from(slot),
+                bookings.to(slot)
+            ));
+        }
+        
+        last = id;
+        LOGGER.log(INFO, () -> String.format(
+            "%s: Restored %d booking(s) from '%s'. Latest %s: %d.",
+            System.identityHashCode(sink),
+            bookings.size(),
+            file,
+            Booking.ID.identifier().getColumnName(),
+            id
+        ));
+    }
+    
+    /**
+     * Applies the specified event and makes it the last one.
+     */
+    private void apply(Booking event) {
+        synchronized (lock) {
+            setLast(event.getId());
+            accept(event);
+        }
+    }
 
-                // Make sure no previous task is already inside this block.
-                if (working.compareAndSet(false, true)) {
-                    try {
+    /**
+     * Applies the specified event and makes it the last one.
+     */
+    private void apply(BookingRecord event) {
+        synchronized (lock) {
+            setLast(event.getId());
+            accept(event);
+        }
+    }
+    
+    /**
+     * The sink that every source of this view delivers events to. Sources
+     * are served one at a time while holding the monitor of the sink, and 
+     * each event is applied while holding the lock of the view.
+     */
+    private final class Sink implements BookingEventSink {
+
+        @Override
+        public synchronized long getLast() {
+            return last;
+        }
+
+        @Override
+        public synchronized void accept(Booking event) {
+            if (!stopped && event.getId() > last) {
+                apply(event);
+            }
+        }
+
+        @Override
+        public synchronized void accept(BookingRecord record) {
+            if (!stopped && record.getId() > last) {
+                apply(record);
+            }
+        }
+
+        @Override
+        public boolean isParallel() {
+            return replay != null;
+        }
+
+        @Override
+        public synchronized void acceptAll(List<Booking> events) {
+            if (stopped) {
+                return;
+            } else if (replay == null) {
+                events.forEach(this::accept);
+                return;
+            }
+            
+            // Skip events that have already been applied.
+            int first = 0;
+            while (first < events.size() && events.get(first).getId() <= last) {
+                first++;
+            }
+            
+            if (first < events.size()) {
+                synchronized (lock) {
+                    replay.apply(events.subList(first, events.size()));
+                    setLast(events.get(events.size() - 1).getId());
+                }
+            }
+        }
 
-                        // Loop until no events was merged 
-                        // (the database is up to date).
-                        while (true) {
-
-                            // Get a list of up to 25 events that has not yet 
-                            // been merged into the materialized object view.
-                            final List<Booking> added = unmodifiableList(
-                                mgr.stream()
-                                    .filter(Booking.ID.greaterThan(last.get()))
-                                    .limit(MAX_BATCH_SIZE)
-                                    .sorted(Booking.ID.comparator())
-                                    .collect(toList())
-                            );
-
-                            if (added.isEmpty()) {
-                                if (!first) {
-                                    System.out.format(
-                                        "%s: View is up to date. A total of " + 
-                                        "%d rows have been loaded.%n",
-                                        System.identityHashCode(last),
-                                        total.get()
-                                    );
-                                }
-
-                                break;
-                            } else {
-                                final Booking lastEntity = 
-                                    added.get(added.size() - 1);
-                                
-                                last.set(lastEntity.getId());
-                                added.forEach(view::accept);
-                                total.addAndGet(added.size());
-
-                                System.out.format(
-                                    "%s: Downloaded %d row(s) from %s. " + 
-                                    "Latest %s: %d.%n", 
-                                    System.identityHashCode(last),
-                                    added.size(),
-                                    table,
-                                    field,
-                                    Long.parseLong("" + last.get())
-                                );
-                            }
-
-                            first = false;
-                        }
-
-                    // Release this resource once we exit this block.
-                    } finally {
-                        working.set(false);
+        @Override
+        public synchronized boolean offer(Booking event) {
+            if (stopped) {
+                return true;
+            }
+            
+            // Bookings in other shards are never needed, but if nothing has
+            // been missed, the view is still up to date with the event.
+            if (event.getSauna().isPresent() 
+            &&  !owns(event.getSauna().getAsInt())) {
+                if (event.getId() == last + 1) {
+                    synchronized (lock) {
+                        setLast(event.getId());
                     }
                 }
+                
+                return true;
+            } else if (event.getId() <= last) {
+                return true;
+            } else if (event.getId() == last + 1) {
+                apply(event);
+                return true;
+            } else {
+                return false;
             }
-        };
+        }
 
-        timer.scheduleAtFixedRate(task, 0, UPDATE_EVERY);
-        return view;
+        @Override
+        public synchronized void skipTo(long id) {
+            if (!stopped && id > last) {
+                synchronized (lock) {
+                    setLast(id);
+                }
+            }
+        }
+
+        @Override
+        public void refresh() {
+            sources.forEach(BookingEventSource::refresh);
+        }
+
+        @Override
+        public void reportBatch(int events, long nanos) {
+            metrics.batch(events, nanos);
+        }
+
+        @Override
+        public void reportLatest(long id) {
+            metrics.latest(id);
+        }
+
+        @Override
+        public void reportSkipped(long ids) {
+            metrics.skipped(ids);
+        }
+
+        @Override
+        public void reportStale(long horizon) {
+            metrics.stale();
+        }
+
+        @Override
+        public void caughtUp() {
+            if (snapshot == null || stopped) {
+                return;
+            }
+            
+            // Save a new checkpoint once the view is up to date if enough
+            // time has passed since the last one. The file is written from a
+            // frozen state so events can be applied while it is saved.
+            synchronized (snapshot) {
+                final BookingViewSnapshot current = snapshot();
+                if (snapshot.isDue(current.getLast())) {
+                    try {
+                        snapshot.save(current.getLast(), current.getState());
+                    } catch (final UncheckedIOException ex) {
+                        LOGGER.log(WARNING, ex, () -> String.format(
+                            "%s: Failed to save snapshot.",
+                            System.identityHashCode(this)
+                        ));
+                    }
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,475 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.BookingManager;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static java.util.Objects.requireNonNull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Builder for creating a {@link BookingView} with custom settings. Use
+ * {@link BookingView#builder(BookingManager)} to obtain an instance.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingViewBuilder {
+
+    private final static long DEFAULT_SNAPSHOT_EVERY = 60_000; // Milliseconds
+    private final static long DEFAULT_LOG_EVERY      = 10_000; // Milliseconds
+
+    private final BookingManager mgr;
+    private final List<BookingEventSource> sources;
+    private final Map<MetricsReporter, Long> reporters;
+    private int batchSize;
+    private long updateEvery;
+    private long idleEvery;
+    private long gapTimeout;
+    private ScheduledExecutorService scheduler;
+    private boolean push;
+    private BookingSnapshot snapshot;
+    private Path stateFile;
+    private ForkJoinPool pool;
+    private long logEvery;
+    private boolean jmx;
+    private boolean validation;
+    private int firstSauna;
+    private int lastSauna;
+    private TenantIndex tenants;
+
+    BookingViewBuilder(BookingManager mgr) {
+        this.mgr         = requireNonNull(mgr);
+        this.batchSize   = BookingView.DEFAULT_BATCH_SIZE;
+        this.updateEvery = BookingView.DEFAULT_UPDATE_EVERY;
+        this.idleEvery   = BookingView.DEFAULT_IDLE_EVERY;
+        this.gapTimeout  = BookingView.DEFAULT_GAP_TIMEOUT;
+        this.scheduler   = ViewScheduler.shared();
+        this.sources     = new ArrayList<>();
+        this.reporters   = new LinkedHashMap<>();
+        this.logEvery    = DEFAULT_LOG_EVERY;
+        this.jmx         = true;
+        this.firstSauna  = Integer.MIN_VALUE;
+        this.lastSauna   = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets the maximum number of events to download from the database in a
+     * single query. Each batch is ordered and limited by the database, so a
+     * large batch size means that the initial load of a big table is bounded
+     * by the network rather than by the latency of each query.
+     *
+     * @param batchSize  the maximum number of rows per query
+     * @return           this builder
+     */
+    public BookingViewBuilder withBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(
+                "Batch size must be positive, was " + batchSize + "."
+            );
+        }
+        
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets how often the database should be polled for new events while 
+     * there are new events to load. If push updates are enabled, polling is 
+     * only needed to pick up events written by other processes and the 
+     * interval can be made longer.
+     *
+     * @param millis  the update interval in milliseconds
+     * @return        this builder
+     */
+    public BookingViewBuilder withUpdateInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                "Update interval must be positive, was " + millis + " ms."
+            );
+        }
+        
+        this.updateEvery = millis;
+        return this;
+    }
+
+    /**
+     * Sets the longest time between two polls when the database has no new
+     * events. Each poll that finds nothing doubles the interval, starting
+     * from the {@link #withUpdateInterval(long) update interval}, until this
+     * is reached. As soon as new events are found, the update interval is 
+     * used again. Setting this to the update interval disables the backoff.
+     * If it is shorter than the update interval, the update interval is 
+     * used.
+     *
+     * @param millis  the idle interval in milliseconds
+     * @return        this builder
+     */
+    public BookingViewBuilder withIdleInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                "Idle interval must be positive, was " + millis + " ms."
+            );
+        }
+        
+        this.idleEvery = millis;
+        return this;
+    }
+
+    /**
+     * Sets how long the view waits for an id that is missing in the database
+     * while greater ids are visible. That happens while the transaction that
+     * generated the id is still running, for example a large
+     * {@link BookingManager#persistAll(java.util.stream.Stream) persistAll}.
+     * The view does not apply any later events until the id shows up. Once
+     * the timeout has passed since a greater id was seen, the transaction is
+     * assumed to have been rolled back and the id is skipped. All ids that
+     * have been missing for that long are skipped at once, so a view that is
+     * rebuilt from a table with many old gaps only waits once. The default 
+     * is 30 seconds.
+     *
+     * @param millis  the gap timeout in milliseconds
+     * @return        this builder
+     */
+    public BookingViewBuilder withGapTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                "Gap timeout must not be negative, was " + millis + " ms."
+            );
+        }
+        
+        this.gapTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Sets the scheduler that polls the database and calls the metrics 
+     * reporters of the view. By default, every view in the process shares 
+     * the {@link ViewScheduler#shared() same} scheduler. The scheduler is not
+     * shut down when the view is stopped.
+     * <p>
+     * On a JDK with virtual threads, a scheduler with a virtual thread 
+     * factory lets blocking queries run without holding a platform thread.
+     *
+     * @param scheduler  the scheduler to use
+     * @return           this builder
+     */
+    public BookingViewBuilder withScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = requireNonNull(scheduler);
+        return this;
+    }
+
+    /**
+     * Makes events persisted through the {@link BookingManager} in this 
+     * process get applied to the view directly, without waiting for the next
+     * poll. The database is still polled for events from other processes.
+     * 
+     * @return  this builder
+     * @see     PushEventSource
+     */
+    public BookingViewBuilder withPushUpdates() {
+        this.push = true;
+        return this;
+    }
+
+    /**
+     * Adds a custom source of events to the view, in addition to polling the
+     * database.
+     *
+     * @param source  the source to add
+     * @return        this builder
+     */
+    public BookingViewBuilder withEventSource(BookingEventSource source) {
+        sources.add(requireNonNull(source));
+        return this;
+    }
+
+    /**
+     * Makes the view start from a snapshot file (if it exists) and only replay
+     * the events that are newer than it. Once the view is up to date, a new
+     * snapshot is saved at most once every minute.
+     *
+     * @param file  the snapshot file
+     * @return      this builder
+     */
+    public BookingViewBuilder withSnapshot(Path file) {
+        return withSnapshot(file, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * Makes the view start from a snapshot file (if it exists) and only replay
+     * the events that are newer than it. Once the view is up to date, a new
+     * snapshot is saved if the specified time has passed since the last one.
+     *
+     * @param file    the snapshot file
+     * @param millis  minimum time between two snapshots in milliseconds
+     * @return        this builder
+     */
+    public BookingViewBuilder withSnapshot(Path file, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                "Snapshot interval must not be negative, was " + millis + " ms."
+            );
+        }
+        
+        this.snapshot = new BookingSnapshot(requireNonNull(file), millis);
+        return this;
+    }
+
+    /**
+     * Makes the view keep its bookings off-heap, in the specified 
+     * memory-mapped file, with the hash table of {@code booking_id} in a 
+     * second file next to it. Only the indexes by sauna and tenant are kept 
+     * on the heap.
+     * <p>
+     * The files are saved when the view is stopped. The next time a view is
+     * created with the same file, it maps the saved bookings directly and 
+     * only replays the events that are newer than them. If the view was not 
+     * stopped cleanly, the files are ignored and the view starts from the 
+     * snapshot instead, if there is one.
+     *
+     * @param file  the state file
+     * @return      this builder
+     */
+    public BookingViewBuilder withStateFile(Path file) {
+        this.stateFile = requireNonNull(file);
+        return this;
+    }
+
+    /**
+     * Makes batches of events that are read from the database get applied 
+     * using the common {@code ForkJoinPool}. Events that concern the same
+     * booking, sauna or tenant are still applied in {@code id} order.
+     *
+     * @return  this builder
+     * @see     #withParallelReplay(ForkJoinPool)
+     */
+    public BookingViewBuilder withParallelReplay() {
+        return withParallelReplay(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Makes batches of events that are read from the database get applied 
+     * using the specified pool. Events that concern the same booking, sauna
+     * or tenant are still applied in {@code id} order, but other events are 
+     * applied in parallel.
+     *
+     * @param pool  the pool to apply events in
+     * @return      this builder
+     */
+    public BookingViewBuilder withParallelReplay(ForkJoinPool pool) {
+        this.pool = requireNonNull(pool);
+        return this;
+    }
+
+    /**
+     * Makes the view a shard that only materializes the bookings of the 
+     * specified range of saunas. Only events for those saunas, and events 
+     * that don't specify a sauna, are read from the database, so a view can
+     * be kept in each of several processes without any of them having to 
+     * replay every event.
+     * <p>
+     * A booking can't be moved to a sauna outside of the range of the shard
+     * it was created in. {@link BookingView#isAllowed(
+     * com.github.pyknic.sauna.booking.Booking, long) isAllowed} refuses such
+     * updates, and if one is written anyway, the shard that owns the new 
+     * sauna refuses it and the booking stays where it was. Unless the shards
+     * share a {@link TenantIndex}, only bookings within the same shard are 
+     * checked for overlaps by the same tenant.
+     *
+     * @param first  the first sauna of the shard
+     * @param last   the last sauna of the shard
+     * @return       this builder
+     * @see          ShardedBookingView
+     */
+    public BookingViewBuilder withSaunas(int first, int last) {
+        if (first > last) {
+            throw new IllegalArgumentException(
+                "The first sauna must not be after the last, was " + 
+                first + " and " + last + "."
+            );
+        }
+        
+        this.firstSauna = first;
+        this.lastSauna  = last;
+        return this;
+    }
+
+    /**
+     * Makes the view check overlaps by the same tenant against the specified
+     * index, which can be shared by several shards in this process.
+     *
+     * @param index  the shared tenant index
+     * @return       this builder
+     * @see          #withSaunas(int, int)
+     */
+    public BookingViewBuilder withTenantIndex(TenantIndex index) {
+        this.tenants = requireNonNull(index);
+        return this;
+    }
+
+    /**
+     * Makes the view the validator of the {@link BookingManager}, so that 
+     * events persisted using {@link BookingManager#persistIfAllowed(
+     * com.github.pyknic.sauna.booking.Booking)} are checked against the view
+     * before they are written.
+     * <p>
+     * A manager only has one validator, so if several views of the same 
+     * manager are built with validation, only the last one is used. If the
+     * builder is a shard given to {@link ShardedBookingView#create(
+     * BookingViewBuilder...)}, the sharded view becomes the validator 
+     * instead, so that every shard is checked.
+     *
+     * @return  this builder
+     * @see     BookingView#isAllowed(com.github.pyknic.sauna.booking.Booking, long)
+     */
+    public BookingViewBuilder withValidation() {
+        this.validation = true;
+        return this;
+    }
+
+    /**
+     * Adds a reporter that is called with the {@link BookingViewMetrics} of
+     * the view at the specified interval, for an example to forward them to
+     * a monitoring system.
+     *
+     * @param reporter  the reporter
+     * @param millis    the report interval in milliseconds
+     * @return          this builder
+     */
+    public BookingViewBuilder withMetricsReporter(MetricsReporter reporter, long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                "Report interval must be positive, was " + millis + " ms."
+            );
+        }
+        
+        reporters.put(requireNonNull(reporter), millis);
+        return this;
+    }
+
+    /**
+     * Sets how often a summary of the metrics is logged. Nothing is logged
+     * if the view has not changed since the last summary. The default is
+     * every ten seconds.
+     *
+     * @param millis  the log interval in milliseconds
+     * @return        this builder
+     * @see           MetricsReporter#logging()
+     */
+    public BookingViewBuilder withLogInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                "Log interval must be positive, was " + millis + " ms."
+            );
+        }
+        
+        this.logEvery = millis;
+        return this;
+    }
+
+    /**
+     * Stops the view from printing a summary of its metrics. The metrics are
+     * still available from {@link BookingView#getMetrics()}, over JMX and
+     * to any reporter.
+     *
+     * @return  this builder
+     */
+    public BookingViewBuilder withoutLogging() {
+        this.logEvery = 0;
+        return this;
+    }
+
+    /**
+     * Stops the metrics of the view from being registered as an MBean with
+     * the platform MBean server.
+     *
+     * @return  this builder
+     */
+    public BookingViewBuilder withoutJmx() {
+        this.jmx = false;
+        return this;
+    }
+
+    int getFirstSauna() {
+        return firstSauna;
+    }
+
+    int getLastSauna() {
+        return lastSauna;
+    }
+
+    BookingManager getManager() {
+        return mgr;
+    }
+
+    boolean hasValidation() {
+        return validation;
+    }
+
+    /**
+     * Creates the view and starts loading events into it.
+     *
+     * @return  the new view
+     */
+    public BookingView build() {
+        return build(validation);
+    }
+
+    /**
+     * Creates the view and starts loading events into it. The view is only
+     * made the validator of the manager if {@code validate} is set.
+     *
+     * @param validate  if the view should validate the events of the manager
+     * @return          the new view
+     */
+    BookingView build(boolean validate) {
+        final List<BookingEventSource> all = new ArrayList<>();
+        all.add(new PollingEventSource(
+            mgr, batchSize, updateEvery, Math.max(updateEvery, idleEvery), 
+            firstSauna, lastSauna, scheduler, gapTimeout
+        ));
+        
+        if (push) {
+            all.add(new PushEventSource(mgr));
+        }
+        
+        all.addAll(sources);
+        final long horizon = mgr.getHorizon();
+        if (snapshot != null) {
+            snapshot.setHorizon(horizon);
+        }
+        
+        final MappedStateFile state = stateFile == null ? null 
+            : MappedStateFile.open(stateFile);
+        
+        if (state != null && state.isRestored() && state.getLast() < horizon) {
+            state.reset("it is older than the compaction horizon");
+        }
+        
+        final BookingView view = BookingView.create(
+            all, snapshot, state, pool, firstSauna, lastSauna, tenants
+        );
+        
+        if (jmx) {
+            view.registerMBean();
+        }
+        
+        if (logEvery > 0) {
+            view.report(MetricsReporter.logging(), logEvery, scheduler);
+        }
+        
+        reporters.forEach((reporter, millis) -> 
+            view.report(reporter, millis, scheduler)
+        );
+        
+        if (validate) {
+            mgr.setValidator(view::isAllowed);
+        }
+        
+        return view;
+    }
+}
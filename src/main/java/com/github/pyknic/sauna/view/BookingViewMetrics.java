@@ -0,0 +1,227 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.EventType;
+import static java.util.Objects.requireNonNull;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latencies of a {@link BookingView}. The metrics are updated
+ * by the threads applying events and can be read at any time, either from
+ * a {@link MetricsReporter} or over JMX, where they are registered as
+ * {@code com.github.pyknic.sauna:type=BookingView,name=<hash>}.
+ * <p>
+ * Updating a metric never blocks. The latency of the overlap check that is
+ * done for every created or updated booking is only measured for a sample of
+ * the events, since reading the clock would otherwise cost about as much as
+ * the check itself.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingViewMetrics implements BookingViewMetricsMXBean {
+
+    private final static double NANOS_PER_MILLI = 1_000_000;
+    private final static double NANOS_PER_MICRO = 1_000;
+
+    private final LongSupplier last;
+    private final LongAccumulator latest;
+    private final LongAdder[] applied;
+    private final LongAdder[] refused;
+    private final LongAdder invalid;
+    private final LongAdder skipped;
+    private final LongAdder batchEvents;
+    private final LatencyHistogram batches;
+    private final LatencyHistogram checks;
+    private volatile boolean stale;
+
+    /**
+     * Creates a new set of metrics.
+     *
+     * @param last  supplier of the {@code id} of the last applied event
+     */
+    BookingViewMetrics(LongSupplier last) {
+        this.last        = requireNonNull(last);
+        this.latest      = new LongAccumulator(Math::max, 0);
+        this.applied     = adders(EventType.values().length);
+        this.refused     = adders(EventType.values().length);
+        this.invalid     = new LongAdder();
+        this.skipped     = new LongAdder();
+        this.batchEvents = new LongAdder();
+        this.batches     = new LatencyHistogram();
+        this.checks      = new LatencyHistogram();
+    }
+
+    /**
+     * Returns the number of events of the specified type that have been
+     * applied to the view.
+     *
+     * @param type  the event type
+     * @return      the number of applied events
+     */
+    public long getApplied(EventType type) {
+        return applied[type.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of events of the specified type that have been
+     * refused by the view, for an example because they collided with an 
+     * existing booking or referred to a booking that does not exist.
+     *
+     * @param type  the event type
+     * @return      the number of refused events
+     */
+    public long getRefused(EventType type) {
+        return refused[type.ordinal()].sum();
+    }
+
+    /**
+     * Returns the latency of each batch of events that has been read from the
+     * database, including the time it took to apply them.
+     *
+     * @return  the batch latencies
+     */
+    public LatencyHistogram getBatchLatency() {
+        return batches;
+    }
+
+    /**
+     * Returns the latency of a sample of the overlap checks done before a
+     * booking is created or updated.
+     *
+     * @return  the check latencies
+     */
+    public LatencyHistogram getCheckLatency() {
+        return checks;
+    }
+
+    @Override
+    public long getLastId() {
+        return last.getAsLong();
+    }
+
+    @Override
+    public long getLatestId() {
+        return Math.max(latest.get(), getLastId());
+    }
+
+    @Override
+    public long getLag() {
+        return getLatestId() - getLastId();
+    }
+
+    @Override public long getCreatesApplied() { return getApplied(EventType.CREATE); }
+    @Override public long getUpdatesApplied() { return getApplied(EventType.UPDATE); }
+    @Override public long getDeletesApplied() { return getApplied(EventType.DELETE); }
+    @Override public long getCreatesRefused() { return getRefused(EventType.CREATE); }
+    @Override public long getUpdatesRefused() { return getRefused(EventType.UPDATE); }
+    @Override public long getDeletesRefused() { return getRefused(EventType.DELETE); }
+
+    @Override
+    public long getInvalidEvents() {
+        return invalid.sum();
+    }
+
+    /**
+     * Returns the number of ids that were missing in the database for longer
+     * than the gap timeout and were skipped. If the events of those ids were
+     * committed later after all, they have not been applied to the view.
+     *
+     * @return  the number of skipped ids
+     */
+    @Override
+    public long getSkippedIds() {
+        return skipped.sum();
+    }
+
+    /**
+     * Returns {@code true} if the view has fallen behind the compaction
+     * horizon. The events it has missed no longer exist, so the view is not
+     * updated any more and has to be rebuilt.
+     *
+     * @return  {@code true} if the view is stale
+     */
+    @Override
+    public boolean isStale() {
+        return stale;
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.getCount();
+    }
+
+    @Override
+    public long getBatchEvents() {
+        return batchEvents.sum();
+    }
+
+    @Override
+    public double getBatchMeanMillis() {
+        return batches.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getBatchP99Millis() {
+        return batches.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getBatchMaxMillis() {
+        return batches.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCheckSamples() {
+        return checks.getCount();
+    }
+
+    @Override
+    public double getCheckMeanMicros() {
+        return checks.getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getCheckP99Micros() {
+        return checks.getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    void count(EventType type, boolean accepted) {
+        (accepted ? applied : refused)[type.ordinal()].increment();
+    }
+
+    void invalid() {
+        invalid.increment();
+    }
+
+    void skipped(long ids) {
+        skipped.add(ids);
+    }
+
+    void stale() {
+        stale = true;
+    }
+
+    void latest(long id) {
+        latest.accumulate(id);
+    }
+
+    void batch(int events, long nanos) {
+        batchEvents.add(events);
+        batches.record(nanos);
+    }
+
+    void check(long nanos) {
+        checks.record(nanos);
+    }
+
+    private static LongAdder[] adders(int count) {
+        final LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+}
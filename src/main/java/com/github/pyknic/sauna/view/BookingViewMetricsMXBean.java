@@ -0,0 +1,36 @@
+package com.github.pyknic.sauna.view;
+
+/**
+ * The management interface of {@link BookingViewMetrics}, used when a view is
+ * registered as an MBean. Durations are in milliseconds or microseconds as
+ * indicated by the name.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public interface BookingViewMetricsMXBean {
+
+    long getLastId();
+    long getLatestId();
+    long getLag();
+
+    long getCreatesApplied();
+    long getUpdatesApplied();
+    long getDeletesApplied();
+    long getCreatesRefused();
+    long getUpdatesRefused();
+    long getDeletesRefused();
+    long getInvalidEvents();
+    long getSkippedIds();
+    boolean isStale();
+
+    long getBatches();
+    long getBatchEvents();
+    double getBatchMeanMillis();
+    double getBatchP99Millis();
+    double getBatchMaxMillis();
+
+    long getCheckSamples();
+    double getCheckMeanMicros();
+    double getCheckP99Micros();
+}
@@ -0,0 +1,57 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import static java.util.Objects.requireNonNull;
+import java.util.stream.Stream;
+
+/**
+ * The bookings of a {@link BookingView} as they were right after a particular
+ * event was applied. A snapshot never changes, no matter how many events are
+ * applied to the view afterwards, so it can be shared between any number of
+ * threads. Creating one does not copy the bookings.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingViewSnapshot {
+
+    private final long last;
+    private final BookingStore.Frozen state;
+
+    BookingViewSnapshot(long last, BookingStore.Frozen state) {
+        this.last  = last;
+        this.state = requireNonNull(state);
+    }
+
+    /**
+     * Returns the {@code id} of the last event included in this snapshot.
+     *
+     * @return  the last event id
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Returns the number of bookings in this snapshot.
+     *
+     * @return  the number of bookings
+     */
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * Returns a new stream of the bookings in this snapshot. The stream may be
+     * consumed from any thread.
+     *
+     * @return  stream of bookings
+     */
+    public Stream<Booking> stream() {
+        return state.stream();
+    }
+
+    BookingStore.Frozen getState() {
+        return state;
+    }
+}
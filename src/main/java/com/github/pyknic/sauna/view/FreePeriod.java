@@ -0,0 +1,72 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.EpochDays;
+import java.time.LocalDate;
+
+/**
+ * A period of whole days when a sauna has no bookings, as returned by the
+ * availability queries of {@link BookingView}. Both the first and the last
+ * day are included.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class FreePeriod {
+
+    private final int sauna;
+    private final int first; // Epoch days
+    private final int last;  // Epoch days
+
+    FreePeriod(int sauna, int first, int last) {
+        this.sauna = sauna;
+        this.first = first;
+        this.last  = last;
+    }
+
+    public int getSauna() {
+        return sauna;
+    }
+
+    public LocalDate getFirst() {
+        return EpochDays.toLocalDate(first);
+    }
+
+    public LocalDate getLast() {
+        return EpochDays.toLocalDate(last);
+    }
+
+    /**
+     * Returns the number of days in the period.
+     *
+     * @return  the length in days
+     */
+    public long getDays() {
+        return (long) last - first + 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof FreePeriod)) {
+            return false;
+        }
+
+        final FreePeriod that = (FreePeriod) obj;
+        return sauna == that.sauna
+            && first == that.first
+            && last  == that.last;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * sauna + first) + last;
+    }
+
+    @Override
+    public String toString() {
+        return "FreePeriod { sauna = " + sauna + 
+            ", first = " + getFirst() + 
+            ", last = " + getLast() + " }";
+    }
+}
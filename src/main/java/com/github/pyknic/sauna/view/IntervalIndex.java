@@ -0,0 +1,240 @@
+package com.github.pyknic.sauna.view;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An index of the bookings currently in a {@link BookingStore}, grouped by an
+ * integer key (like the sauna or the tenant) and sorted on the start date.
+ * <p>
+ * The view never accepts two bookings for the same key that overlap in time,
+ * so the intervals stored under each key are disjoint. This means that they
+ * are sorted on the end date as well, and an overlap check only needs to
+ * look at the few intervals that start before the end of the proposed one.
+ * <p>
+ * Each entry is the start date (in epoch days) in the upper 32 bits and the
+ * slot in the store in the lower 32 bits, kept in a {@link SortedLongSet}.
+ * <p>
+ * Different keys may be modified by different threads at the same time, but
+ * each key must only be used by one thread at a time.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class IntervalIndex {
+
+    /**
+     * Receives a period of days.
+     */
+    @FunctionalInterface
+    interface PeriodConsumer {
+        void accept(int from, int to);
+    }
+
+    private final BookingStore store;
+    private final IntUnaryOperator key;
+    private final Map<Integer, SortedLongSet> intervals;
+
+    /**
+     * Creates a new index.
+     *
+     * @param store  the store that the indexed slots belong to
+     * @param key    function that returns the key of the booking in a slot
+     */
+    IntervalIndex(BookingStore store, IntUnaryOperator key) {
+        this.store     = store;
+        this.key       = key;
+        this.intervals = new ConcurrentHashMap<>();
+    }
+
+    void add(int slot) {
+        intervals.computeIfAbsent(key.applyAsInt(slot), k -> new SortedLongSet())
+            .add(entry(store.from(slot), slot));
+    }
+
+    void remove(int slot) {
+        final int k = key.applyAsInt(slot);
+        final SortedLongSet sorted = intervals.get(k);
+
+        if (sorted != null) {
+            sorted.remove(entry(store.from(slot), slot));
+            if (sorted.isEmpty()) {
+                intervals.remove(k);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if any booking other than the one with the
+     * specified {@code bookingId} is indexed under the specified key and
+     * overlaps the specified period. Bookings that only share the start or
+     * end date are considered overlapping.
+     *
+     * @param key        the key to look in
+     * @param bookingId  the booking to exclude from the search
+     * @param from       the first day of the period, in epoch days
+     * @param to         the last day of the period, in epoch days
+     * @return           {@code true} if there is a collision, else 
+     *                   {@code false}
+     */
+    boolean overlaps(int key, long bookingId, int from, int to) {
+        final SortedLongSet sorted = intervals.get(key);
+
+        if (sorted == null) {
+            return false;
+        }
+
+        // Walk backwards from the last interval that starts before the end of
+        // the proposed one. Since the intervals are disjoint, the first one
+        // that ends before the proposed start means no earlier can collide.
+        for (long e = sorted.floor(entry(to, -1)); 
+                  e != SortedLongSet.NONE; 
+                  e = sorted.lower(e)) {
+            
+            final int slot = slotOf(e);
+            if (store.bookingId(slot) != bookingId) {
+                return store.to(slot) >= from;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Calls the specified action with the slot of every booking indexed under
+     * the specified key that overlaps the specified period, ordered by start
+     * date.
+     *
+     * @param key     the key to look in
+     * @param from    the first day of the period, in epoch days
+     * @param to      the last day of the period, in epoch days
+     * @param action  the action to call for each slot
+     */
+    void forEachOverlapping(int key, int from, int to, IntConsumer action) {
+        final SortedLongSet sorted = intervals.get(key);
+
+        if (sorted == null || from > to) {
+            return;
+        }
+
+        // The last interval that starts before the period might still reach
+        // into it. Otherwise, start with the first one that starts inside it.
+        long e = sorted.floor(entry(from, -1));
+        if (e == SortedLongSet.NONE || store.to(slotOf(e)) < from) {
+            e = sorted.ceiling(entry(from, 0));
+        }
+
+        for (; e != SortedLongSet.NONE && fromOf(e) <= to; e = sorted.higher(e)) {
+            action.accept(slotOf(e));
+        }
+    }
+
+    /**
+     * Returns {@code true} if any booking indexed under the specified key 
+     * overlaps the specified period.
+     *
+     * @param key   the key to look in
+     * @param from  the first day of the period, in epoch days
+     * @param to    the last day of the period, in epoch days
+     * @return      {@code true} if the period is not free
+     */
+    boolean overlaps(int key, int from, int to) {
+        final SortedLongSet sorted = intervals.get(key);
+
+        if (sorted == null || from > to) {
+            return false;
+        }
+
+        // Only the last interval that starts before the end of the period can
+        // reach into it, since the ones before it end before it starts.
+        final long e = sorted.floor(entry(to, -1));
+        return e != SortedLongSet.NONE && store.to(slotOf(e)) >= from;
+    }
+
+    /**
+     * Calls the specified action with every part of the specified period 
+     * where nothing is indexed under the specified key, in order.
+     *
+     * @param key     the key to look in
+     * @param from    the first day of the period, in epoch days
+     * @param to      the last day of the period, in epoch days
+     * @param action  the action to call with the first and last day of each
+     *                free part
+     */
+    void forEachGap(int key, int from, int to, PeriodConsumer action) {
+        if (from > to) {
+            return;
+        }
+
+        final SortedLongSet sorted = intervals.get(key);
+        long start = from; // The first day that might be free
+
+        if (sorted != null) {
+            for (long e = first(sorted, from); 
+                      e != SortedLongSet.NONE && fromOf(e) <= to; 
+                      e = sorted.higher(e)) {
+                
+                if (fromOf(e) > start) {
+                    action.accept((int) start, fromOf(e) - 1);
+                }
+
+                start = Math.max(start, (long) store.to(slotOf(e)) + 1);
+            }
+        }
+
+        if (start <= to) {
+            action.accept((int) start, to);
+        }
+    }
+
+    /**
+     * Returns the first day of the earliest period of the specified number of
+     * days, starting no earlier than the specified day, where nothing is 
+     * indexed under the specified key. The result might be after the last
+     * valid epoch day if there is no such period.
+     *
+     * @param key   the key to look in
+     * @param from  the earliest first day, in epoch days
+     * @param days  the number of days, at least one
+     * @return      the first day of the period, in epoch days
+     */
+    long firstGap(int key, int from, int days) {
+        final SortedLongSet sorted = intervals.get(key);
+        long start = from;
+
+        if (sorted != null) {
+            for (long e = first(sorted, from);
+                      e != SortedLongSet.NONE && fromOf(e) - start < days;
+                      e = sorted.higher(e)) {
+
+                start = Math.max(start, (long) store.to(slotOf(e)) + 1);
+            }
+        }
+
+        return start;
+    }
+
+    /**
+     * Returns the first entry that might overlap a period starting at the
+     * specified day. That is the last one that starts before it, if any, 
+     * else the first one after it.
+     */
+    private static long first(SortedLongSet sorted, int from) {
+        final long e = sorted.floor(entry(from, -1));
+        return e == SortedLongSet.NONE ? sorted.ceiling(entry(from, 0)) : e;
+    }
+
+    private static long entry(int from, int slot) {
+        return ((long) from << 32) | (slot & 0xFFFF_FFFFL);
+    }
+
+    private static int fromOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int slotOf(long entry) {
+        return (int) entry;
+    }
+}
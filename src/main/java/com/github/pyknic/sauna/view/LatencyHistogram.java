@@ -0,0 +1,95 @@
+package com.github.pyknic.sauna.view;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds. Each bucket covers a power of two,
+ * so recording a value is a single atomic increment and percentiles are
+ * accurate within a factor of two. Values can be recorded by any number of
+ * threads.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class LatencyHistogram {
+
+    private final static int BUCKETS = 65;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count  = new LongAdder();
+        this.sum    = new LongAdder();
+        this.max    = new LongAccumulator(Math::max, 0);
+    }
+
+    void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return  the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values in nanoseconds, or {@code 0} if
+     * nothing has been recorded.
+     *
+     * @return  the mean
+     */
+    public double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the greatest recorded value in nanoseconds.
+     *
+     * @return  the maximum
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the specified percentile in nanoseconds. The
+     * result is the upper end of the bucket that the percentile falls in, but
+     * never more than {@link #getMax()}.
+     *
+     * @param percentile  the percentile, between {@code 0} and {@code 100}
+     * @return            the upper bound
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                final long upper = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.EventType;
+import java.util.logging.Logger;
+
+/**
+ * The reporter returned by {@link MetricsReporter#logging()}.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class LoggingReporter implements MetricsReporter {
+
+    private final static Logger LOGGER =
+        Logger.getLogger(BookingView.class.getName());
+
+    private long events; // Guarded by this
+    private long lag;    // Guarded by this
+
+    @Override
+    public synchronized void report(BookingViewMetrics metrics) {
+        long applied = 0, refused = 0;
+        for (final EventType type : EventType.values()) {
+            applied += metrics.getApplied(type);
+            refused += metrics.getRefused(type);
+        }
+
+        final long total = applied + refused + metrics.getInvalidEvents();
+        final long behind = metrics.getLag();
+
+        if (total == events && behind == lag) {
+            return;
+        }
+
+        LOGGER.info(String.format(
+            "%s: Applied %d and refused %d event(s) in total (%d new). " +
+            "Last id: %d, lag: %d. Batch p99: %.1f ms, check p99: %.1f us.",
+            System.identityHashCode(metrics),
+            applied,
+            refused + metrics.getInvalidEvents(),
+            total - events,
+            metrics.getLastId(),
+            behind,
+            metrics.getBatchP99Millis(),
+            metrics.getCheckP99Micros()
+        ));
+
+        events = total;
+        lag    = behind;
+    }
+}
@@ -0,0 +1,564 @@
+package com.github.pyknic.sauna.view;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import static java.util.logging.Level.INFO;
+import java.util.logging.Logger;
+import static java.util.Objects.requireNonNull;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Off-heap storage for a {@link BookingStore}, kept in two memory-mapped
+ * files so that a restarted process can map them again and continue from the
+ * last applied event without replaying anything.
+ * <p>
+ * The state file starts with a header that takes up the same space as a
+ * chunk: a magic number, the format version, a flag telling if the file was
+ * saved cleanly, the last applied {@code id}, the number of slots ever used,
+ * the number of bookings and the capacity of the hash table. The chunks then
+ * follow in order, each with {@value BookingStore#CHUNK_SIZE} fixed-width
+ * records of {@value #RECORD_SIZE} bytes: {@code id}, {@code booking_id},
+ * {@code tenant}, {@code sauna} and the epoch days of {@code booked_from} and
+ * {@code booked_to}.
+ * <p>
+ * The hash table is stored in a second file with the extension
+ * {@value #INDEX_SUFFIX}, as entries of {@value #ENTRY_SIZE} bytes: the
+ * {@code booking_id} and the slot plus one, so that an unused entry is zero.
+ * When the table grows, the new one is written to a temporary file that then
+ * replaces the old one.
+ * <p>
+ * Both files are modified in place. The header is marked as modified before
+ * the first change after a save, so if the process stops without saving, the
+ * files are ignored and the view is rebuilt.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class MappedStateFile {
+
+    private final static Logger LOGGER =
+        Logger.getLogger(MappedStateFile.class.getName());
+
+    private final static int MAGIC        = 0x56_49_45_57; // "VIEW"
+    private final static int VERSION      = 1;
+    private final static int RECORD_SIZE  = 32;
+    private final static int CHUNK_BYTES  = BookingStore.CHUNK_SIZE * RECORD_SIZE;
+    private final static int HEADER_SIZE  = CHUNK_BYTES;
+    private final static int ENTRY_SIZE   = 16;
+    private final static int REGION_BITS  = 26; // Mapped 64 MiB at a time
+    private final static int REGION_MASK  = (1 << REGION_BITS) - 1;
+    private final static String INDEX_SUFFIX = ".index";
+
+    private final static int CLEAN    = 8;
+    private final static int LAST     = 16;
+    private final static int HIGH     = 24;
+    private final static int SIZE     = 28;
+    private final static int CAPACITY = 32;
+
+    private final Path file;
+    private final Path index;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final Regions records;
+    private MappedTable table;
+    private boolean restored;
+    private boolean clean;
+
+    private MappedStateFile(Path file, FileChannel channel, boolean restored)
+            throws IOException {
+
+        this.file     = requireNonNull(file);
+        this.index    = file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+        this.channel  = requireNonNull(channel);
+        this.records  = new Regions(channel, Math.max(channel.size(), HEADER_SIZE));
+        this.header   = channel.map(READ_WRITE, 0, HEADER_SIZE);
+        this.restored = restored;
+        this.clean    = restored;
+
+        if (!restored) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(CLEAN, 0);
+        }
+    }
+
+    /**
+     * Opens the specified state file, creating it if it does not exist. If
+     * it contains a state that was saved cleanly, it is restored by the
+     * store that uses it.
+     *
+     * @param file  the state file
+     * @return      the opened file
+     */
+    static MappedStateFile open(Path file) {
+        try {
+            final FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+            final String reason = validate(file, channel);
+
+            if (reason != null) {
+                if (channel.size() > 0) {
+                    LOGGER.log(INFO, "Ignoring state file ''{0}'' since {1}.",
+                        new Object[] {file, reason}
+                    );
+                }
+
+                channel.truncate(0);
+            }
+
+            return new MappedStateFile(file, channel, reason == null);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error opening state file '" + file + "'.", ex
+            );
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns {@code true} if the file contains a saved state that has not
+     * been {@link #reset(String) reset}.
+     *
+     * @return  {@code true} if there is a state to restore
+     */
+    boolean isRestored() {
+        return restored;
+    }
+
+    long getLast() { return header.getLong(LAST); }
+    int getHigh()  { return header.getInt(HIGH); }
+    int getSize()  { return header.getInt(SIZE); }
+
+    /**
+     * Ignores the saved state, so that the store starts empty. This must be
+     * called before the file is used by a store.
+     *
+     * @param reason  the reason to log
+     */
+    void reset(String reason) {
+        if (restored) {
+            LOGGER.log(INFO, "Ignoring state file ''{0}'' since {1}.",
+                new Object[] {file, reason}
+            );
+
+            restored = false;
+            clean    = false;
+            header.putInt(CLEAN, 0);
+        }
+    }
+
+    /**
+     * Returns the chunk with the specified index, backed by the file.
+     *
+     * @param c        the index of the chunk
+     * @param version  the version of the store
+     * @return         the chunk
+     */
+    BookingStore.Chunk chunk(int c, long version) {
+        final long offset = HEADER_SIZE + (long) c * CHUNK_BYTES;
+        records.grow(offset + CHUNK_BYTES);
+
+        final ByteBuffer region = records.region(offset, CHUNK_BYTES);
+        final int start = (int) (offset & REGION_MASK);
+
+        final ByteBuffer dup = region.duplicate();
+        dup.position(start).limit(start + CHUNK_BYTES);
+        return new MappedChunk(version, dup.slice());
+    }
+
+    /**
+     * Returns the saved hash table.
+     *
+     * @return  the saved table
+     */
+    BookingStore.Table table() {
+        try {
+            final int capacity = header.getInt(CAPACITY);
+            table = new MappedTable(index,
+                FileChannel.open(index, READ, WRITE), capacity
+            );
+
+            return table;
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error opening index '" + index + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Returns a new, empty hash table with the specified capacity.
+     *
+     * @param capacity  the capacity
+     * @return          the new table
+     */
+    BookingStore.Table table(int capacity) {
+        final MappedTable created = create(index, capacity);
+        created.install();
+        return created;
+    }
+
+    /**
+     * Marks the file as modified unless this has already been done since it
+     * was last saved.
+     */
+    void modifying() {
+        if (clean) {
+            header.putInt(CLEAN, 0);
+            header.force();
+            clean = false;
+        }
+    }
+
+    /**
+     * Writes every modified page to disk and marks the file as saved.
+     *
+     * @param last  the id of the last event applied to the store
+     * @param high  the number of slots that have ever been used
+     * @param size  the number of bookings
+     */
+    void save(long last, int high, int size) {
+        records.force();
+        table.entries.force();
+
+        header.putLong(LAST, last);
+        header.putInt(HIGH, high);
+        header.putInt(SIZE, size);
+        header.putInt(CAPACITY, table.capacity);
+        header.force();
+
+        header.putInt(CLEAN, 1);
+        header.force();
+        clean = true;
+    }
+
+    /**
+     * Closes the state file and the index. Chunks that have already been
+     * mapped stay readable until they are garbage collected, so frozen states
+     * that are still in use are not affected. The file can not be modified
+     * or saved after this.
+     */
+    void close() {
+        try {
+            channel.close();
+            if (table != null) {
+                table.channel.close();
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error closing state file '" + file + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * Returns the reason that the specified file can not be restored, or
+     * {@code null} if it can.
+     */
+    private static String validate(Path file, FileChannel channel)
+            throws IOException {
+
+        if (channel.size() < HEADER_SIZE) {
+            return "the header is truncated";
+        }
+
+        final ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(h, 0);
+
+        final Path index = file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+        final long chunks = (h.getInt(HIGH) + BookingStore.CHUNK_SIZE - 1)
+            / BookingStore.CHUNK_SIZE;
+        final int capacity = h.getInt(CAPACITY);
+
+        if (h.getInt(0) != MAGIC) {
+            return "it is not a state file";
+        } else if (h.getInt(4) != VERSION) {
+            return "version " + h.getInt(4) + " is unknown";
+        } else if (h.getInt(CLEAN) != 1) {
+            return "it was not saved when the view was stopped";
+        } else if (channel.size() < HEADER_SIZE + chunks * CHUNK_BYTES) {
+            return "the records are truncated";
+        } else if (capacity <= 0 || Integer.bitCount(capacity) != 1
+               ||  h.getInt(SIZE) * 2L > capacity
+               ||  !Files.exists(index)
+               ||  Files.size(index) < (long) capacity * ENTRY_SIZE) {
+            return "the index is missing or does not match";
+        }
+
+        return null;
+    }
+
+    private MappedTable create(Path path, int capacity) {
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            return new MappedTable(temp, FileChannel.open(temp,
+                CREATE, TRUNCATE_EXISTING, READ, WRITE), capacity
+            );
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(
+                "Error creating index '" + temp + "'.", ex
+            );
+        }
+    }
+
+    /**
+     * A file that is mapped in regions of up to {@code 2^REGION_BITS} bytes
+     * as they are needed, since a single mapping is limited to 2 GiB. The
+     * file is grown explicitly before anything past its end is mapped, and a
+     * region that has been mapped while the file was shorter is mapped again
+     * when more of it is needed. Buffers of the previous mapping stay valid.
+     */
+    private final static class Regions {
+
+        private final FileChannel channel;
+        private long length; // The size of the file
+        private MappedByteBuffer[] maps;
+
+        Regions(FileChannel channel, long length) {
+            this.channel = requireNonNull(channel);
+            this.maps    = new MappedByteBuffer[16];
+            grow(length);
+        }
+
+        /**
+         * Makes the file at least the specified number of bytes long. To
+         * avoid mapping a region again for every chunk, the file is grown by
+         * at least its current size, up to a region at a time.
+         */
+        void grow(long size) {
+            if (size <= length) {
+                return;
+            }
+
+            final long step = Math.min(length, 1L << REGION_BITS);
+            final long next = Math.max(size, length + step);
+
+            try {
+                if (channel.size() < next) {
+                    channel.write(ByteBuffer.allocate(1), next - 1);
+                }
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(
+                    "Error growing state file to " + next + " bytes.", ex
+                );
+            }
+
+            length = next;
+        }
+
+        ByteBuffer region(long offset, int bytes) {
+            final int r = (int) (offset >>> REGION_BITS);
+            if (r >= maps.length) {
+                maps = Arrays.copyOf(maps, Math.max(r + 1, maps.length * 2));
+            }
+
+            MappedByteBuffer map = maps[r];
+            if (map == null || map.capacity() < (offset & REGION_MASK) + bytes) {
+                final long start = (long) r << REGION_BITS;
+                try {
+                    map = channel.map(READ_WRITE, start,
+                        Math.min(1L << REGION_BITS, length - start)
+                    );
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(
+                        "Error mapping region " + r + " of state file.", ex
+                    );
+                }
+
+                maps[r] = map;
+            }
+
+            return map;
+        }
+
+        void force() {
+            for (final MappedByteBuffer map : maps) {
+                if (map != null) {
+                    map.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * A chunk backed by the records in the file. The file always holds the
+     * current state, so before a chunk that is part of a frozen state is
+     * modified, the frozen chunk is given a copy of the records on the heap
+     * and the records are modified through a new chunk instead.
+     * <p>
+     * Reads don't take a lock. The copy is published before the write lock
+     * of {@code switched} is taken once, and the records are only modified
+     * after that. A read that might have overlapped the switch fails to
+     * validate its stamp and is repeated on the copy, so a frozen chunk never
+     * observes the modification.
+     */
+    private final static class MappedChunk extends BookingStore.Chunk {
+
+        private final ByteBuffer live;
+        private final StampedLock switched;
+        private volatile ByteBuffer data;
+
+        MappedChunk(long version, ByteBuffer live) {
+            super(version);
+            this.live     = live;
+            this.data     = live;
+            this.switched = new StampedLock();
+        }
+
+        @Override long id(int pos)        { return getLong(pos * RECORD_SIZE); }
+        @Override long bookingId(int pos) { return getLong(pos * RECORD_SIZE + 8); }
+        @Override int tenant(int pos)     { return getInt(pos * RECORD_SIZE + 16); }
+        @Override int sauna(int pos)      { return getInt(pos * RECORD_SIZE + 20); }
+        @Override int from(int pos)       { return getInt(pos * RECORD_SIZE + 24); }
+        @Override int to(int pos)         { return getInt(pos * RECORD_SIZE + 28); }
+
+        private long getLong(int offset) {
+            final long stamp = switched.tryOptimisticRead();
+            final long value = data.getLong(offset);
+            return switched.validate(stamp) ? value : data.getLong(offset);
+        }
+
+        private int getInt(int offset) {
+            final long stamp = switched.tryOptimisticRead();
+            final int value  = data.getInt(offset);
+            return switched.validate(stamp) ? value : data.getInt(offset);
+        }
+
+        // Only chunks of the current version are modified, and those are
+        // never part of a frozen state.
+
+        @Override
+        void set(int pos, long id, long bookingId,
+                int tenant, int sauna, int from, int to) {
+
+            live.putLong(pos * RECORD_SIZE + 8, bookingId);
+            update(pos, tenant, sauna, from, to);
+            live.putLong(pos * RECORD_SIZE, id);
+        }
+
+        @Override
+        void update(int pos, int tenant, int sauna, int from, int to) {
+            final int offset = pos * RECORD_SIZE;
+            live.putInt(offset + 16, tenant);
+            live.putInt(offset + 20, sauna);
+            live.putInt(offset + 24, from);
+            live.putInt(offset + 28, to);
+        }
+
+        @Override
+        void clear(int pos) {
+            live.putLong(pos * RECORD_SIZE, 0);
+        }
+
+        @Override
+        BookingStore.Chunk copy(long version) {
+            final ByteBuffer copy = ByteBuffer.allocate(CHUNK_BYTES);
+            copy.put(live.duplicate());
+
+            data = copy;
+            switched.unlockWrite(switched.writeLock());
+
+            return new MappedChunk(version, live);
+        }
+    }
+
+    /**
+     * A hash table backed by a file.
+     */
+    private final class MappedTable extends BookingStore.Table {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final Regions entries;
+        private final int capacity;
+
+        MappedTable(Path path, FileChannel channel, int capacity) {
+            this.path     = requireNonNull(path);
+            this.channel  = requireNonNull(channel);
+            this.capacity = capacity;
+            this.entries  = new Regions(channel, (long) capacity * ENTRY_SIZE);
+        }
+
+        @Override
+        int capacity() {
+            return capacity;
+        }
+
+        @Override
+        long key(int i) {
+            final long offset = (long) i * ENTRY_SIZE;
+            return entries.region(offset, 8).getLong((int) (offset & REGION_MASK));
+        }
+
+        @Override
+        int slot(int i) {
+            final long offset = (long) i * ENTRY_SIZE + 8;
+            return entries.region(offset, 4).getInt((int) (offset & REGION_MASK)) - 1;
+        }
+
+        @Override
+        void put(int i, long key, int slot) {
+            final long offset = (long) i * ENTRY_SIZE;
+            final ByteBuffer region = entries.region(offset, ENTRY_SIZE);
+            final int pos = (int) (offset & REGION_MASK);
+            region.putLong(pos, key);
+            region.putInt(pos + 8, slot + 1);
+        }
+
+        @Override
+        void clear(int i) {
+            final long offset = (long) i * ENTRY_SIZE + 8;
+            entries.region(offset, 4).putInt((int) (offset & REGION_MASK), 0);
+        }
+
+        @Override
+        BookingStore.Table create(int capacity) {
+            return MappedStateFile.this.create(index, capacity);
+        }
+
+        @Override
+        void replace(BookingStore.Table previous) {
+            install();
+
+            final MappedTable old = (MappedTable) previous;
+            try {
+                old.channel.close();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(
+                    "Error closing index '" + old.path + "'.", ex
+                );
+            }
+        }
+
+        /**
+         * Moves the file of this table into place as the index.
+         */
+        void install() {
+            try {
+                Files.move(path, index, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(
+                    "Error replacing index '" + index + "'.", ex
+                );
+            }
+
+            table = this;
+        }
+    }
+}
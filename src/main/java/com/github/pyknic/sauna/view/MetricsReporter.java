@@ -0,0 +1,33 @@
+package com.github.pyknic.sauna.view;
+
+/**
+ * Receives the {@link BookingViewMetrics} of a view at a fixed interval, set
+ * using {@link BookingViewBuilder#withMetricsReporter(MetricsReporter, long)}.
+ * This can be used to forward the metrics to a monitoring system. Reporters
+ * are called on a background thread and should return quickly.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    /**
+     * Reports the current metrics.
+     *
+     * @param metrics  the metrics of the view
+     */
+    void report(BookingViewMetrics metrics);
+
+    /**
+     * Returns a reporter that logs a summary using {@code java.util.logging},
+     * at level {@code INFO} to the logger of {@link BookingView}. Nothing is
+     * logged if no event has been applied or refused since the last call and
+     * the lag is unchanged, so an idle view stays quiet.
+     *
+     * @return  the logging reporter
+     */
+    static MetricsReporter logging() {
+        return new LoggingReporter();
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static java.util.Objects.requireNonNull;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Applies a batch of events using several threads. Two events only need to be
+ * applied in order if they concern the same booking, sauna or tenant, so the
+ * batch is split into groups of events that are connected that way. Each
+ * group is applied in {@code id} order by a single thread, and different
+ * groups are applied in parallel.
+ * <p>
+ * When a booking is updated or deleted, the group also includes the sauna
+ * and tenant that the booking had before the batch, since those indexes are
+ * modified too.
+ * <p>
+ * If many saunas are shared by the same tenants, most events might end up in
+ * the same group and the speedup will be small.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class ParallelReplay {
+
+    /**
+     * Batches smaller than this are applied on the calling thread.
+     */
+    private final static int MIN_PARALLEL_BATCH = 256;
+
+    private final ForkJoinPool pool;
+    private final BookingStore store;
+    private final Consumer<Booking> action;
+
+    ParallelReplay(ForkJoinPool pool, BookingStore store, Consumer<Booking> action) {
+        this.pool   = requireNonNull(pool);
+        this.store  = requireNonNull(store);
+        this.action = requireNonNull(action);
+    }
+
+    /**
+     * Applies the specified events, which must be ordered by {@code id}.
+     * Returns once every event has been applied.
+     *
+     * @param events  the events to apply
+     */
+    void apply(List<Booking> events) {
+        if (events.size() < MIN_PARALLEL_BATCH) {
+            events.forEach(action);
+            return;
+        }
+
+        final List<List<Booking>> groups = partition(events);
+        if (groups.size() == 1) {
+            events.forEach(action);
+        } else {
+            // A parallel stream started inside the pool runs in that pool.
+            pool.submit(() -> 
+                groups.parallelStream().forEach(group -> group.forEach(action))
+            ).join();
+        }
+    }
+
+    private List<List<Booking>> partition(List<Booking> events) {
+        final int n = events.size();
+        final int[] parent = new int[n];
+        final Map<Integer, Integer> lastBySauna  = new HashMap<>();
+        final Map<Integer, Integer> lastByTenant = new HashMap<>();
+        final Map<Long, Integer> lastByBooking   = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            final Booking ev = events.get(i);
+
+            union(parent, i, lastByBooking.put(ev.getBookingId(), i));
+
+            if (ev.getSauna().isPresent()) {
+                union(parent, i, lastBySauna.put(ev.getSauna().getAsInt(), i));
+            }
+
+            if (ev.getTenant().isPresent()) {
+                union(parent, i, lastByTenant.put(ev.getTenant().getAsInt(), i));
+            }
+
+            // The state of the booking before this batch. Any changes made
+            // earlier in the batch are already connected through the id.
+            final int slot = store.find(ev.getBookingId());
+            if (slot >= 0) {
+                union(parent, i, lastBySauna.put(store.sauna(slot), i));
+                union(parent, i, lastByTenant.put(store.tenant(slot), i));
+            }
+        }
+
+        // Collect each group in id order.
+        final Map<Integer, List<Booking>> groups = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(find(parent, i), r -> new ArrayList<>())
+                .add(events.get(i));
+        }
+
+        return new ArrayList<>(groups.values());
+    }
+
+    private static void union(int[] parent, int a, Integer b) {
+        if (b != null) {
+            final int ra = find(parent, a);
+            final int rb = find(parent, b);
+            if (ra != rb) {
+                parent[Math.max(ra, rb)] = Math.min(ra, rb);
+            }
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,471 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import static java.util.Objects.requireNonNull;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * An event source that polls the database for new events. This will pick up
+ * events written by any process, but each event can take up to one poll 
+ * interval to show up in the view.
+ * <p>
+ * The interval adapts to the traffic. As long as new events are found, the
+ * next poll is scheduled after the update interval. Every poll that finds
+ * nothing doubles the interval, up to the idle interval. The next poll is
+ * only scheduled once the previous one has finished, so a slow query never
+ * causes polls to queue up, and the polls of many views can share the 
+ * threads of a single {@link ScheduledExecutorService}.
+ * <p>
+ * Ids are generated before the transaction that persists an event commits,
+ * so an event can become visible after events with greater ids. The poller 
+ * therefore never reads past an id that is missing (see 
+ * {@link BookingManager#getContiguousId(long, long)}). The poller remembers
+ * when each latest id was first seen. An id that is still missing once the
+ * gap timeout has passed since a greater id was seen is assumed to belong to
+ * a transaction that was rolled back. Every such id is skipped at once, so a
+ * view that replays a table with many old gaps only waits for the timeout
+ * once. Skipped ids are counted by 
+ * {@link BookingViewMetrics#getSkippedIds()}.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class PollingEventSource implements BookingEventSource {
+
+    private final static Logger LOGGER =
+        Logger.getLogger(PollingEventSource.class.getName());
+
+    private final static int CHUNK_SIZE = 4_096;
+    private final static long STOP_WAIT = 1_000_000; // Nanoseconds
+
+    private final BookingManager mgr;
+    private final int batchSize;
+    private final long updateEvery;
+    private final long idleEvery;
+    private final long gapTimeout;
+    private final int firstSauna;
+    private final int lastSauna;
+    private final AtomicBoolean working;
+    private final AtomicBoolean refreshing;
+    private final ScheduledExecutorService scheduler;
+    private volatile BookingEventSink sink;
+    private final Deque<long[]> seen; // {latest id, millis}, guarded by working
+    private volatile long delay;   // Until the next scheduled poll
+    private long expired;          // Seen before the gap timeout, guarded by working
+    private long skipped;          // Guarded by working
+    private boolean stale;         // Guarded by working
+    private Future<?> next;        // Guarded by this
+    private boolean stopped;       // Guarded by this
+
+    /**
+     * Creates a new poller.
+     *
+     * @param mgr          the manager to read events from
+     * @param batchSize    the maximum number of events to read in one query
+     * @param updateEvery  the poll interval in milliseconds
+     */
+    public PollingEventSource(BookingManager mgr, int batchSize, long updateEvery) {
+        this(mgr, batchSize, updateEvery, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new poller that only reads events for a range of saunas, as
+     * well as events that don't specify a sauna. The filter is part of the
+     * query, so other events are never sent from the database. The poller
+     * runs on the {@link ViewScheduler#shared() shared} scheduler and polls
+     * at a fixed rate.
+     *
+     * @param mgr          the manager to read events from
+     * @param batchSize    the maximum number of events to read in one query
+     * @param updateEvery  the poll interval in milliseconds
+     * @param firstSauna   the first sauna to read events for
+     * @param lastSauna    the last sauna to read events for
+     */
+    public PollingEventSource(BookingManager mgr, int batchSize, long updateEvery,
+            int firstSauna, int lastSauna) {
+        
+        this(mgr, batchSize, updateEvery, updateEvery, 
+            firstSauna, lastSauna, ViewScheduler.shared()
+        );
+    }
+
+    /**
+     * Creates a new poller that only reads events for a range of saunas, as
+     * well as events that don't specify a sauna. The filter is part of the
+     * query, so other events are never sent from the database.
+     *
+     * @param mgr          the manager to read events from
+     * @param batchSize    the maximum number of events to read in one query
+     * @param updateEvery  the poll interval in milliseconds while there are
+     *                     new events
+     * @param idleEvery    the longest poll interval in milliseconds when no
+     *                     new events are found
+     * @param firstSauna   the first sauna to read events for
+     * @param lastSauna    the last sauna to read events for
+     * @param scheduler    the scheduler to run the polls on
+     */
+    public PollingEventSource(BookingManager mgr, int batchSize, long updateEvery,
+            long idleEvery, int firstSauna, int lastSauna, 
+            ScheduledExecutorService scheduler) {
+        
+        this(mgr, batchSize, updateEvery, idleEvery, firstSauna, lastSauna, 
+            scheduler, BookingView.DEFAULT_GAP_TIMEOUT
+        );
+    }
+
+    /**
+     * Creates a new poller that only reads events for a range of saunas, as
+     * well as events that don't specify a sauna. The filter is part of the
+     * query, so other events are never sent from the database.
+     *
+     * @param mgr          the manager to read events from
+     * @param batchSize    the maximum number of events to read in one query
+     * @param updateEvery  the poll interval in milliseconds while there are
+     *                     new events
+     * @param idleEvery    the longest poll interval in milliseconds when no
+     *                     new events are found
+     * @param firstSauna   the first sauna to read events for
+     * @param lastSauna    the last sauna to read events for
+     * @param scheduler    the scheduler to run the polls on
+     * @param gapTimeout   how long to wait for a missing id in milliseconds
+     *                     before it is skipped
+     */
+    public PollingEventSource(BookingManager mgr, int batchSize, long updateEvery,
+            long idleEvery, int firstSauna, int lastSauna, 
+            ScheduledExecutorService scheduler, long gapTimeout) {
+        
+        if (idleEvery < updateEvery) {
+            throw new IllegalArgumentException(
+                "Idle interval " + idleEvery + " ms is shorter than the " + 
+                "update interval " + updateEvery + " ms."
+            );
+        }
+        
+        this.mgr         = requireNonNull(mgr);
+        this.batchSize   = batchSize;
+        this.updateEvery = updateEvery;
+        this.idleEvery   = idleEvery;
+        this.gapTimeout  = gapTimeout;
+        this.firstSauna  = firstSauna;
+        this.lastSauna   = lastSauna;
+        this.scheduler   = requireNonNull(scheduler);
+        this.working     = new AtomicBoolean(false);
+        this.refreshing  = new AtomicBoolean(false);
+        this.seen        = new ArrayDeque<>();
+        this.delay       = updateEvery;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException  if the sink is behind the compaction
+     *                                horizon, so that the events it has
+     *                                missed no longer exist
+     */
+    @Override
+    public void start(BookingEventSink sink) {
+        final long last    = sink.getLast();
+        final long horizon = mgr.getHorizon();
+        if (last > 0 && last < horizon) {
+            throw new IllegalStateException(
+                "The view is at " + last + ", but every event up to " + 
+                horizon + " has been compacted. The view must be rebuilt."
+            );
+        }
+        
+        this.sink = sink;
+        schedule(0);
+    }
+
+    @Override
+    public void refresh() {
+        // Only keep one extra poll in the queue at any time.
+        if (sink != null && refreshing.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    refreshing.set(false);
+                    delay = updateEvery;
+                    poll();
+                });
+            } catch (final RejectedExecutionException ex) {
+                // The scheduler has been shut down.
+                refreshing.set(false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a poll is running, this waits for it to finish, so that no events
+     * are delivered to the sink once this returns.
+     */
+    @Override
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+        
+        // Keep the poll lock so that no refresh can start another poll.
+        while (!working.compareAndSet(false, true)) {
+            LockSupport.parkNanos(STOP_WAIT);
+        }
+    }
+
+    /**
+     * Schedules the next poll after the specified delay, unless the source
+     * has been stopped.
+     */
+    private synchronized void schedule(long millis) {
+        if (!stopped) {
+            try {
+                next = scheduler.schedule(this::tick, millis, MILLISECONDS);
+            } catch (final RejectedExecutionException ex) {
+                // The scheduler has been shut down.
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Polls the database and schedules the next poll, backing off if nothing
+     * was found.
+     */
+    private void tick() {
+        try {
+            switch (poll()) {
+                case FOUND : delay = updateEvery; break;
+                case EMPTY : delay = Math.min(delay * 2, idleEvery); break;
+                case BUSY  : break;
+            }
+        } catch (final RuntimeException ex) {
+            delay = idleEvery;
+            LOGGER.log(WARNING, ex, () -> String.format(
+                "%s: Polling failed. Retrying in %d ms.",
+                System.identityHashCode(sink), delay
+            ));
+        } finally {
+            schedule(delay);
+        }
+    }
+
+    /**
+     * The outcome of a poll.
+     */
+    private enum Poll {
+        FOUND, // New events were found
+        EMPTY, // The view was already up to date
+        BUSY   // Another poll was already running
+    }
+
+    private Poll poll() {
+        // Make sure no previous task is already inside this block.
+        if (working.compareAndSet(false, true)) {
+            try {
+                final long before = sink.getLast();
+                final long latest = mgr.getLatestId();
+                sink.reportLatest(latest);
+                
+                if (!catchUpCompacted()) {
+                    return Poll.EMPTY;
+                }
+                
+                // Events after a missing id are left for a later poll, since
+                // the missing one might still be committed.
+                final long bound = committed(latest);
+
+                // Loop until a batch is not filled up 
+                // (the database is up to date).
+                while (true) {
+                    final long start = System.nanoTime();
+                    final long from  = sink.getLast();
+                    final int added;
+                    
+                    // Stream the next batch of events that has not yet been
+                    // merged into the materialized object view. If the view
+                    // applies events one at a time, the rows are decoded
+                    // straight into it without creating any entities.
+                    if (sink.isParallel()) {
+                        added = pollEntities(bound);
+                    } else {
+                        added = mgr.forEachAfter(
+                            from, firstSauna, lastSauna, batchSize, record -> {
+                                if (record.getId() <= bound) {
+                                    sink.accept(record);
+                                }
+                            }
+                        );
+                    }
+
+                    sink.reportBatch(added, System.nanoTime() - start);
+
+                    // Stop if the rest of the events are after the bound.
+                    if (added < batchSize || sink.getLast() == from) {
+                        break;
+                    }
+                }
+                
+                // Every event up to the bound that concerns the view has been
+                // delivered, even if the last ones were filtered out.
+                sink.skipTo(bound);
+                
+                if (skipped > 0) {
+                    sink.reportSkipped(skipped);
+                    skipped = 0;
+                }
+                
+                sink.caughtUp();
+                
+                // Keep polling at the update interval while waiting for a gap
+                // to be filled.
+                return sink.getLast() == before && bound == latest 
+                    ? Poll.EMPTY : Poll.FOUND;
+
+            // Release this resource once we exit this block.
+            } finally {
+                working.set(false);
+            }
+        } else {
+            return Poll.BUSY;
+        }
+    }
+
+    /**
+     * Returns the greatest id up to the latest one that can be read without 
+     * skipping an event that has not been committed yet. An id that is still
+     * missing when the gap timeout has passed since a greater id was first
+     * seen is assumed to belong to a transaction that was rolled back, and 
+     * is skipped together with every other such id. The number of skipped 
+     * ids is kept until the events up to the bound have been delivered.
+     *
+     * @param latest  the latest id in the database
+     * @return        the greatest id that is safe to read up to
+     */
+    private long committed(long latest) {
+        final long last  = sink.getLast();
+        final long bound = mgr.getContiguousId(last, latest);
+        final long old   = expired(latest, System.currentTimeMillis());
+        
+        if (bound >= old) {
+            return bound;
+        }
+        
+        // Every id up to the expired one has either been committed or been
+        // rolled back, so the gaps before it can all be skipped.
+        final long until = Math.min(old, latest);
+        skipped = until - bound - mgr.countEvents(bound, until);
+        return mgr.getContiguousId(until, latest);
+    }
+
+    /**
+     * Remembers when the specified latest id was first seen and returns the 
+     * greatest id that was seen at least the gap timeout ago.
+     *
+     * @param latest  the latest id in the database
+     * @param now     the current time in milliseconds
+     * @return        the greatest id seen before the gap timeout
+     */
+    private long expired(long latest, long now) {
+        if (seen.isEmpty() || seen.peekLast()[0] < latest) {
+            seen.addLast(new long[] {latest, now});
+        }
+        
+        while (!seen.isEmpty() && now - seen.peekFirst()[1] >= gapTimeout) {
+            expired = seen.pollFirst()[0];
+        }
+        
+        return expired;
+    }
+
+    /**
+     * Makes sure the view is not behind the compaction horizon. An empty 
+     * view starts by loading the compacted state, but a view that stopped
+     * somewhere before the horizon has missed events that no longer exist.
+     * Such a view is reported as stale and is not updated any more.
+     *
+     * @return  {@code true} if the events after the view are available
+     */
+    private boolean catchUpCompacted() {
+        final long last = sink.getLast();
+        final long horizon = mgr.getHorizon();
+        
+        if (last >= horizon) {
+            return true;
+        } else if (last == 0) {
+            final long start = System.nanoTime();
+            final int added = mgr.forEachCompacted(record -> {
+                if (!record.hasSauna() 
+                ||  (record.getSauna() >= firstSauna 
+                &&   record.getSauna() <= lastSauna)) {
+                    sink.accept(record);
+                }
+            });
+            
+            sink.reportBatch(added, System.nanoTime() - start);
+            sink.skipTo(horizon);
+            return true;
+        } else {
+            if (!stale) {
+                stale = true;
+                sink.reportStale(horizon);
+                LOGGER.log(SEVERE, () -> String.format(
+                    "%s: The view is at %d, but every event up to %d has " + 
+                    "been compacted. The view must be rebuilt.",
+                    System.identityHashCode(sink), last, horizon
+                ));
+            }
+            
+            return false;
+        }
+    }
+
+    /**
+     * Loads the next batch as entities and hands them to the sink in chunks
+     * so that it can apply them in parallel.
+     *
+     * @param bound  the id of the last event to apply
+     * @return       the number of loaded events
+     */
+    private int pollEntities(long bound) {
+        final List<Booking> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        // The events are ordered by id, so the limit returns the lowest ids 
+        // after 'last' and no event is skipped (ORDER BY id LIMIT n).
+        final int added = mgr.forEachAfter(
+            sink.getLast(), firstSauna, lastSauna, batchSize, record -> {
+                if (record.getId() > bound) {
+                    return;
+                }
+                
+                chunk.add(record.toBooking());
+
+                if (chunk.size() == CHUNK_SIZE) {
+                    sink.acceptAll(chunk);
+                    chunk.clear();
+                }
+            }
+        );
+
+        if (!chunk.isEmpty()) {
+            sink.acceptAll(chunk);
+        }
+
+        return added;
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingManager;
+import static java.util.Objects.requireNonNull;
+import java.util.function.Consumer;
+
+/**
+ * An event source that is notified by the {@link BookingManager} every time
+ * an event is persisted in this process, so that it is applied to the view 
+ * on the persisting thread without waiting for the next poll.
+ * <p>
+ * Events written by other processes are not seen by this source, so it 
+ * should be combined with a {@link PollingEventSource}. If an event is 
+ * persisted before an earlier one has reached the view, the event is left to
+ * the poller and a refresh is requested.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class PushEventSource implements BookingEventSource {
+
+    private final BookingManager mgr;
+    private volatile Consumer<Booking> listener;
+
+    public PushEventSource(BookingManager mgr) {
+        this.mgr = requireNonNull(mgr);
+    }
+
+    @Override
+    public void start(BookingEventSink sink) {
+        requireNonNull(sink);
+        
+        listener = persisted -> {
+            sink.reportLatest(persisted.getId());
+            if (!sink.offer(persisted)) {
+                sink.refresh();
+            }
+        };
+
+        mgr.addPersistListener(listener);
+    }
+
+    @Override
+    public void stop() {
+        if (listener != null) {
+            mgr.removePersistListener(listener);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Comparator.comparing;
+import java.util.List;
+import java.util.Optional;
+import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+
+/**
+ * A group of {@link BookingView} shards in this process that are queried as
+ * if they were a single view. Each shard owns a range of saunas, set using
+ * {@link BookingViewBuilder#withSaunas(int, int)}, and only reads the events
+ * for those. Queries for a sauna are sent to the shard that owns it, and other
+ * queries are sent to every shard and the results merged.
+ * <p>
+ * The shards share a {@link TenantIndex}, so a tenant can't book two saunas 
+ * at the same time even if they belong to different shards.
+ * <p>
+ * A booking can't be moved to a sauna in another shard. The shard that has
+ * the booking never reads the update, and the shard that owns the new sauna
+ * doesn't know the rest of the booking, so {@link #isAllowed(Booking, long)}
+ * refuses such updates. To move a booking between shards, delete it and 
+ * create a new booking for the other sauna.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class ShardedBookingView {
+
+    private final List<BookingView> shards;
+
+    private ShardedBookingView(List<BookingView> shards) {
+        this.shards = unmodifiableList(shards);
+    }
+
+    /**
+     * Returns the shards of this view.
+     *
+     * @return  the shards
+     */
+    public List<BookingView> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns a stream of the bookings in every shard. A snapshot of each
+     * shard is taken when this method is called, so the stream is not 
+     * affected by events applied while it is consumed. The shards might 
+     * however not have applied exactly the same events.
+     *
+     * @return  stream of bookings
+     */
+    public Stream<Booking> stream() {
+        return shards.stream()
+            .map(BookingView::snapshot)
+            .collect(toList()).stream()
+            .flatMap(BookingViewSnapshot::stream);
+    }
+
+    /**
+     * Returns every booking of the specified sauna that overlaps the specified
+     * period, ordered by start date. Only the shard that owns the sauna is
+     * queried.
+     *
+     * @param sauna  the sauna
+     * @param from   the first day of the period
+     * @param to     the last day of the period
+     * @return       the bookings ordered by start date
+     * @see          BookingView#findBySauna(int, LocalDate, LocalDate)
+     */
+    public List<Booking> findBySauna(int sauna, LocalDate from, LocalDate to) {
+        return shardOf(sauna).findBySauna(sauna, from, to);
+    }
+
+    /**
+     * Returns every booking made by the specified tenant that overlaps the
+     * specified period, ordered by start date. Every shard is queried.
+     *
+     * @param tenant  the tenant
+     * @param from    the first day of the period
+     * @param to      the last day of the period
+     * @return        the bookings ordered by start date
+     * @see           BookingView#findByTenant(int, LocalDate, LocalDate)
+     */
+    public List<Booking> findByTenant(int tenant, LocalDate from, LocalDate to) {
+        final List<Booking> result = new ArrayList<>();
+        shards.forEach(shard -> result.addAll(shard.findByTenant(tenant, from, to)));
+        result.sort(comparing(b -> b.getBookedFromDay().getAsInt()));
+        return unmodifiableList(result);
+    }
+
+    /**
+     * Returns the saunas in the specified range that have no booking at any
+     * day of the specified period. Only the shards that own a sauna in the
+     * range are queried.
+     *
+     * @param firstSauna  the first sauna to check
+     * @param lastSauna   the last sauna to check
+     * @param from        the first day of the period
+     * @param to          the last day of the period
+     * @return            the free saunas in ascending order
+     * @see               BookingView#findFreeSaunas(int, int, LocalDate, LocalDate)
+     */
+    public List<Integer> findFreeSaunas(int firstSauna, int lastSauna, 
+            LocalDate from, LocalDate to) {
+        
+        // The shards are sorted by sauna, so the results are as well.
+        final List<Integer> result = new ArrayList<>();
+        shards.forEach(shard -> result.addAll(
+            shard.findFreeSaunas(firstSauna, lastSauna, from, to)
+        ));
+        
+        return unmodifiableList(result);
+    }
+
+    /**
+     * Returns every period within the specified one when the specified sauna
+     * has no booking. Only the shard that owns the sauna is queried. If no 
+     * shard owns it, the sauna is considered free for the whole period.
+     *
+     * @param sauna  the sauna
+     * @param from   the first day of the period
+     * @param to     the last day of the period
+     * @return       the free periods ordered by date
+     * @see          BookingView#findFreePeriods(int, LocalDate, LocalDate)
+     */
+    public List<FreePeriod> findFreePeriods(int sauna, LocalDate from, LocalDate to) {
+        return shardOf(sauna).findFreePeriods(sauna, from, to);
+    }
+
+    /**
+     * Returns the earliest period of the specified number of days when the
+     * specified sauna has no booking. Only the shard that owns the sauna is 
+     * queried.
+     *
+     * @param sauna  the sauna
+     * @param from   the earliest first day
+     * @param days   the number of days
+     * @return       the free period, or empty if there is none
+     * @see          BookingView#findFirstFree(int, LocalDate, int)
+     */
+    public Optional<FreePeriod> findFirstFree(int sauna, LocalDate from, int days) {
+        return shardOf(sauna).findFirstFree(sauna, from, days);
+    }
+
+    /**
+     * Returns {@code true} if the specified event would be accepted by every
+     * shard if it was persisted right after the event with the specified 
+     * {@code id}. Updates that move a booking to a sauna in another shard are
+     * refused. This can be used as the validator of the manager.
+     *
+     * @param event  the event to check
+     * @param after  the id of the event to check it after
+     * @return       {@code true} if the event would be accepted
+     * @see          BookingView#isAllowed(Booking, long)
+     */
+    public boolean isAllowed(Booking event, long after) {
+        for (final BookingView shard : shards) {
+            if (!shard.isAllowed(event, after)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void stop() {
+        shards.forEach(BookingView::stop);
+    }
+
+    /**
+     * Returns the shard that owns the specified sauna. If there is none, any
+     * shard is returned, since it won't have any bookings for the sauna.
+     */
+    private BookingView shardOf(int sauna) {
+        for (final BookingView shard : shards) {
+            if (shard.owns(sauna)) {
+                return shard;
+            }
+        }
+
+        return shards.get(0);
+    }
+
+    /**
+     * Creates a view from the specified shards. Each builder must have a
+     * range of saunas set using {@link BookingViewBuilder#withSaunas(int, int)}
+     * that does not overlap with any other. The shards are given a shared
+     * {@link TenantIndex} and started.
+     * <p>
+     * If any of the builders has {@link BookingViewBuilder#withValidation() 
+     * validation}, the sharded view is made the validator of its manager 
+     * instead of the shard, so that events are checked by every shard.
+     *
+     * @param shards  builders for each shard
+     * @return        the new view
+     */
+    public static ShardedBookingView create(BookingViewBuilder... shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        
+        final BookingViewBuilder[] sorted = shards.clone();
+        Arrays.sort(sorted, comparing(BookingViewBuilder::getFirstSauna));
+
+        for (int i = 0; i < sorted.length; i++) {
+            final BookingViewBuilder shard = sorted[i];
+            if (shard.getFirstSauna() == Integer.MIN_VALUE
+            &&  shard.getLastSauna()  == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                    "Every shard must have a range of saunas."
+                );
+            } else if (i > 0 && sorted[i - 1].getLastSauna() >= shard.getFirstSauna()) {
+                throw new IllegalArgumentException(
+                    "The saunas of two shards overlap at " + 
+                    shard.getFirstSauna() + "."
+                );
+            }
+        }
+
+        final TenantIndex tenants = new TenantIndex();
+        final List<BookingView> views = new ArrayList<>(sorted.length);
+        for (final BookingViewBuilder shard : sorted) {
+            views.add(shard.withTenantIndex(tenants).build(false));
+        }
+
+        // A manager only has a single validator, so the shards would replace
+        // each other if they were installed one by one.
+        final ShardedBookingView view = new ShardedBookingView(views);
+        Stream.of(sorted)
+            .filter(BookingViewBuilder::hasValidation)
+            .map(BookingViewBuilder::getManager)
+            .distinct()
+            .forEach(mgr -> mgr.setValidator(view::isAllowed));
+
+        return view;
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.pyknic.sauna.view;
+
+import static java.util.Arrays.binarySearch;
+
+/**
+ * A sorted set of primitive {@code long} values. The values are kept in
+ * sorted blocks of at most {@value #BLOCK_SIZE} elements, so inserting or
+ * removing a value only moves the elements of one block, and finding a value
+ * is two binary searches. No objects are created except when a block is
+ * split.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class SortedLongSet {
+
+    /**
+     * Returned by the search methods if there is no matching value.
+     */
+    final static long NONE = Long.MIN_VALUE;
+
+    private final static int BLOCK_SIZE = 256;
+
+    private long[][] blocks;
+    private int[] sizes;
+    private int count; // Number of blocks in use
+    private int size;  // Number of values
+
+    SortedLongSet() {
+        this.blocks = new long[4][];
+        this.sizes  = new int[4];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value  the value to add (must not be {@link #NONE})
+     * @return       {@code true} if it was added, {@code false} if it existed
+     */
+    boolean add(long value) {
+        if (count == 0) {
+            insertBlock(0, new long[BLOCK_SIZE], 0);
+        }
+
+        int b = blockOf(value);
+        if (b < 0) {
+            b = 0;
+        }
+
+        int pos = binarySearch(blocks[b], 0, sizes[b], value);
+        if (pos >= 0) {
+            return false;
+        }
+
+        pos = -pos - 1;
+
+        // Split the block in two if it is full.
+        if (sizes[b] == BLOCK_SIZE) {
+            final int half = BLOCK_SIZE / 2;
+            final long[] upper = new long[BLOCK_SIZE];
+            System.arraycopy(blocks[b], half, upper, 0, BLOCK_SIZE - half);
+            sizes[b] = half;
+            insertBlock(b + 1, upper, BLOCK_SIZE - half);
+
+            if (pos > half) {
+                b++;
+                pos -= half;
+            }
+        }
+
+        final long[] block = blocks[b];
+        System.arraycopy(block, pos, block, pos + 1, sizes[b] - pos);
+        block[pos] = value;
+        sizes[b]++;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a value from the set.
+     *
+     * @param value  the value to remove
+     * @return       {@code true} if it was removed, {@code false} if missing
+     */
+    boolean remove(long value) {
+        final int b = blockOf(value);
+        if (b < 0) {
+            return false;
+        }
+
+        final long[] block = blocks[b];
+        final int pos = binarySearch(block, 0, sizes[b], value);
+        if (pos < 0) {
+            return false;
+        }
+
+        System.arraycopy(block, pos + 1, block, pos, sizes[b] - pos - 1);
+        size--;
+
+        if (--sizes[b] == 0) {
+            removeBlock(b);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the greatest value less than or equal to the specified one.
+     *
+     * @param value  the value to search for
+     * @return       the found value or {@link #NONE}
+     */
+    long floor(long value) {
+        final int b = blockOf(value);
+        if (b < 0) {
+            return NONE;
+        }
+
+        final int pos = binarySearch(blocks[b], 0, sizes[b], value);
+        return pos >= 0 ? value : blocks[b][-pos - 2];
+    }
+
+    /**
+     * Returns the greatest value strictly less than the specified one.
+     *
+     * @param value  the value to search for
+     * @return       the found value or {@link #NONE}
+     */
+    long lower(long value) {
+        return value == Long.MIN_VALUE ? NONE : floor(value - 1);
+    }
+
+    /**
+     * Returns the least value greater than or equal to the specified one.
+     *
+     * @param value  the value to search for
+     * @return       the found value or {@link #NONE}
+     */
+    long ceiling(long value) {
+        if (count == 0) {
+            return NONE;
+        }
+
+        final int b = Math.max(0, blockOf(value));
+        int pos = binarySearch(blocks[b], 0, sizes[b], value);
+        if (pos >= 0) {
+            return value;
+        }
+
+        pos = -pos - 1;
+        if (pos < sizes[b]) {
+            return blocks[b][pos];
+        } else if (b + 1 < count) {
+            return blocks[b + 1][0];
+        } else {
+            return NONE;
+        }
+    }
+
+    /**
+     * Returns the least value strictly greater than the specified one.
+     *
+     * @param value  the value to search for
+     * @return       the found value or {@link #NONE}
+     */
+    long higher(long value) {
+        return value == Long.MAX_VALUE ? NONE : ceiling(value + 1);
+    }
+
+    /**
+     * Returns the index of the last block with a first value less than or
+     * equal to the specified one, or {@code -1} if there is no such block.
+     */
+    private int blockOf(long value) {
+        int lo = 0, hi = count - 1, found = -1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (blocks[mid][0] <= value) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return found;
+    }
+
+    private void insertBlock(int b, long[] block, int blockSize) {
+        if (count == blocks.length) {
+            final long[][] grownBlocks = new long[count * 2][];
+            final int[] grownSizes = new int[count * 2];
+            System.arraycopy(blocks, 0, grownBlocks, 0, count);
+            System.arraycopy(sizes, 0, grownSizes, 0, count);
+            blocks = grownBlocks;
+            sizes  = grownSizes;
+        }
+
+        System.arraycopy(blocks, b, blocks, b + 1, count - b);
+        System.arraycopy(sizes, b, sizes, b + 1, count - b);
+        blocks[b] = block;
+        sizes[b]  = blockSize;
+        count++;
+    }
+
+    private void removeBlock(int b) {
+        System.arraycopy(blocks, b + 1, blocks, b, count - b - 1);
+        System.arraycopy(sizes, b + 1, sizes, b, count - b - 1);
+        blocks[--count] = null;
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.sql.Date;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.StringJoiner;
+
+/**
+ * An immutable {@link Booking} that is created when the state of a booking is
+ * read from a {@link BookingStore}. Every field is present and the event
+ * type is always {@code CREATE}. The setters throw an
+ * {@code UnsupportedOperationException}.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class StoredBooking implements Booking {
+
+    private final long id;
+    private final long bookingId;
+    private final int tenant;
+    private final int sauna;
+    private final int bookedFrom; // Epoch day
+    private final int bookedTo;   // Epoch day
+
+    StoredBooking(long id, long bookingId, int tenant, int sauna, 
+            int bookedFrom, int bookedTo) {
+        
+        this.id         = id;
+        this.bookingId  = bookingId;
+        this.tenant     = tenant;
+        this.sauna      = sauna;
+        this.bookedFrom = bookedFrom;
+        this.bookedTo   = bookedTo;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public long getBookingId() {
+        return bookingId;
+    }
+
+    @Override
+    public String getEventType() {
+        return EventType.CREATE.name();
+    }
+
+    @Override
+    public OptionalInt getTenant() {
+        return OptionalInt.of(tenant);
+    }
+
+    @Override
+    public OptionalInt getSauna() {
+        return OptionalInt.of(sauna);
+    }
+
+    @Override
+    public Optional<Date> getBookedFrom() {
+        return Optional.of(EpochDays.toDate(bookedFrom));
+    }
+
+    @Override
+    public Optional<Date> getBookedTo() {
+        return Optional.of(EpochDays.toDate(bookedTo));
+    }
+
+    @Override
+    public OptionalInt getBookedFromDay() {
+        return OptionalInt.of(bookedFrom);
+    }
+
+    @Override
+    public OptionalInt getBookedToDay() {
+        return OptionalInt.of(bookedTo);
+    }
+
+    @Override
+    public Booking setId(long id) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setBookingId(long bookingId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setEventType(String eventType) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setTenant(Integer tenant) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setSauna(Integer sauna) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setBookedFrom(Date bookedFrom) {
+        throw readOnly();
+    }
+
+    @Override
+    public Booking setBookedTo(Date bookedTo) {
+        throw readOnly();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner sj = new StringJoiner(", ", "{ ", " }");
+        sj.add("id = " + id);
+        sj.add("bookingId = " + bookingId);
+        sj.add("eventType = " + getEventType());
+        sj.add("tenant = " + tenant);
+        sj.add("sauna = " + sauna);
+        sj.add("bookedFrom = " + EpochDays.toDate(bookedFrom));
+        sj.add("bookedTo = " + EpochDays.toDate(bookedTo));
+        return "StoredBooking " + sj.toString();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) { return true; }
+        if (!(that instanceof StoredBooking)) { return false; }
+        final StoredBooking thatBooking = (StoredBooking) that;
+        return id         == thatBooking.id
+            && bookingId  == thatBooking.bookingId
+            && tenant     == thatBooking.tenant
+            && sauna      == thatBooking.sauna
+            && bookedFrom == thatBooking.bookedFrom
+            && bookedTo   == thatBooking.bookedTo;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + Long.hashCode(id);
+        hash = 31 * hash + Long.hashCode(bookingId);
+        hash = 31 * hash + tenant;
+        hash = 31 * hash + sauna;
+        hash = 31 * hash + bookedFrom;
+        hash = 31 * hash + bookedTo;
+        return hash;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException(
+            "Bookings read from a view can't be modified."
+        );
+    }
+}
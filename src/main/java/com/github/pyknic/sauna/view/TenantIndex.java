@@ -0,0 +1,102 @@
+package com.github.pyknic.sauna.view;
+
+/**
+ * The period and tenant of every booking in a group of sharded views, used
+ * to make sure that a tenant never has two overlapping bookings, even if 
+ * they are for saunas in different shards. Nothing but the tenant and the 
+ * dates are stored, so the index is much smaller than the views it serves.
+ * <p>
+ * Pass the same index to every shard in the process using 
+ * {@link BookingViewBuilder#withTenantIndex(TenantIndex)}, or let 
+ * {@link ShardedBookingView} do it. Bookings are claimed in the order the 
+ * shards apply them. Once the shards are up to date, that is the order of 
+ * the {@code id}, but if the log contains overlapping bookings of the same 
+ * tenant in different shards, which one is accepted during the initial 
+ * replay depends on which shard gets there first.
+ * <p>
+ * All methods are thread safe.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class TenantIndex {
+
+    private final BookingStore store;
+    private final IntervalIndex byTenant;
+
+    public TenantIndex() {
+        this.store    = new BookingStore();
+        this.byTenant = new IntervalIndex(store, store::tenant);
+    }
+
+    /**
+     * Returns the number of bookings in the index.
+     *
+     * @return  the number of bookings
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Returns {@code true} if the specified tenant has a booking other than
+     * the specified one that overlaps the specified period.
+     */
+    synchronized boolean overlaps(int tenant, long bookingId, int from, int to) {
+        return byTenant.overlaps(tenant, bookingId, from, to);
+    }
+
+    /**
+     * Adds a new booking unless it already exists or the tenant has another
+     * booking that overlaps it.
+     *
+     * @return  {@code true} if the booking was added
+     */
+    synchronized boolean add(long bookingId, int tenant, int from, int to) {
+        if (byTenant.overlaps(tenant, bookingId, from, to)) {
+            return false;
+        }
+
+        final int slot = store.insert(1, bookingId, tenant, 0, from, to); // Any id but 0
+        if (slot < 0) {
+            return false;
+        }
+
+        byTenant.add(slot);
+        return true;
+    }
+
+    /**
+     * Changes the tenant or period of an existing booking, unless the tenant
+     * has another booking that overlaps the new period. A booking that does
+     * not exist is added.
+     *
+     * @return  {@code true} if the booking was changed
+     */
+    synchronized boolean move(long bookingId, int tenant, int from, int to) {
+        final int slot = store.find(bookingId);
+        if (slot < 0) {
+            return add(bookingId, tenant, from, to);
+        }
+
+        if (byTenant.overlaps(tenant, bookingId, from, to)) {
+            return false;
+        }
+
+        byTenant.remove(slot);
+        store.update(slot, tenant, 0, from, to);
+        byTenant.add(slot);
+        return true;
+    }
+
+    /**
+     * Removes a booking if it exists.
+     */
+    synchronized void remove(long bookingId) {
+        final int slot = store.find(bookingId);
+        if (slot >= 0) {
+            byTenant.remove(slot);
+            store.remove(slot);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.pyknic.sauna.view;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The scheduler that views use for polling and metrics reporting unless
+ * another one is given to {@link BookingViewBuilder#withScheduler}. It is
+ * shared by every view in the process and has one daemon thread per
+ * available processor, so the number of threads does not grow with the
+ * number of views.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class ViewScheduler {
+
+    /**
+     * Returns the shared scheduler. It is created the first time this is
+     * called and is never shut down.
+     *
+     * @return  the shared scheduler
+     */
+    public static ScheduledExecutorService shared() {
+        return Holder.INSTANCE;
+    }
+
+    private final static class Holder {
+
+        private final static ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            final AtomicInteger count = new AtomicInteger();
+            final ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(
+                    Runtime.getRuntime().availableProcessors(), task -> {
+                        final Thread thread = new Thread(
+                            task, "booking-view-" + count.incrementAndGet()
+                        );
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                );
+
+            // Views that are stopped cancel their tasks, which should not be
+            // kept in the queue until they would have run.
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    private ViewScheduler() {}
+}
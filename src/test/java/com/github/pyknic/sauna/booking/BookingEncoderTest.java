@@ -0,0 +1,164 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingEncoderTest {
+
+    @Test
+    public void decodesWhatWasEncoded() {
+        final List<BookingRecord> events = new ArrayList<>();
+
+        // Consecutive, with a gap, decreasing, and very far apart.
+        events.add(create(1, 1));
+        events.add(create(2, -1));
+        events.add(update(1_000, Long.MIN_VALUE));
+        events.add(delete(999, Long.MAX_VALUE));
+        events.add(delete(Long.MAX_VALUE, 5));
+        events.add(create(3, 6));
+
+        final byte[] bytes = encode(events);
+        assertEquals(events.toString(), decode(bytes).toString());
+    }
+
+    @Test
+    public void decodesMoreEventsThanFitInTheBuffer() {
+        final Random random = new Random(42);
+        final List<BookingRecord> events = new ArrayList<>();
+
+        long id = 0;
+        while (events.size() * BookingEncoder.MAX_EVENT_SIZE
+                < 4 * BookingEncoder.BUFFER_SIZE) {
+
+            id += random.nextInt(3) == 0 ? random.nextInt(1 << 20) : 1;
+            final long bookingId = random.nextLong();
+
+            switch (random.nextInt(3)) {
+                case 0  : events.add(create(id, bookingId)); break;
+                case 1  : events.add(update(id, bookingId)); break;
+                default : events.add(delete(id, bookingId)); break;
+            }
+        }
+
+        final byte[] bytes = encode(events);
+        assertEquals(events.toString(), decode(bytes).toString());
+    }
+
+    @Test
+    public void decodesEmptyStream() {
+        assertTrue(decode(encode(new ArrayList<>())).isEmpty());
+    }
+
+    @Test
+    public void refusesTruncatedStream() {
+        final List<BookingRecord> events = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            events.add(create(id, id));
+        }
+
+        final byte[] bytes = encode(events);
+
+        // Without the end marker, and in the middle of an event.
+        assertTruncated(Arrays.copyOf(bytes, bytes.length - 1));
+        assertTruncated(Arrays.copyOf(bytes, bytes.length - 5));
+    }
+
+    @Test
+    public void refusesUnknownStream() {
+        final byte[] bytes = encode(new ArrayList<>());
+        bytes[0] = 'X';
+
+        try {
+            decode(bytes);
+            fail("Expected the stream to be refused.");
+        } catch (final UncheckedIOException ex) {
+            assertTrue(ex.getCause() instanceof StreamCorruptedException);
+        }
+    }
+
+    @Test
+    public void refusesWritesAfterFinish() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BookingEncoder encoder = new BookingEncoder(Channels.newChannel(out));
+        encoder.finish();
+
+        try {
+            encoder.write(create(1, 1));
+            fail("Expected the write to be refused.");
+        } catch (final IllegalStateException ex) {
+            assertEquals(0, encoder.getCount());
+        }
+    }
+
+    private static void assertTruncated(byte[] bytes) {
+        try {
+            decode(bytes);
+            fail("Expected the stream to be refused.");
+        } catch (final UncheckedIOException ex) {
+            assertTrue(ex.getCause() instanceof EOFException);
+        }
+    }
+
+    private static byte[] encode(List<BookingRecord> events) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final BookingEncoder encoder = new BookingEncoder(Channels.newChannel(out))) {
+            events.forEach(encoder::write);
+            assertEquals(events.size(), encoder.getCount());
+        }
+
+        return out.toByteArray();
+    }
+
+    private static List<String> decode(byte[] bytes) {
+        final List<String> events = new ArrayList<>();
+        try (final BookingDecoder decoder = new BookingDecoder(
+                Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+
+            decoder.forEach(r -> events.add(r.toString()));
+            assertEquals(events.size(), decoder.getCount());
+            assertFalse(decoder.read(new BookingRecord()));
+        }
+
+        return events;
+    }
+
+    private static BookingRecord create(long id, long bookingId) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.CREATE);
+        record.setTenant(3);
+        record.setSauna(7);
+        record.setBookedFrom(17_000);
+        record.setBookedTo(17_002);
+        return record;
+    }
+
+    private static BookingRecord update(long id, long bookingId) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.UPDATE);
+        record.setBookedTo(-1);
+        return record;
+    }
+
+    private static BookingRecord delete(long id, long bookingId) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.DELETE);
+        return record;
+    }
+}
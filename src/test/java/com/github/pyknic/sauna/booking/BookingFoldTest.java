@@ -0,0 +1,77 @@
+package com.github.pyknic.sauna.booking;
+
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingFoldTest {
+
+    @Test
+    public void appliesEventsInOrder() {
+        final BookingFold fold = new BookingFold();
+        fold.accept(create(1, 1, 17_000, 17_002));
+        fold.accept(create(2, 2, 16_990, 16_991));
+        fold.accept(update(3, 1, 17_005, 17_006));
+        fold.accept(delete(4, 2));
+        fold.accept(create(5, 1, 17_000, 17_001));
+
+        assertEquals(1, fold.bookings().size());
+        assertEquals("[1: 17005-17006]", describe(fold.bookings()));
+    }
+
+    @Test
+    public void ignoresBookingsEndingBeforeTheyStart() {
+        final BookingFold fold = new BookingFold();
+        fold.accept(create(1, 1, 17_002, 17_000));
+        fold.accept(create(2, 2, 17_000, 17_000));
+
+        // Neither a new start after the end, nor a new end before the start.
+        fold.accept(update(3, 2, 17_001, null));
+        fold.accept(update(4, 2, null, 16_999));
+
+        assertEquals("[2: 17000-17000]", describe(fold.bookings()));
+
+        // The first booking was never created, so it can be created now.
+        fold.accept(create(5, 1, 17_000, 17_002));
+        fold.accept(update(6, 2, 17_003, 17_004));
+        assertEquals("[1: 17000-17002, 2: 17003-17004]", describe(fold.bookings()));
+    }
+
+    private static String describe(List<Booking> bookings) {
+        return bookings.stream()
+            .map(b -> b.getBookingId() + ": " + 
+                b.getBookedFromDay().getAsInt() + "-" + 
+                b.getBookedToDay().getAsInt())
+            .collect(toList())
+            .toString();
+    }
+
+    private static BookingRecord create(long id, long bookingId, int from, int to) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.CREATE);
+        record.setTenant((int) bookingId);
+        record.setSauna((int) bookingId);
+        record.setBookedFrom(from);
+        record.setBookedTo(to);
+        return record;
+    }
+
+    private static BookingRecord update(long id, long bookingId, Integer from, Integer to) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.UPDATE);
+        if (from != null) record.setBookedFrom(from);
+        if (to != null)   record.setBookedTo(to);
+        return record;
+    }
+
+    private static BookingRecord delete(long id, long bookingId) {
+        final BookingRecord record = new BookingRecord();
+        record.set(id, bookingId, EventType.DELETE);
+        return record;
+    }
+}
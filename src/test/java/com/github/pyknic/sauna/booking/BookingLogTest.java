@@ -0,0 +1,215 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+import static java.nio.file.StandardOpenOption.WRITE;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingLogTest {
+
+    private final static long SEGMENT_SIZE = 2 * 32; // Two records
+
+    private final static long[] BOOKING_IDS = {
+        1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 48, (1L << 50) + 7, -(1L << 49)
+    };
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("booking-log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (final Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void keepsEveryBookingIdThroughAppendRecoveryAndTail() {
+        final List<String> appended = new ArrayList<>();
+
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            for (final long bookingId : BOOKING_IDS) {
+                final Booking created = create(bookingId);
+                log.append(created);
+                appended.add(record(created));
+
+                final Booking deleted = delete(bookingId);
+                log.append(deleted);
+                appended.add(record(deleted));
+            }
+
+            assertEquals(appended, tail(log, 0));
+            assertEquals(appended, forEachAfter(log, 0));
+        }
+
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            assertEquals(appended.size(), log.getLast());
+            assertEquals(appended, tail(log, 0));
+            assertEquals(appended.subList(5, appended.size()), tail(log, 5));
+            assertEquals(appended.subList(5, appended.size()), forEachAfter(log, 5));
+        }
+    }
+
+    @Test
+    public void continuesInLastSegmentAfterRecovery() throws IOException {
+        final List<String> appended = new ArrayList<>();
+
+        // Five records fill two segments and half of a third.
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            for (long bookingId = 1; bookingId <= 5; bookingId++) {
+                final Booking created = create(bookingId);
+                assertEquals(bookingId, log.append(created));
+                appended.add(record(created));
+            }
+        }
+
+        assertEquals(3, segments());
+
+        for (long bookingId = 6; bookingId <= 8; bookingId++) {
+            try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+                assertEquals(bookingId - 1, log.getLast());
+                assertEquals(appended, tail(log, 0));
+
+                final Booking deleted = delete(bookingId - 5);
+                assertEquals(bookingId, log.append(deleted));
+                appended.add(record(deleted));
+            }
+        }
+
+        assertEquals(4, segments());
+
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            assertEquals(8, log.getLast());
+            assertEquals(appended, tail(log, 0));
+            assertEquals(appended.subList(3, 8), forEachAfter(log, 3));
+            assertEquals(appended.subList(6, 8), tail(log, 6));
+            assertEquals(appended.subList(0, 0), tail(log, 8));
+        }
+    }
+
+    @Test
+    public void ignoresRecordWithoutId() throws IOException {
+        final List<String> appended = new ArrayList<>();
+
+        try (final BookingLog log = BookingLog.open(directory, 4 * 32)) {
+            final Booking created = create(Long.MIN_VALUE);
+            log.append(created);
+            appended.add(record(created));
+        }
+
+        // A process that dies in the middle of an append leaves the columns
+        // of the record without the id.
+        final Path segment = directory.resolve(String.format("%020d.log", 1));
+        try (final FileChannel channel = FileChannel.open(segment, WRITE)) {
+            final ByteBuffer partial = ByteBuffer.allocate(24);
+            partial.putLong(-1).putInt(7).putInt(3).putInt(17_000);
+            partial.flip();
+            channel.write(partial, 32 + 8);
+        }
+
+        try (final BookingLog log = BookingLog.open(directory, 4 * 32)) {
+            assertEquals(1, log.getLast());
+            assertEquals(appended, tail(log, 0));
+
+            final Booking next = create(-1);
+            assertEquals(2, log.append(next));
+            appended.add(record(next));
+        }
+
+        try (final BookingLog log = BookingLog.open(directory, 4 * 32)) {
+            assertEquals(appended, tail(log, 0));
+        }
+    }
+
+    @Test
+    public void dropsCompactedSegments() throws IOException {
+        final List<String> appended = new ArrayList<>();
+
+        // Five records fill two segments and half of a third.
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            for (long bookingId = 1; bookingId <= 5; bookingId++) {
+                final Booking created = create(bookingId);
+                log.append(created);
+                appended.add(record(created));
+            }
+
+            assertEquals(3, segments());
+            log.compact(4, Stream.of(create(1).setId(1), create(3).setId(3)));
+
+            assertEquals(4, log.getHorizon());
+            assertEquals(1, segments());
+            assertEquals(appended.subList(4, 5), forEachAfter(log, 4));
+        }
+
+        try (final BookingLog log = BookingLog.open(directory, SEGMENT_SIZE)) {
+            assertEquals(4, log.getHorizon());
+            assertEquals(5, log.getLast());
+            assertEquals(asList(1L, 3L), compacted(log));
+            assertEquals(appended.subList(4, 5), forEachAfter(log, 4));
+        }
+    }
+
+    private long segments() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".log")).count();
+        }
+    }
+
+    private static Booking create(long bookingId) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.CREATE.name())
+            .setTenant(3)
+            .setSauna(7)
+            .setBookedFrom(EpochDays.toDate(17_000))
+            .setBookedTo(EpochDays.toDate(17_002));
+    }
+
+    private static Booking delete(long bookingId) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.DELETE.name());
+    }
+
+    private static String record(Booking entity) {
+        return new BookingRecord().set(entity).toString();
+    }
+
+    private static List<String> tail(BookingLog log, long afterId) {
+        return log.tail(afterId).map(BookingLogTest::record).collect(toList());
+    }
+
+    private static List<Long> compacted(BookingLog log) {
+        final List<Long> ids = new ArrayList<>();
+        log.forEachCompacted(r -> ids.add(r.getId()));
+        return ids;
+    }
+
+    private static List<String> forEachAfter(BookingLog log, long afterId) {
+        final List<String> records = new ArrayList<>();
+        log.forEachAfter(afterId, Integer.MAX_VALUE, r -> records.add(r.toString()));
+        return records;
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.pyknic.sauna.booking;
+
+import com.github.pyknic.sauna.booking.BookingManagerImpl.Partition;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import java.util.Comparator;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingManagerImplTest {
+
+    private final static Partition P4   = new Partition("p4", 4);
+    private final static Partition P8   = new Partition("p8", 8);
+    private final static Partition OPEN = new Partition("p_current", Long.MAX_VALUE);
+
+    @Test
+    public void rollsOpenPartitionAtBound() {
+        assertEquals(1, BookingManagerImpl.start(singletonList(OPEN)));
+        assertEquals(8, BookingManagerImpl.start(asList(P4, P8, OPEN)));
+
+        assertEquals(
+            "ALTER TABLE `sauna`.`booking`" + 
+            " REORGANIZE PARTITION `p_current` INTO (" + 
+            "PARTITION `p12` VALUES LESS THAN (12), " + 
+            "PARTITION `p_current` VALUES LESS THAN MAXVALUE)",
+            BookingManagerImpl.rollSql("`sauna`.`booking`", OPEN, 12)
+        );
+    }
+
+    @Test
+    public void dropsOnlyPartitionsUpToHorizon() {
+        final List<Partition> partitions = asList(P4, P8, OPEN);
+
+        assertEquals(emptyList(), BookingManagerImpl.compacted(partitions, 2));
+        assertEquals(singletonList(P4), BookingManagerImpl.compacted(partitions, 3));
+        assertEquals(singletonList(P4), BookingManagerImpl.compacted(partitions, 6));
+        assertEquals(asList(P4, P8), BookingManagerImpl.compacted(partitions, 7));
+        assertEquals(asList(P4, P8), BookingManagerImpl.compacted(partitions, 100));
+    }
+
+    @Test
+    public void rollsToNextIdInEmbeddedLog() throws IOException {
+        final Path directory = Files.createTempDirectory("booking-manager");
+
+        try (final BookingLog log = BookingLog.open(directory)) {
+            final BookingManagerImpl mgr = new BookingManagerImpl();
+            mgr.setLog(log);
+            assertEquals(1, mgr.rollPartition());
+
+            log.append(new BookingImpl()
+                .setBookingId(1)
+                .setEventType(EventType.DELETE.name())
+            );
+
+            assertEquals(2, mgr.rollPartition());
+        } finally {
+            try (final Stream<Path> files = Files.walk(directory)) {
+                for (final Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.pyknic.sauna.booking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingTransferTest {
+
+    private final NavigableMap<Long, Booking> events = new ConcurrentSkipListMap<>();
+
+    @Test
+    public void waitsForEventCommittedOutOfOrder() throws InterruptedException {
+        commit(1, 2, 4, 5);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Thread exporter = new Thread(() -> 
+            BookingTransfer.export(manager(), 0, Channels.newChannel(out), 10_000)
+        );
+
+        final long started = System.currentTimeMillis();
+        exporter.start();
+        Thread.sleep(100);
+        commit(3);
+        exporter.join();
+
+        // The export continues as soon as the missing event is committed.
+        assertTrue(System.currentTimeMillis() - started < 5_000);
+        assertEquals(asList(1L, 2L, 3L, 4L, 5L), ids(out));
+    }
+
+    @Test
+    public void skipsMissingIdsAfterTimeout() {
+        commit(1, 2, 4, 7, 8);
+
+        final long started = System.currentTimeMillis();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5, BookingTransfer.export(
+            manager(), 0, Channels.newChannel(out), 200
+        ));
+
+        assertTrue(System.currentTimeMillis() - started >= 200);
+        assertEquals(asList(1L, 2L, 4L, 7L, 8L), ids(out));
+    }
+
+    @Test
+    public void failsIfInterruptedWhileWaiting() {
+        commit(1, 2, 4);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread.currentThread().interrupt();
+
+        try {
+            BookingTransfer.export(manager(), 0, Channels.newChannel(out), 10_000);
+            fail("Expected the export to fail.");
+        } catch (final UncheckedIOException ex) {
+            assertTrue(ex.getCause() instanceof InterruptedIOException);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void continuesAfterLastExportedId() {
+        commit(1, 2, 3, 4, 5);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, BookingTransfer.export(
+            manager(), 3, Channels.newChannel(out), 10_000
+        ));
+
+        assertEquals(asList(4L, 5L), ids(out));
+    }
+
+    private void commit(long... ids) {
+        for (final long id : ids) {
+            events.put(id, new BookingImpl()
+                .setId(id)
+                .setBookingId(id)
+                .setEventType(EventType.CREATE.name())
+                .setTenant((int) id)
+                .setSauna((int) id)
+                .setBookedFrom(EpochDays.toDate(17_000))
+                .setBookedTo(EpochDays.toDate(17_001))
+            );
+        }
+    }
+
+    private static List<Long> ids(ByteArrayOutputStream out) {
+        final List<Long> ids = new ArrayList<>();
+        try (final BookingDecoder decoder = new BookingDecoder(Channels.newChannel(
+                new ByteArrayInputStream(out.toByteArray())))) {
+
+            decoder.forEach(record -> ids.add(record.getId()));
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns a manager that reads the events of this test, where ids can be
+     * committed in any order.
+     */
+    private BookingManager manager() {
+        return (BookingManager) Proxy.newProxyInstance(
+            BookingManager.class.getClassLoader(), 
+            new Class<?>[] {BookingManager.class}, 
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getLatestId"      : return events.isEmpty() ? 0L : events.lastKey();
+                    case "getHorizon"       : return 0L;
+                    case "getContiguousId"  : return contiguous((Long) args[0], (Long) args[1]);
+                    case "forEachAfter"     : return forEachAfter((Long) args[0], (Integer) args[1], consumer(args[2]));
+                    default : throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        );
+    }
+
+    private long contiguous(long afterId, long upTo) {
+        long id = afterId;
+        while (id < upTo && events.containsKey(id + 1)) {
+            id++;
+        }
+
+        return id;
+    }
+
+    private int forEachAfter(long afterId, int limit, Consumer<? super BookingRecord> action) {
+        final BookingRecord record = new BookingRecord();
+        int count = 0;
+
+        for (final Map.Entry<Long, Booking> e : events.tailMap(afterId, false).entrySet()) {
+            if (count == limit) {
+                break;
+            }
+
+            action.accept(record.set(e.getValue()));
+            count++;
+        }
+
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<? super BookingRecord> consumer(Object action) {
+        return (Consumer<? super BookingRecord>) action;
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.BookingLog;
+import com.github.pyknic.sauna.booking.BookingManager;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingCompactionTest {
+
+    private Path directory;
+    private BookingLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("booking-compaction");
+        log = BookingLog.open(directory, 2 * 32);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+        try (final Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void foldsEventsUpToHorizon() {
+        log.append(create(1, 1, 17_000));   // 1
+        log.append(create(2, 1, 17_010));   // 2
+        log.append(create(3, 2, 17_000));   // 3
+        log.append(update(2, 17_020));      // 4
+        log.append(delete(3));              // 5
+        log.append(create(4, 2, 17_000));   // 6
+
+        assertEquals(2, BookingCompaction.compact(manager(), 5));
+        assertEquals(5, log.getHorizon());
+        assertEquals(asList(
+            "1: booking 1, sauna 1, 17000-17002", 
+            "2: booking 2, sauna 1, 17020-17022"
+        ), compacted());
+
+        // The events after the horizon are still in the log.
+        assertEquals(asList("6: booking 4, sauna 2, 17000-17002"), after(5));
+    }
+
+    @Test
+    public void continuesFromPreviousCompaction() throws IOException {
+        log.append(create(1, 1, 17_000));   // 1
+        log.append(create(2, 1, 17_010));   // 2
+        log.append(delete(2));              // 3
+        BookingCompaction.compact(manager(), 3);
+
+        log.append(create(3, 2, 17_000));   // 4
+        log.append(update(1, 17_030));      // 5
+        assertEquals(2, BookingCompaction.compact(manager(), 5));
+
+        final List<String> expected = asList(
+            "1: booking 1, sauna 1, 17030-17032", 
+            "4: booking 3, sauna 2, 17000-17002"
+        );
+        assertEquals(expected, compacted());
+
+        try {
+            BookingCompaction.compact(manager(), 3);
+            fail("Compacted before the current horizon.");
+        } catch (final IllegalArgumentException ex) {
+            // Expected.
+        }
+
+        log.close();
+        log = BookingLog.open(directory, 2 * 32);
+        assertEquals(5, log.getHorizon());
+        assertEquals(expected, compacted());
+        assertEquals(0, after(5).size());
+    }
+
+    private List<String> compacted() {
+        final List<String> records = new ArrayList<>();
+        log.forEachCompacted(r -> {
+            assertEquals(EventType.CREATE, r.getEventType());
+            records.add(describe(r));
+        });
+        return records;
+    }
+
+    private List<String> after(long afterId) {
+        final List<String> records = new ArrayList<>();
+        log.forEachAfter(afterId, Integer.MAX_VALUE, r -> records.add(describe(r)));
+        return records;
+    }
+
+    private static String describe(BookingRecord r) {
+        return r.getId() + ": booking " + r.getBookingId() + 
+            ", sauna " + r.getSauna() + 
+            ", " + r.getBookedFrom() + "-" + r.getBookedTo();
+    }
+
+    /**
+     * Returns a manager that reads and compacts the events of the log, as
+     * the manager does when it is backed by an embedded log.
+     */
+    private BookingManager manager() {
+        return (BookingManager) Proxy.newProxyInstance(
+            BookingManager.class.getClassLoader(), 
+            new Class<?>[] {BookingManager.class}, 
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getLatestId"      : return log.getLast();
+                    case "getHorizon"       : return log.getHorizon();
+                    case "forEachCompacted" : return log.forEachCompacted(consumer(args[0]));
+                    case "forEachAfter"     : return log.forEachAfter((Long) args[0], (Integer) args[1], consumer(args[2]));
+                    case "compact"          : log.compact((Long) args[0], stream(args[1])); return null;
+                    case "hashCode" : return System.identityHashCode(proxy);
+                    case "equals"   : return proxy == args[0];
+                    case "toString" : return "BookingLog";
+                    default : throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<? super BookingRecord> consumer(Object action) {
+        return (Consumer<? super BookingRecord>) action;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Stream<? extends Booking> stream(Object state) {
+        return (Stream<? extends Booking>) state;
+    }
+
+    private static Booking create(long bookingId, int sauna, int from) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.CREATE.name())
+            .setTenant((int) bookingId)
+            .setSauna(sauna)
+            .setBookedFrom(EpochDays.toDate(from))
+            .setBookedTo(EpochDays.toDate(from + 2));
+    }
+
+    private static Booking update(long bookingId, int from) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.UPDATE.name())
+            .setBookedFrom(EpochDays.toDate(from))
+            .setBookedTo(EpochDays.toDate(from + 2));
+    }
+
+    private static Booking delete(long bookingId) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.DELETE.name());
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import java.util.Comparator;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingQueryTest {
+
+    private final static Comparator<Booking> BY_START =
+        Comparator.comparingInt(b -> b.getBookedFromDay().getAsInt());
+
+    private BookingEventSink sink;
+    private BookingView view;
+    private List<String> changes;
+    private long next;
+
+    @Before
+    public void setUp() {
+        view = BookingView.create(singletonList(new BookingEventSource() {
+            @Override public void start(BookingEventSink sink) { 
+                BookingQueryTest.this.sink = sink; 
+            }
+            @Override public void stop() {}
+        }), null, null);
+
+        changes = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        view.stop();
+    }
+
+    @Test
+    public void startsWithExistingBookingsInOrder() {
+        apply(create(1, 1, 17_010));
+        apply(create(2, 1, 17_000));
+        apply(create(3, 2, 17_005));
+
+        final BookingQuery query = subscribe(1);
+        assertEquals(asList("added 2", "added 1"), changes);
+        assertEquals(asList(2L, 1L), bookingIds(query));
+    }
+
+    @Test
+    public void followsChangesToTheResult() {
+        final BookingQuery query = subscribe(1);
+
+        apply(create(1, 1, 17_010));
+        apply(create(2, 2, 17_000));
+        assertEquals(asList("added 1"), changes);
+
+        // Moved into the query, and before the other booking.
+        apply(update(2, 1, 17_000));
+        assertEquals(asList(2L, 1L), bookingIds(query));
+
+        // Still matching, but now after the other booking.
+        apply(update(2, 1, 17_020));
+        assertEquals(asList(1L, 2L), bookingIds(query));
+
+        // Moved out of the query, and deleted.
+        apply(update(2, 3, 17_020));
+        apply(delete(1));
+
+        assertEquals(asList(
+            "added 1", "added 2", "updated 2", "removed 2", "removed 1"
+        ), changes);
+        assertEquals(0, query.size());
+    }
+
+    @Test
+    public void ignoresRefusedEvents() {
+        final BookingQuery query = subscribe(1);
+        apply(create(1, 1, 17_000));
+
+        // Overlaps the first booking, and updates a booking that is missing.
+        apply(create(2, 1, 17_001));
+        apply(update(3, 1, 17_100));
+
+        assertEquals(asList("added 1"), changes);
+        assertEquals(asList(1L), bookingIds(query));
+    }
+
+    @Test
+    public void stopsWhenClosed() {
+        final BookingQuery query = subscribe(1);
+        apply(create(1, 1, 17_000));
+        query.close();
+        apply(create(2, 1, 17_010));
+
+        assertEquals(asList("added 1"), changes);
+        assertEquals(asList(1L), bookingIds(query));
+    }
+
+    private BookingQuery subscribe(int sauna) {
+        return view.subscribe(
+            b -> b.getSauna().getAsInt() == sauna, 
+            BY_START, 
+            new BookingQueryListener() {
+                @Override public void added(Booking b) { 
+                    changes.add("added " + b.getBookingId()); 
+                }
+
+                @Override public void removed(Booking b) { 
+                    changes.add("removed " + b.getBookingId()); 
+                }
+
+                @Override public void updated(Booking before, Booking after) { 
+                    changes.add("updated " + after.getBookingId()); 
+                }
+            }
+        );
+    }
+
+    private void apply(Booking event) {
+        sink.accept(event.setId(++next));
+    }
+
+    private static List<Long> bookingIds(BookingQuery query) {
+        return query.getResult().stream()
+            .map(Booking::getBookingId)
+            .collect(toList());
+    }
+
+    private static Booking create(long bookingId, int sauna, int from) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.CREATE.name())
+            .setTenant((int) bookingId)
+            .setSauna(sauna)
+            .setBookedFrom(EpochDays.toDate(from))
+            .setBookedTo(EpochDays.toDate(from + 2));
+    }
+
+    private static Booking update(long bookingId, int sauna, int from) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.UPDATE.name())
+            .setSauna(sauna)
+            .setBookedFrom(EpochDays.toDate(from))
+            .setBookedTo(EpochDays.toDate(from + 2));
+    }
+
+    private static Booking delete(long bookingId) {
+        return new BookingImpl()
+            .setBookingId(bookingId)
+            .setEventType(EventType.DELETE.name());
+    }
+}
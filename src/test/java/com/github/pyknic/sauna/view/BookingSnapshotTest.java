@@ -0,0 +1,131 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.BookingRecord;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalLong;
+import static java.util.stream.Collectors.toList;
+import static java.nio.file.StandardOpenOption.WRITE;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingSnapshotTest {
+
+    private final static int BOOKINGS = 3 * BookingStore.CHUNK_SIZE + 17;
+
+    private Path directory;
+    private Path file;
+    private BookingStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("booking-snapshot");
+        file      = directory.resolve("bookings.snapshot");
+        store     = new BookingStore();
+
+        for (int i = 1; i <= BOOKINGS; i++) {
+            store.insert(i, -i * 31L, i % 97, i % 13, 17_000 + i, 17_002 + i);
+        }
+
+        // Leave some free slots in between.
+        for (int i = 1; i <= BOOKINGS; i += 7) {
+            store.remove(store.find(-i * 31L));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("bookings.snapshot.tmp"));
+        Files.delete(directory);
+    }
+
+    @Test
+    public void loadsEveryBookingThatWasSaved() {
+        new BookingSnapshot(file, 0).save(BOOKINGS, store.freeze());
+
+        final BookingStore loaded = new BookingStore();
+        assertEquals(OptionalLong.of(BOOKINGS), new BookingSnapshot(file, 0).load(loaded));
+        assertEquals(bookings(store), bookings(loaded));
+
+        // The bookings can be found by id again.
+        assertTrue(loaded.find(-2 * 31L) >= 0);
+        assertTrue(loaded.find(-1 * 31L) < 0);
+    }
+
+    @Test
+    public void ignoresMissingFile() {
+        final BookingStore loaded = new BookingStore();
+        assertFalse(new BookingSnapshot(file, 0).load(loaded).isPresent());
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    public void ignoresCorruptedFile() throws IOException {
+        new BookingSnapshot(file, 0).save(BOOKINGS, store.freeze());
+
+        try (final FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 1_000);
+        }
+
+        final BookingStore loaded = new BookingStore();
+        assertFalse(new BookingSnapshot(file, 0).load(loaded).isPresent());
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    public void ignoresTruncatedFile() throws IOException {
+        new BookingSnapshot(file, 0).save(BOOKINGS, store.freeze());
+
+        try (final FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        assertFalse(new BookingSnapshot(file, 0).load(new BookingStore()).isPresent());
+    }
+
+    @Test
+    public void ignoresSnapshotOlderThanHorizon() {
+        new BookingSnapshot(file, 0).save(BOOKINGS, store.freeze());
+
+        final BookingSnapshot snapshot = new BookingSnapshot(file, 0);
+        snapshot.setHorizon(BOOKINGS + 1);
+        assertFalse(snapshot.load(new BookingStore()).isPresent());
+
+        snapshot.setHorizon(BOOKINGS);
+        assertTrue(snapshot.load(new BookingStore()).isPresent());
+    }
+
+    @Test
+    public void isDueOnlyIfSomethingChanged() {
+        final BookingSnapshot often = new BookingSnapshot(file, 0);
+        assertTrue(often.isDue(5));
+        often.save(5, store.freeze());
+        assertFalse(often.isDue(5));
+        assertTrue(often.isDue(6));
+
+        final BookingSnapshot seldom = new BookingSnapshot(file, 60_000);
+        assertTrue(seldom.isDue(5));
+        seldom.save(5, store.freeze());
+        assertFalse(seldom.isDue(6));
+    }
+
+    private static List<String> bookings(BookingStore store) {
+        return store.freeze().stream()
+            .map(b -> new BookingRecord().set(b).toString())
+            .sorted()
+            .collect(toList());
+    }
+}
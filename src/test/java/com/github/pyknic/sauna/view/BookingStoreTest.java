@@ -0,0 +1,76 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.BookingRecord;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class BookingStoreTest {
+
+    private final static int BOOKINGS = 3 * BookingStore.CHUNK_SIZE + 17;
+
+    private BookingStore store;
+
+    @Before
+    public void setUp() {
+        store = new BookingStore();
+        for (int i = 1; i <= BOOKINGS; i++) {
+            store.insert(i, i, i % 97, i % 13, 17_000 + i, 17_002 + i);
+        }
+    }
+
+    @Test
+    public void frozenStateIsNotAffectedByChanges() {
+        final BookingStore.Frozen before = store.freeze();
+        final List<String> expected = bookings(before);
+
+        // Modify every chunk, reuse a free slot and grow the store.
+        for (int i = 1; i <= BOOKINGS; i += 100) {
+            store.update(store.find(i), 1, 2, 3, 4);
+        }
+
+        store.remove(store.find(2));
+        store.insert(BOOKINGS + 1, BOOKINGS + 1, 1, 1, 17_000, 17_000);
+        store.insert(BOOKINGS + 2, BOOKINGS + 2, 1, 1, 17_000, 17_000);
+
+        assertEquals(BOOKINGS, before.size());
+        assertEquals(expected, bookings(before));
+
+        final BookingStore.Frozen after = store.freeze();
+        assertEquals(BOOKINGS + 1, after.size());
+        assertNotEquals(expected, bookings(after));
+        assertEquals(3, after.from(store.find(1)));
+        assertEquals(17_001, before.from(store.find(1)));
+    }
+
+    @Test
+    public void freezesOnlyOnceUntilModified() {
+        final BookingStore.Frozen first = store.freeze();
+        assertSame(first, store.freeze());
+
+        store.update(store.find(1), 1, 2, 3, 4);
+        final BookingStore.Frozen second = store.freeze();
+        assertNotSame(first, second);
+
+        // Each frozen state keeps its own copy of the modified chunk.
+        store.update(store.find(1), 5, 6, 7, 8);
+        assertEquals(17_001, first.from(store.find(1)));
+        assertEquals(3, second.from(store.find(1)));
+        assertEquals(7, store.from(store.find(1)));
+    }
+
+    private static List<String> bookings(BookingStore.Frozen frozen) {
+        return frozen.stream()
+            .map(b -> new BookingRecord().set(b).toString())
+            .collect(toList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingManager;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import com.github.pyknic.sauna.booking.BookingValidator;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory table of events that can be read through the parts of the 
+ * {@link BookingManager} interface that the event sources use. Events can be
+ * added with any id, so that transactions that commit out of order can be
+ * simulated.
+ *
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+final class EventTable {
+
+    private final NavigableMap<Long, Booking> events = new ConcurrentSkipListMap<>();
+    private volatile long horizon;
+    private volatile BookingValidator validator;
+
+    void commit(Booking event) {
+        events.put(event.getId(), event);
+    }
+
+    /**
+     * Removes every event up to the specified horizon. The compacted state
+     * itself is not kept.
+     */
+    void compact(long horizon) {
+        events.headMap(horizon, true).clear();
+        this.horizon = horizon;
+    }
+
+    /**
+     * Returns the validator that was last set on the manager, or 
+     * {@code null} if there is none.
+     */
+    BookingValidator validator() {
+        return validator;
+    }
+
+    BookingManager manager() {
+        return (BookingManager) Proxy.newProxyInstance(
+            BookingManager.class.getClassLoader(), 
+            new Class<?>[] {BookingManager.class}, 
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getLatestId"     : return events.isEmpty() ? 0L : events.lastKey();
+                    case "getHorizon"      : return horizon;
+                    case "getContiguousId" : return contiguous((Long) args[0], (Long) args[1]);
+                    case "countEvents"     : return (long) events.subMap((Long) args[0], false, (Long) args[1], true).size();
+                    case "forEachAfter"    :
+                        if (args.length == 3) {
+                            return forEachAfter((Long) args[0], Integer.MIN_VALUE, 
+                                Integer.MAX_VALUE, (Integer) args[1], consumer(args[2]));
+                        } else {
+                            return forEachAfter((Long) args[0], (Integer) args[1], 
+                                (Integer) args[2], (Integer) args[3], consumer(args[4]));
+                        }
+                    case "setValidator"    : validator = (BookingValidator) args[0]; return null;
+                    case "hashCode" : return System.identityHashCode(proxy);
+                    case "equals"   : return proxy == args[0];
+                    case "toString" : return "EventTable";
+                    default : throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        );
+    }
+
+    private long contiguous(long afterId, long upTo) {
+        long id = afterId;
+        while (id < upTo && events.containsKey(id + 1)) {
+            id++;
+        }
+
+        return id;
+    }
+
+    private int forEachAfter(long afterId, int firstSauna, int lastSauna, 
+            int limit, Consumer<? super BookingRecord> action) {
+
+        final BookingRecord record = new BookingRecord();
+        int count = 0;
+
+        for (final Map.Entry<Long, Booking> e : events.tailMap(afterId, false).entrySet()) {
+            if (count == limit) {
+                break;
+            }
+
+            final Booking event = e.getValue();
+            if (event.getSauna().isPresent()
+            && (event.getSauna().getAsInt() < firstSauna 
+            ||  event.getSauna().getAsInt() > lastSauna)) {
+                continue;
+            }
+
+            action.accept(record.set(event));
+            count++;
+        }
+
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<? super BookingRecord> consumer(Object action) {
+        return (Consumer<? super BookingRecord>) action;
+    }
+}
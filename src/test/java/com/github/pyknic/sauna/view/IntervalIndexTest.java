@@ -0,0 +1,139 @@
+package com.github.pyknic.sauna.view;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class IntervalIndexTest {
+
+    private final static int SAUNA = 7;
+
+    private BookingStore store;
+    private IntervalIndex index;
+    private int next;
+    private int[] slots;
+
+    @Before
+    public void setUp() {
+        store = new BookingStore();
+        index = new IntervalIndex(store, store::sauna);
+        slots = new int[4];
+
+        // Sauna 7 is booked on days 10-12, 15-15 and 20-25.
+        book(10, 12);
+        book(15, 15);
+        book(20, 25);
+    }
+
+    @Test
+    public void overlapsIncludeSharedDays() {
+        assertTrue(index.overlaps(SAUNA, 0, 12, 13));
+        assertTrue(index.overlaps(SAUNA, 0, 5, 10));
+        assertTrue(index.overlaps(SAUNA, 0, 15, 15));
+        assertTrue(index.overlaps(SAUNA, 0, 11, 11));
+        assertTrue(index.overlaps(SAUNA, 0, 0, 100));
+
+        assertFalse(index.overlaps(SAUNA, 0, 13, 14));
+        assertFalse(index.overlaps(SAUNA, 0, 16, 19));
+        assertFalse(index.overlaps(SAUNA, 0, 26, 30));
+        assertFalse(index.overlaps(SAUNA, 0, 0, 9));
+        assertFalse(index.overlaps(SAUNA + 1, 0, 0, 100));
+    }
+
+    @Test
+    public void overlapsExcludeTheBookingItself() {
+        // Booking 1 is the one on days 10-12.
+        assertFalse(index.overlaps(SAUNA, 1, 9, 14));
+        assertTrue(index.overlaps(SAUNA, 1, 9, 15));
+        assertTrue(index.overlaps(SAUNA, 4, 9, 14));
+    }
+
+    @Test
+    public void findsOverlappingInOrder() {
+        assertEquals(asList(1L, 2L, 3L), overlapping(0, 100));
+        assertEquals(asList(1L, 2L), overlapping(12, 15));
+        assertEquals(asList(3L), overlapping(25, 25));
+        assertEquals(asList(), overlapping(16, 19));
+        assertEquals(asList(), overlapping(20, 19));
+    }
+
+    @Test
+    public void overlapsAnyBooking() {
+        assertTrue(index.overlaps(SAUNA, 12, 13));
+        assertTrue(index.overlaps(SAUNA, 15, 15));
+        assertTrue(index.overlaps(SAUNA, 0, 100));
+
+        assertFalse(index.overlaps(SAUNA, 13, 14));
+        assertFalse(index.overlaps(SAUNA, 26, 30));
+        assertFalse(index.overlaps(SAUNA + 1, 0, 100));
+    }
+
+    @Test
+    public void findsGapsBetweenBookings() {
+        assertEquals(asList("0-9", "13-14", "16-19", "26-30"), gaps(0, 30));
+        assertEquals(asList("13-14"), gaps(11, 15));
+        assertEquals(asList("14-14"), gaps(14, 14));
+        assertEquals(asList(), gaps(20, 25));
+        assertEquals(asList("1-100"), gapsOf(SAUNA + 1, 1, 100));
+    }
+
+    @Test
+    public void findsFirstGapLongEnough() {
+        assertEquals(0, index.firstGap(SAUNA, 0, 10));
+        assertEquals(13, index.firstGap(SAUNA, 10, 2));
+        assertEquals(16, index.firstGap(SAUNA, 10, 3));
+        assertEquals(26, index.firstGap(SAUNA, 10, 5));
+        assertEquals(26, index.firstGap(SAUNA, 21, 1));
+        assertEquals(5, index.firstGap(SAUNA + 1, 5, 1_000));
+    }
+
+    @Test
+    public void reopensGapsOfRemovedBookings() {
+        index.remove(slots[2]);
+        assertEquals(asList("0-9", "13-19"), gaps(0, 19));
+        assertEquals(13, index.firstGap(SAUNA, 10, 7));
+    }
+
+    @Test
+    public void forgetsRemovedBookings() {
+        index.remove(slots[2]);
+        assertFalse(index.overlaps(SAUNA, 0, 15, 15));
+        assertEquals(asList(1L, 3L), overlapping(0, 100));
+
+        index.remove(slots[1]);
+        assertEquals(asList(3L), overlapping(0, 100));
+    }
+
+    private void book(int from, int to) {
+        next++;
+        slots[next] = store.insert(next, next, 1, SAUNA, from, to);
+        index.add(slots[next]);
+    }
+
+    private List<Long> overlapping(int from, int to) {
+        final List<Long> bookingIds = new ArrayList<>();
+        index.forEachOverlapping(SAUNA, from, to,
+            slot -> bookingIds.add(store.bookingId(slot))
+        );
+        return bookingIds;
+    }
+
+    private List<String> gaps(int from, int to) {
+        return gapsOf(SAUNA, from, to);
+    }
+
+    private List<String> gapsOf(int sauna, int from, int to) {
+        final List<String> gaps = new ArrayList<>();
+        index.forEachGap(sauna, from, to, (f, t) -> gaps.add(f + "-" + t));
+        return gaps;
+    }
+}
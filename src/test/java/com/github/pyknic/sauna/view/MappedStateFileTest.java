@@ -0,0 +1,171 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import static java.util.stream.Collectors.toList;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class MappedStateFileTest {
+
+    private final static long TIMEOUT = 10_000;
+
+    private ScheduledExecutorService scheduler;
+    private EventTable table;
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        table     = new EventTable();
+        directory = Files.createTempDirectory("booking-state");
+        file      = directory.resolve("bookings.state");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scheduler.shutdownNow();
+        Files.deleteIfExists(directory.resolve("bookings.state.index"));
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    @Test
+    public void restoresStateSavedOnStop() {
+        for (long id = 1; id <= 1_000; id++) {
+            table.commit(id % 10 == 0 ? delete(id, id - 1) : create(id));
+        }
+
+        final BookingView first = build();
+        await(() -> first.getMetrics().getLastId() == 1_000);
+        first.stop();
+
+        // Only the events after the saved state are replayed.
+        for (long id = 1_001; id <= 1_100; id++) {
+            table.commit(create(id));
+        }
+
+        final BookingView restarted = build();
+        final BookingView rebuilt   = BookingView.builder(table.manager())
+            .withScheduler(scheduler)
+            .withoutLogging()
+            .withoutJmx()
+            .build();
+
+        try {
+            await(() -> restarted.getMetrics().getLastId() == 1_100);
+            await(() -> rebuilt.getMetrics().getLastId() == 1_100);
+
+            assertEquals(100, restarted.getMetrics().getCreatesApplied());
+            assertEquals(0, restarted.getMetrics().getDeletesApplied());
+            assertEquals(bookings(rebuilt), bookings(restarted));
+            assertEquals(1_100 - 200, restarted.snapshot().size());
+        } finally {
+            restarted.stop();
+            rebuilt.stop();
+        }
+    }
+
+    @Test
+    public void keepsStateCleanWhenStoppedWhilePolling() throws InterruptedException {
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final Thread writer = new Thread(() -> {
+            for (long id = 1; writing.get(); id++) {
+                table.commit(create(id));
+            }
+        });
+
+        writer.start();
+        final BookingView first = build();
+
+        try {
+            await(() -> first.getMetrics().getLastId() > 1_000);
+        } finally {
+            first.stop();
+            writing.set(false);
+            writer.join();
+        }
+
+        // If an event had been applied after the state was saved, the file
+        // would not be restored and every event would be replayed.
+        final long saved = first.getMetrics().getLastId();
+        final BookingView restarted = build();
+
+        try {
+            final long latest = table.manager().getLatestId();
+            await(() -> restarted.getMetrics().getLastId() == latest);
+            assertEquals(latest - saved, restarted.getMetrics().getCreatesApplied());
+            assertEquals(latest, restarted.snapshot().size());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private BookingView build() {
+        return BookingView.builder(table.manager())
+            .withStateFile(file)
+            .withScheduler(scheduler)
+            .withUpdateInterval(5)
+            .withIdleInterval(5)
+            .withoutLogging()
+            .withoutJmx()
+            .build();
+    }
+
+    private static List<String> bookings(BookingView view) {
+        return view.stream()
+            .map(b -> new BookingRecord().set(b).toString())
+            .sorted()
+            .collect(toList());
+    }
+
+    private static Booking create(long id) {
+        return new BookingImpl()
+            .setId(id)
+            .setBookingId(id)
+            .setEventType(EventType.CREATE.name())
+            .setTenant((int) id)
+            .setSauna((int) id)
+            .setBookedFrom(EpochDays.toDate(17_000))
+            .setBookedTo(EpochDays.toDate(17_001));
+    }
+
+    private static Booking delete(long id, long bookingId) {
+        return new BookingImpl()
+            .setId(id)
+            .setBookingId(bookingId)
+            .setEventType(EventType.DELETE.name());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+
+            try {
+                Thread.sleep(5);
+            } catch (final InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.BookingRecord;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.util.ArrayList;
+import static java.util.Collections.singletonList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static java.util.stream.Collectors.toList;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class ParallelReplayTest {
+
+    private final static int EVENTS   = 20_000;
+    private final static int BOOKINGS = 3_000;
+    private final static int SAUNAS   = 20;
+    private final static int TENANTS  = 100;
+    private final static int DAYS     = 365;
+    private final static int CHUNK    = 4_096;
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void appliesSameEventsAsSequentialReplay() {
+        final List<Booking> events = events(new Random(42));
+
+        final BookingView sequential = replay(events, null);
+        final BookingView parallel   = replay(events, pool);
+
+        try {
+            assertEquals(EVENTS, sequential.snapshot().getLast());
+            assertEquals(EVENTS, parallel.snapshot().getLast());
+            assertEquals(bookings(sequential), bookings(parallel));
+
+            long refused = 0;
+            for (final EventType type : EventType.values()) {
+                assertEquals(type.name(),
+                    sequential.getMetrics().getApplied(type),
+                    parallel.getMetrics().getApplied(type)
+                );
+
+                assertEquals(type.name(),
+                    sequential.getMetrics().getRefused(type),
+                    parallel.getMetrics().getRefused(type)
+                );
+
+                refused += sequential.getMetrics().getRefused(type);
+            }
+
+            // Make sure that the events actually conflict with each other.
+            assertTrue(refused > 0);
+            assertTrue(bookings(sequential).size() > 0);
+        } finally {
+            sequential.stop();
+            parallel.stop();
+        }
+    }
+
+    private static BookingView replay(List<Booking> events, ForkJoinPool pool) {
+        return BookingView.create(
+            singletonList(new ListSource(events)), null, pool
+        );
+    }
+
+    private static List<String> bookings(BookingView view) {
+        return view.stream()
+            .map(b -> new BookingRecord().set(b).toString())
+            .sorted()
+            .collect(toList());
+    }
+
+    /**
+     * Creates random events for a few saunas and tenants, so that many of 
+     * them overlap and are refused. Some events concern bookings that don't
+     * exist or have already been deleted.
+     */
+    private static List<Booking> events(Random random) {
+        final List<Booking> events = new ArrayList<>(EVENTS);
+
+        for (long id = 1; id <= EVENTS; id++) {
+            final BookingImpl event = new BookingImpl();
+            event.setId(id);
+            event.setBookingId(1 + random.nextInt(BOOKINGS));
+
+            final int from = 17_000 + random.nextInt(DAYS);
+            final int to   = from + random.nextInt(7);
+            final int type = random.nextInt(10);
+
+            if (type < 6) {
+                event.setEventType(EventType.CREATE.name())
+                    .setTenant(1 + random.nextInt(TENANTS))
+                    .setSauna(1 + random.nextInt(SAUNAS))
+                    .setBookedFrom(EpochDays.toDate(from))
+                    .setBookedTo(EpochDays.toDate(to));
+            } else if (type < 9) {
+                event.setEventType(EventType.UPDATE.name());
+
+                // Update a random selection of the columns.
+                if (random.nextBoolean()) {
+                    event.setTenant(1 + random.nextInt(TENANTS));
+                }
+
+                if (random.nextBoolean()) {
+                    event.setSauna(1 + random.nextInt(SAUNAS));
+                }
+
+                if (random.nextBoolean()) {
+                    event.setBookedFrom(EpochDays.toDate(from))
+                        .setBookedTo(EpochDays.toDate(to));
+                }
+            } else {
+                event.setEventType(EventType.DELETE.name());
+            }
+
+            events.add(event);
+        }
+
+        return events;
+    }
+
+    /**
+     * Delivers the events in chunks, the same way as a source that polls 
+     * the database while the view is catching up.
+     */
+    private final static class ListSource implements BookingEventSource {
+
+        private final List<Booking> events;
+
+        ListSource(List<Booking> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void start(BookingEventSink sink) {
+            for (int i = 0; i < events.size(); i += CHUNK) {
+                sink.acceptAll(events.subList(i, Math.min(i + CHUNK, events.size())));
+            }
+
+            sink.caughtUp();
+        }
+
+        @Override
+        public void stop() {}
+    }
+}
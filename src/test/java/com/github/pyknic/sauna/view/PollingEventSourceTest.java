@@ -0,0 +1,189 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import static java.util.Collections.singletonList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class PollingEventSourceTest {
+
+    private final static long TIMEOUT = 10_000;
+
+    private ScheduledExecutorService scheduler;
+    private EventTable table;
+    private BookingView view;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        table     = new EventTable();
+    }
+
+    @After
+    public void tearDown() {
+        if (view != null) {
+            view.stop();
+        }
+
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void waitsForMissingIdToBeCommitted() throws InterruptedException {
+        start(1, 2, 3, 5, 6, 7);
+        await(() -> view.snapshot().getLast() == 3);
+
+        // The gap is still open after a few more polls.
+        Thread.sleep(100);
+        assertEquals(3, view.snapshot().getLast());
+        assertEquals(3, view.snapshot().size());
+
+        // The event of the missing id is applied once it is committed.
+        table.commit(create(4));
+        await(() -> view.snapshot().getLast() == 7);
+        assertEquals(7, view.snapshot().size());
+        assertEquals(0, view.getMetrics().getSkippedIds());
+    }
+
+    @Test
+    public void skipsMissingIdsAfterTimeout() {
+        view = BookingView.create(singletonList(new PollingEventSource(
+            table.manager(), 2, 5, 5, Integer.MIN_VALUE, Integer.MAX_VALUE, 
+            scheduler, 200
+        )), null, null);
+
+        commit(1, 2, 5, 6, 10);
+        await(() -> view.snapshot().getLast() == 10);
+        assertEquals(5, view.snapshot().size());
+        assertEquals(5, view.getMetrics().getSkippedIds());
+    }
+
+    @Test
+    public void skipsEveryExpiredGapAtOnce() {
+        final long gapTimeout = 1_000;
+        view = BookingView.create(singletonList(new PollingEventSource(
+            table.manager(), 2, 5, 5, Integer.MIN_VALUE, Integer.MAX_VALUE, 
+            scheduler, gapTimeout
+        )), null, null);
+
+        // Ten old gaps, as left by rolled back transactions.
+        final long started = System.currentTimeMillis();
+        commit(1, 3, 5, 7, 9, 11, 13, 15, 17, 19, 21);
+        await(() -> view.snapshot().getLast() == 21);
+
+        final long waited = System.currentTimeMillis() - started;
+        assertTrue("Waited " + waited + " ms", waited >= gapTimeout);
+        assertTrue("Waited " + waited + " ms", waited < 3 * gapTimeout);
+        assertEquals(11, view.snapshot().size());
+        assertEquals(10, view.getMetrics().getSkippedIds());
+
+        // A new gap waits for the timeout again, but only once.
+        commit(23, 25, 27);
+        await(() -> view.snapshot().getLast() == 27);
+        assertEquals(14, view.snapshot().size());
+        assertEquals(13, view.getMetrics().getSkippedIds());
+    }
+
+    @Test
+    public void skipsFilteredEventsButNotGaps() throws InterruptedException {
+        view = BookingView.create(singletonList(new PollingEventSource(
+            table.manager(), 2, 5, 5, 1, 1, scheduler, TIMEOUT
+        )), null, null, 1, 1, null);
+
+        table.commit(create(1, 1));
+        table.commit(create(2, 2));
+        table.commit(create(3, 2));
+        table.commit(create(5, 1));
+        await(() -> view.snapshot().getLast() == 3);
+
+        Thread.sleep(100);
+        assertEquals(3, view.snapshot().getLast());
+        assertEquals(1, view.snapshot().size());
+
+        table.commit(create(4, 1));
+        await(() -> view.snapshot().getLast() == 5);
+        assertEquals(3, view.snapshot().size());
+    }
+
+    @Test
+    public void reportsViewBehindHorizonAsStale() {
+        start(1, 2, 3);
+        await(() -> view.snapshot().getLast() == 3);
+        assertFalse(view.getMetrics().isStale());
+
+        table.compact(5);
+        commit(6, 7);
+        await(() -> view.getMetrics().isStale());
+        assertEquals(3, view.snapshot().getLast());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToStartBehindHorizon() {
+        table.compact(5);
+        new PollingEventSource(table.manager(), 2, 5, 5, 
+            Integer.MIN_VALUE, Integer.MAX_VALUE, scheduler, TIMEOUT
+        ).start(new BookingEventSink() {
+            @Override public long getLast()               { return 3; }
+            @Override public void accept(Booking event)   {}
+            @Override public boolean offer(Booking event) { return false; }
+            @Override public void refresh()               {}
+            @Override public void caughtUp()              {}
+        });
+    }
+
+    private void start(long... ids) {
+        commit(ids);
+        view = BookingView.create(singletonList(new PollingEventSource(
+            table.manager(), 2, 5, 5, Integer.MIN_VALUE, Integer.MAX_VALUE, 
+            scheduler, TIMEOUT
+        )), null, null);
+    }
+
+    private void commit(long... ids) {
+        for (final long id : ids) {
+            table.commit(create(id));
+        }
+    }
+
+    private static Booking create(long id) {
+        return create(id, (int) id);
+    }
+
+    private static Booking create(long id, int sauna) {
+        return new BookingImpl()
+            .setId(id)
+            .setBookingId(id)
+            .setEventType(EventType.CREATE.name())
+            .setTenant((int) id)
+            .setSauna(sauna)
+            .setBookedFrom(EpochDays.toDate(17_000 + 2 * (int) id))
+            .setBookedTo(EpochDays.toDate(17_001 + 2 * (int) id));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+
+            try {
+                Thread.sleep(5);
+            } catch (final InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+}
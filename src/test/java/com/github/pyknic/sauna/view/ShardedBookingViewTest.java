@@ -0,0 +1,181 @@
+package com.github.pyknic.sauna.view;
+
+import com.github.pyknic.sauna.booking.Booking;
+import com.github.pyknic.sauna.booking.BookingImpl;
+import com.github.pyknic.sauna.booking.BookingValidator;
+import com.github.pyknic.sauna.booking.EpochDays;
+import com.github.pyknic.sauna.booking.EventType;
+import java.time.LocalDate;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+import static java.util.stream.Collectors.toList;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class ShardedBookingViewTest {
+
+    private final static long TIMEOUT = 10_000;
+
+    private ScheduledExecutorService scheduler;
+    private EventTable table;
+    private ShardedBookingView view;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        table     = new EventTable();
+        view      = ShardedBookingView.create(shard(1, 10), shard(11, 20));
+    }
+
+    @After
+    public void tearDown() {
+        view.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void refusesMoveToAnotherShard() {
+        table.commit(create(1, 5));
+        table.commit(create(2, 15));
+        await(() -> lastOf(0) == 2 && lastOf(1) == 2);
+
+        // Moves within a shard are allowed.
+        assertTrue(view.isAllowed(move(0, 1, 6), 2));
+        assertTrue(view.isAllowed(move(0, 2, 16), 2));
+
+        // Moves out of a shard and into a shard are not.
+        assertFalse(view.isAllowed(move(0, 1, 15), 2));
+        assertFalse(view.isAllowed(move(0, 2, 5), 2));
+
+        // Neither is an update of a booking that doesn't exist.
+        assertFalse(view.isAllowed(move(0, 3, 5), 2));
+    }
+
+    @Test
+    public void keepsBookingIfMoveIsWrittenAnyway() {
+        table.commit(create(1, 5));
+        table.commit(move(2, 1, 15));
+        await(() -> lastOf(0) == 2 && lastOf(1) == 2);
+
+        assertEquals(1, view.findBySauna(5, 
+            EpochDays.toLocalDate(17_000), EpochDays.toLocalDate(17_010)).size());
+        assertEquals(0, view.findBySauna(15, 
+            EpochDays.toLocalDate(17_000), EpochDays.toLocalDate(17_010)).size());
+        assertEquals(1, view.getShards().get(1).getMetrics().getUpdatesRefused());
+    }
+
+    @Test
+    public void findsFreeSaunasInEveryShard() {
+        table.commit(create(1, 5));
+        table.commit(create(2, 15));
+        await(() -> lastOf(0) == 2 && lastOf(1) == 2);
+
+        final List<Integer> free = view.findFreeSaunas(1, 20, day(17_001), day(17_001));
+        assertEquals(18, free.size());
+        assertFalse(free.contains(5));
+        assertFalse(free.contains(15));
+        assertEquals(asList(1, 2, 3), view.findFreeSaunas(1, 3, day(17_001), day(17_002)));
+
+        // Booked on days 17001 to 17002.
+        assertEquals(asList(
+                day(17_000) + " - " + day(17_000), 
+                day(17_003) + " - " + day(17_005)
+            ), 
+            periods(view.findFreePeriods(15, day(17_000), day(17_005)))
+        );
+
+        final FreePeriod first = view.findFirstFree(5, day(17_000), 2).get();
+        assertEquals(day(17_003), first.getFirst());
+        assertEquals(day(17_004), first.getLast());
+        assertEquals(2, first.getDays());
+        assertEquals(day(17_000), view.findFirstFree(6, day(17_000), 2).get().getFirst());
+    }
+
+    @Test
+    public void validatesWithEveryShard() {
+        view.stop();
+        view = ShardedBookingView.create(
+            shard(1, 10).withValidation(), 
+            shard(11, 20).withValidation()
+        );
+
+        table.commit(create(1, 5));
+        table.commit(create(2, 15));
+        await(() -> lastOf(0) == 2 && lastOf(1) == 2);
+
+        // Overlapping bookings are refused in both shards, not only in the
+        // one that was built last.
+        final BookingValidator validator = table.validator();
+        assertFalse(validator.isAllowed(create(3, 5), 2));
+        assertFalse(validator.isAllowed(create(3, 15), 2));
+        assertTrue(validator.isAllowed(create(3, 6), 2));
+        assertTrue(validator.isAllowed(create(3, 16), 2));
+    }
+
+    private BookingViewBuilder shard(int first, int last) {
+        return BookingView.builder(table.manager())
+            .withSaunas(first, last)
+            .withScheduler(scheduler)
+            .withUpdateInterval(5)
+            .withIdleInterval(5)
+            .withoutLogging()
+            .withoutJmx();
+    }
+
+    private static LocalDate day(int epochDay) {
+        return EpochDays.toLocalDate(epochDay);
+    }
+
+    private static List<String> periods(List<FreePeriod> periods) {
+        return periods.stream()
+            .map(p -> p.getFirst() + " - " + p.getLast())
+            .collect(toList());
+    }
+
+    private long lastOf(int shard) {
+        return view.getShards().get(shard).snapshot().getLast();
+    }
+
+    private static Booking create(long bookingId, int sauna) {
+        return new BookingImpl()
+            .setId(bookingId)
+            .setBookingId(bookingId)
+            .setEventType(EventType.CREATE.name())
+            .setTenant((int) bookingId)
+            .setSauna(sauna)
+            .setBookedFrom(EpochDays.toDate(17_001))
+            .setBookedTo(EpochDays.toDate(17_002));
+    }
+
+    private static Booking move(long id, long bookingId, int sauna) {
+        return new BookingImpl()
+            .setId(id)
+            .setBookingId(bookingId)
+            .setEventType(EventType.UPDATE.name())
+            .setSauna(sauna);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+
+            try {
+                Thread.sleep(5);
+            } catch (final InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.pyknic.sauna.view;
+
+import java.util.Random;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author Emil Forslund
+ * @since  1.0.0
+ */
+public final class SortedLongSetTest {
+
+    private final static int BLOCK_SIZE = 256;
+
+    @Test
+    public void splitsFullBlocksInOrder() {
+        final SortedLongSet set = new SortedLongSet();
+        final TreeSet<Long> expected = new TreeSet<>();
+
+        // Ascending values always split the last block.
+        for (long v = 0; v < 4 * BLOCK_SIZE; v++) {
+            assertTrue(set.add(v * 2));
+            expected.add(v * 2);
+        }
+
+        // Descending values always split the first block.
+        for (long v = -1; v > -4 * BLOCK_SIZE; v--) {
+            assertTrue(set.add(v * 2));
+            expected.add(v * 2);
+        }
+
+        // Fill the gaps, which splits blocks in the middle.
+        for (long v = -4 * BLOCK_SIZE; v < 4 * BLOCK_SIZE; v++) {
+            set.add(v * 2 + 1);
+            expected.add(v * 2 + 1);
+        }
+
+        assertFalse(set.add(0));
+        assertSame(expected, set);
+    }
+
+    @Test
+    public void removesEmptyBlocks() {
+        final SortedLongSet set = new SortedLongSet();
+        final TreeSet<Long> expected = new TreeSet<>();
+
+        for (long v = 0; v < 8 * BLOCK_SIZE; v++) {
+            set.add(v);
+            expected.add(v);
+        }
+
+        // Empty every other block completely, and the first and last values.
+        for (long v = 0; v < 8 * BLOCK_SIZE; v++) {
+            if ((v / BLOCK_SIZE) % 2 == 0 || v == 8 * BLOCK_SIZE - 1) {
+                assertTrue(set.remove(v));
+                expected.remove(v);
+            }
+        }
+
+        assertFalse(set.remove(0));
+        assertSame(expected, set);
+
+        // The values can be added again.
+        for (long v = 0; v < 8 * BLOCK_SIZE; v++) {
+            set.add(v);
+            expected.add(v);
+        }
+
+        assertSame(expected, set);
+
+        for (long v = 0; v < 8 * BLOCK_SIZE; v++) {
+            assertTrue(set.remove(v));
+        }
+
+        assertTrue(set.isEmpty());
+        assertEquals(SortedLongSet.NONE, set.floor(Long.MAX_VALUE));
+        assertEquals(SortedLongSet.NONE, set.ceiling(Long.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void matchesTreeSetForRandomOperations() {
+        final Random random = new Random(42);
+        final SortedLongSet set = new SortedLongSet();
+        final TreeSet<Long> expected = new TreeSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            final long v = random.nextInt(20_000) - 10_000;
+
+            // Add more than is removed at first, and then shrink the set.
+            if (random.nextInt(100) < (i < 100_000 ? 70 : 30)) {
+                assertEquals(expected.add(v), set.add(v));
+            } else {
+                assertEquals(expected.remove(v), set.remove(v));
+            }
+
+            if (i % 10_000 == 0) {
+                assertSame(expected, set);
+            }
+        }
+
+        assertSame(expected, set);
+    }
+
+    @Test
+    public void handlesExtremeValues() {
+        final SortedLongSet set = new SortedLongSet();
+        set.add(Long.MAX_VALUE);
+        set.add(Long.MIN_VALUE + 1);
+
+        assertEquals(Long.MIN_VALUE + 1, set.lower(Long.MAX_VALUE));
+        assertEquals(SortedLongSet.NONE, set.higher(Long.MAX_VALUE));
+        assertEquals(SortedLongSet.NONE, set.lower(Long.MIN_VALUE + 1));
+        assertEquals(Long.MAX_VALUE, set.higher(Long.MIN_VALUE + 1));
+    }
+
+    /**
+     * Checks that the set contains the same values as the expected one, and
+     * that every search agrees, including for values between the elements.
+     */
+    private static void assertSame(TreeSet<Long> expected, SortedLongSet set) {
+        assertEquals(expected.size(), set.size());
+        if (expected.isEmpty()) {
+            return;
+        }
+
+        for (long v = expected.first() - 2; v <= expected.last() + 2; v++) {
+            assertEquals("floor " + v, or(expected.floor(v)), set.floor(v));
+            assertEquals("lower " + v, or(expected.lower(v)), set.lower(v));
+            assertEquals("ceiling " + v, or(expected.ceiling(v)), set.ceiling(v));
+            assertEquals("higher " + v, or(expected.higher(v)), set.higher(v));
+        }
+    }
+
+    private static long or(Long value) {
+        return value == null ? SortedLongSet.NONE : value;
+    }
+}